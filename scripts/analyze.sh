@@ -0,0 +1,23 @@
+#!/usr/bin/env bash
+# Запуск анализатора, настроенный на быстрый старт при анализе небольших файлов из скриптов:
+#  - архив AppCDS (scripts/train-cds.sh), если он новее jar;
+#  - только компилятор C1: на файлах в единицы мегабайт C2 не успевает окупиться;
+#  - Serial GC и без hsperfdata - меньше потоков и файлов при старте.
+# Для больших файлов верните C2: ANALYZER_JAVA_OPTS="-XX:TieredStopAtLevel=4" scripts/analyze.sh ...
+# Запуск: scripts/analyze.sh [параметры] файл...
+set -euo pipefail
+
+ROOT="$(cd "$(dirname "$0")/.." && pwd)"
+JAR="$ROOT/build/access-log-parser.jar"
+ARCHIVE="$ROOT/build/access-log-parser.jsa"
+
+[[ -f "$JAR" ]] || "$ROOT/scripts/build.sh" > /dev/null
+
+JAVA_OPTS=(-XX:TieredStopAtLevel=1 -XX:+UseSerialGC -XX:-UsePerfData -Xshare:auto
+           -Dfile.encoding=UTF-8 -Dsun.stdout.encoding=UTF-8)
+if [[ -f "$ARCHIVE" && "$ARCHIVE" -nt "$JAR" ]]; then
+    JAVA_OPTS+=(-XX:SharedArchiveFile="$ARCHIVE")
+fi
+
+# shellcheck disable=SC2086 # ANALYZER_JAVA_OPTS - список параметров через пробел
+exec java "${JAVA_OPTS[@]}" ${ANALYZER_JAVA_OPTS:-} -jar "$JAR" "$@"
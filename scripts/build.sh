@@ -0,0 +1,13 @@
+#!/usr/bin/env bash
+# Сборка исполняемого jar: build/access-log-parser.jar
+# После пересборки архив AppCDS устаревает - пересоздайте его через scripts/train-cds.sh
+set -euo pipefail
+
+ROOT="$(cd "$(dirname "$0")/.." && pwd)"
+BUILD="$ROOT/build"
+
+rm -rf "$BUILD/classes"
+mkdir -p "$BUILD/classes"
+javac -encoding UTF-8 -XDstringConcat=inline -d "$BUILD/classes" "$ROOT"/src/*.java
+jar --create --file "$BUILD/access-log-parser.jar" --manifest "$ROOT/src/META-INF/MANIFEST.MF" -C "$BUILD/classes" .
+echo "Собран $BUILD/access-log-parser.jar"
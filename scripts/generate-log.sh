@@ -0,0 +1,54 @@
+#!/usr/bin/env bash
+# Генерация синтетического access-лога в формате combined (повторяемо при одинаковом seed).
+# Запросы приходят пуассоновским потоком с постоянной интенсивностью, поэтому лог охватывает
+# реалистичный промежуток времени (5,7 млн строк при 66 запросах/с - сутки) и не содержит аномалий.
+# Запуск: scripts/generate-log.sh <количество строк> <файл> [seed] [уникальных IP] [идентификаторов в путях] [запросов в секунду]
+set -euo pipefail
+
+LINES="${1:?Укажите количество строк}"
+OUT="${2:?Укажите файл для записи}"
+SEED="${3:-42}"
+IPS="${4:-50000}"
+IDS="${5:-1000}"
+RATE="${6:-10}"
+
+awk -v lines="$LINES" -v seed="$SEED" -v ips="$IPS" -v ids="$IDS" -v rate="$RATE" '
+# Дата по номеру дня от эпохи (алгоритм days_from_civil в обратную сторону)
+function civil(z,    era, doe, yoe, doy, mp) {
+    z += 719468;
+    era = int(z / 146097);
+    doe = z - era * 146097;
+    yoe = int((doe - int(doe / 1460) + int(doe / 36524) - int(doe / 146096)) / 365);
+    doy = doe - (365 * yoe + int(yoe / 4) - int(yoe / 100));
+    mp = int((5 * doy + 2) / 153);
+    day = doy - int((153 * mp + 2) / 5) + 1;
+    month = mp < 10 ? mp + 3 : mp - 9;
+    year = yoe + era * 400 + (month <= 2 ? 1 : 0);
+}
+BEGIN {
+    srand(seed);
+    split("Jan Feb Mar Apr May Jun Jul Aug Sep Oct Nov Dec", months, " ");
+    split("GET GET GET GET POST PUT DELETE HEAD", methods, " ");
+    split("/ /index.html /about /api/users /api/items?id=%d /static/app.js /static/a.css /users/%d/profile /search?q=%d /missing/%d", paths, " ");
+    split("200 200 200 200 200 200 301 304 404 404 500 503", codes, " ");
+    agents[1] = "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/120.0.0.0 Safari/537.36";
+    agents[2] = "Mozilla/5.0 (X11; Linux x86_64; rv:121.0) Gecko/20100101 Firefox/121.0";
+    agents[3] = "Mozilla/5.0 (Macintosh; Intel Mac OS X 10_15_7) AppleWebKit/605.1.15 (KHTML, like Gecko) Version/17.0 Safari/605.1.15";
+    agents[4] = "Mozilla/5.0 (compatible; Googlebot/2.1; +http://www.google.com/bot.html)";
+    agents[5] = "Mozilla/5.0 (compatible; YandexBot/3.0; +http://yandex.com/bots)";
+    split("- - - https://example.com/x https://google.com/search?q=logs https://yandex.ru/", referers, " ");
+    time = 1693526400; # 01/Sep/2023:00:00:00 (секунды от эпохи)
+    for (i = 0; i < lines; i++) {
+        time -= log(1 - rand()) / rate; # Экспоненциальный интервал между запросами
+        t = int(time);
+        s = t % 86400;
+        civil(int(t / 86400));
+        path = sprintf(paths[1 + int(rand() * 10)], int(rand() * ids));
+        ip = int(rand() * ips);
+        printf "%d.%d.%d.%d - - [%02d/%s/%d:%02d:%02d:%02d +0300] \"%s %s HTTP/1.1\" %s %d \"%s\" \"%s\"\n",
+            10 + int(ip / 16384000) % 200, int(ip / 64000) % 256, int(ip / 250) % 256, 1 + ip % 250,
+            day, months[month], year, int(s / 3600), int(s / 60) % 60, s % 60,
+            methods[1 + int(rand() * 8)], path, codes[1 + int(rand() * 12)], int(rand() * 50000),
+            referers[1 + int(rand() * 6)], agents[1 + int(rand() * 5)];
+    }
+}' > "$OUT"
@@ -0,0 +1,48 @@
+#!/usr/bin/env bash
+# Время до первого результата на файле 1 МБ: от запуска JVM до вывода результатов анализа.
+# Сравнивает обычный запуск jar и запуск через scripts/analyze.sh (AppCDS, C1),
+# выводит медиану и минимум и дописывает их в scripts/startup-history.csv для отслеживания между версиями.
+# Запуск: scripts/measure-startup.sh [количество запусков]  (по умолчанию 10)
+set -euo pipefail
+
+ROOT="$(cd "$(dirname "$0")/.." && pwd)"
+BUILD="$ROOT/build"
+JAR="$BUILD/access-log-parser.jar"
+RUNS="${1:-10}"
+LOG="$BUILD/startup-1mb.log"
+CSV="$ROOT/scripts/startup-history.csv"
+
+"$ROOT/scripts/build.sh" > /dev/null
+"$ROOT/scripts/train-cds.sh" > /dev/null
+[[ -f "$LOG" ]] || "$ROOT/scripts/generate-log.sh" 5300 "$LOG" 7
+
+# Время одного запуска в мс; результат должен содержать итоговый отчет
+run_once() {
+    local start end
+    start=$(date +%s%N)
+    "$@" "$LOG" | grep -q "Результаты анализа"
+    end=$(date +%s%N)
+    echo $(( (end - start) / 1000000 ))
+}
+
+measure() {
+    local name="$1"
+    shift
+    run_once "$@" > /dev/null # Прогрев файлового кэша
+    local times=()
+    for ((i = 0; i < RUNS; i++)); do
+        times+=("$(run_once "$@")")
+    done
+    local sorted median min
+    sorted=$(printf '%s\n' "${times[@]}" | sort -n)
+    median=$(echo "$sorted" | sed -n "$(( (RUNS + 1) / 2 ))p")
+    min=$(echo "$sorted" | head -1)
+    printf '%-10s медиана %5d мс, минимум %5d мс\n' "$name" "$median" "$min"
+    [[ -f "$CSV" ]] || echo "date,commit,config,runs,median_ms,min_ms" > "$CSV"
+    echo "$(date -u +%Y-%m-%dT%H:%M:%SZ),$(git -C "$ROOT" rev-parse --short HEAD 2>/dev/null || echo unknown),$name,$RUNS,$median,$min" >> "$CSV"
+}
+
+echo "Время до первого результата ($(du -h "$LOG" | cut -f1), $RUNS запусков):"
+measure jar java -Dfile.encoding=UTF-8 -jar "$JAR"
+measure launcher "$ROOT/scripts/analyze.sh"
+echo "История: $CSV"
@@ -0,0 +1,150 @@
+#!/usr/bin/env bash
+# Регрессионные проверки анализатора на синтетических логах (scripts/generate-log.sh):
+#   resume     - анализ, продолженный с контрольной точки после дописывания лога, дает тот же отчет,
+#                что и анализ всего лога за один раз (в том числе шаблоны маршрутов)
+#   gzip       - отчет по сжатому логу (один член и несколько склеенных) совпадает с отчетом по исходному
+#   offheap    - отчет с хранением IP и страниц вне кучи (и с вытеснением на диск) совпадает с обычным
+#   anomalies  - на стационарном логе без аномалий детектор не находит ни одного инцидента
+# Логи генерируются в build/regression/ при первом запуске, вывод каждой проверки остается там же.
+# Завершается с ошибкой, если хотя бы одна проверка не прошла.
+# Запуск: scripts/regression-test.sh [проверка...]  (по умолчанию все)
+set -euo pipefail
+
+ROOT="$(cd "$(dirname "$0")/.." && pwd)"
+BUILD="$ROOT/build"
+JAR="$BUILD/access-log-parser.jar"
+DATA="$BUILD/regression"
+
+CHECKS=("$@")
+[[ ${#CHECKS[@]} -gt 0 ]] || CHECKS=(resume gzip offheap anomalies)
+
+"$ROOT/scripts/build.sh" > /dev/null
+mkdir -p "$DATA"
+FAILED=0
+
+# Запуск анализатора; вывод сохраняется в файл $DATA/<имя>.out, ошибка анализа - проваленная проверка
+analyze() {
+    local name="$1"
+    shift
+    if ! java -Dfile.encoding=UTF-8 -Dsun.stdout.encoding=UTF-8 -jar "$JAR" "$@" > "$DATA/$name.out" 2>&1; then
+        check_failed "анализ $name завершился с ошибкой, вывод: $DATA/$name.out"
+        return 1
+    fi
+}
+
+# Лог генератора (создается один раз): generated_log <имя> <строк> [параметры generate-log.sh после файла]
+generated_log() {
+    local name="$1" lines="$2"
+    shift 2
+    local log="$DATA/$name.log"
+    if [[ ! -f "$log" ]]; then
+        "$ROOT/scripts/generate-log.sh" "$lines" "$log.tmp" "$@"
+        mv "$log.tmp" "$log"
+    fi
+    echo "$log"
+}
+
+# Отчет без строк, зависящих от запуска (имя файла, время, сколько строк прочитано в этом запуске).
+# Строки сравниваются без учета порядка: доли ОС и браузеров выводятся в порядке хеш-таблицы.
+report() {
+    grep -v -e "^Путь указан" -e "^Это файл номер" -e "^🔍" -e "^✓ Обработано строк" -e "^↻" \
+        -e "^📊 Результаты анализа файла" -e "^⏱" -e "^💾 Агрегаты вне кучи" "$DATA/$1.out" | sort
+}
+
+# Сравнивает отчеты двух запусков: same_report <проверка> <эталон> <запуск>
+same_report() {
+    if diff <(report "$2") <(report "$3") > "$DATA/$3.diff"; then
+        check_passed "$1: отчет $3 совпадает с $2"
+    else
+        check_failed "$1: отчет $3 отличается от $2, различия: $DATA/$3.diff"
+    fi
+}
+
+check_passed() { echo "✓ $1"; }
+
+check_failed() {
+    echo "❌ $1"
+    FAILED=1
+}
+
+# Лог дописывается после первого анализа: второй запуск продолжает с контрольной точки
+check_resume() {
+    local log dir
+    log=$(generated_log base 200000)
+    dir="$DATA/resume"
+    rm -rf "$dir"
+    mkdir -p "$dir/checkpoints"
+    analyze resume-full --route-templates "$log" || return 0
+    head -n 120000 "$log" > "$dir/base.log"
+    analyze resume-first --route-templates --checkpoint-dir "$dir/checkpoints" "$dir/base.log" || return 0
+    tail -n +120001 "$log" >> "$dir/base.log"
+    analyze resume-second --route-templates --checkpoint-dir "$dir/checkpoints" "$dir/base.log" || return 0
+    if ! grep -q "^↻" "$DATA/resume-second.out"; then
+        check_failed "resume: второй запуск не продолжил с контрольной точки, вывод: $DATA/resume-second.out"
+        return
+    fi
+    same_report resume resume-full resume-second
+}
+
+check_gzip() {
+    local log dir part
+    log=$(generated_log base 200000)
+    dir="$DATA/gzip"
+    rm -rf "$dir"
+    mkdir -p "$dir"
+    gzip -c "$log" > "$dir/single.log.gz"
+    # Склеенные члены, как после ротации со сжатием: части по 20000 строк
+    split -l 20000 "$log" "$dir/part-"
+    for part in "$dir"/part-*; do
+        gzip -c "$part" >> "$dir/multi.log.gz"
+    done
+    rm -f "$dir"/part-*
+    analyze gzip-plain "$log" || return 0
+    analyze gzip-single "$dir/single.log.gz" || return 0
+    analyze gzip-multi "$dir/multi.log.gz" || return 0
+    same_report gzip gzip-plain gzip-single
+    same_report gzip gzip-plain gzip-multi
+}
+
+# Бюджет 1 МБ не вмещает уникальные IP лога, поэтому вторая проверка вытесняет данные на диск
+check_offheap() {
+    local log
+    log=$(generated_log base 200000)
+    rm -rf "$DATA/spill"
+    mkdir -p "$DATA/spill"
+    analyze offheap-heap "$log" || return 0
+    analyze offheap-memory --offheap-budget 256 "$log" || return 0
+    analyze offheap-spill --offheap-budget 1 --spill-dir "$DATA/spill" "$log" || return 0
+    if grep -q "серий на диске: 0" "$DATA/offheap-spill.out"; then
+        check_failed "offheap: при бюджете 1 МБ ничего не вытеснено на диск, вывод: $DATA/offheap-spill.out"
+    fi
+    same_report offheap offheap-heap offheap-memory
+    same_report offheap offheap-heap offheap-spill
+}
+
+# Стационарные логи при разной интенсивности: любой найденный инцидент - ложная тревога
+check_anomalies() {
+    local name rate log incidents
+    for rate in 10 100; do
+        name="stationary-${rate}rps"
+        log=$(generated_log "$name" 200000 1 50000 1000 "$rate")
+        analyze "anomalies-$name" --anomalies "$log" || continue
+        incidents=$(grep -c "🚨 Аномалия" "$DATA/anomalies-$name.out" || true)
+        if [[ $incidents -eq 0 ]]; then
+            check_passed "anomalies: $name без инцидентов"
+        else
+            check_failed "anomalies: $name - ложных инцидентов: $incidents, вывод: $DATA/anomalies-$name.out"
+        fi
+    done
+}
+
+for check in "${CHECKS[@]}"; do
+    case "$check" in
+        resume) check_resume ;;
+        gzip) check_gzip ;;
+        offheap) check_offheap ;;
+        anomalies) check_anomalies ;;
+        *) echo "Неизвестная проверка: $check (доступны resume, gzip, offheap, anomalies)" >&2; exit 2 ;;
+    esac
+done
+exit $FAILED
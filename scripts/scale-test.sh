@@ -0,0 +1,185 @@
+#!/usr/bin/env bash
+# Нагрузочные прогоны анализатора на больших синтетических логах с ограниченной кучей.
+# Для каждого набора замеряет скорость анализа (по --metrics, без учета старта JVM),
+# пик живой кучи (по журналу GC) и пиковый RSS процесса (VmHWM из /proc),
+# дописывает результаты в scripts/scale-history.csv для отслеживания между версиями и завершается
+# с ошибкой, если скорость упала ниже базовой или память вышла за бюджет из scripts/scale-baseline.csv.
+# Базовая скорость зависит от машины: на новой машине сначала запишите ее через --record-baseline.
+#
+# Наборы (генерируются scripts/generate-log.sh в build/scale/ при первом запуске):
+#   1gb       - 5,7 млн строк за сутки, около 1 ГБ
+#   10gb      - 57 млн строк за неделю, около 10 ГБ (нужно около 11 ГБ на диске)
+#   highcard  - 8 млн строк за сутки, миллионы уникальных IP и путей
+#
+# Запуск: scripts/scale-test.sh [--quick] [--record-baseline] [набор...]  (по умолчанию все наборы)
+#   --quick            наборы в 100 раз меньше - проверка самого прогона; скорость не сравнивается
+#   --record-baseline  записать измеренную скорость как базовую (бюджеты памяти задаются вручную)
+# Переменные окружения:
+#   SCALE_TOLERANCE    допустимое падение скорости относительно базовой, % (по умолчанию 15)
+#   SCALE_JAVA_OPTS    дополнительные параметры JVM
+set -euo pipefail
+
+ROOT="$(cd "$(dirname "$0")/.." && pwd)"
+BUILD="$ROOT/build"
+JAR="$BUILD/access-log-parser.jar"
+DATA="$BUILD/scale"
+CSV="$ROOT/scripts/scale-history.csv"
+BASELINE="$ROOT/scripts/scale-baseline.csv"
+TOLERANCE="${SCALE_TOLERANCE:-15}"
+
+QUICK=0
+RECORD=0
+SETS=()
+for arg in "$@"; do
+    case "$arg" in
+        --quick) QUICK=1 ;;
+        --record-baseline) RECORD=1 ;;
+        --*) echo "Неизвестный параметр: $arg" >&2; exit 2 ;;
+        *) SETS+=("$arg") ;;
+    esac
+done
+[[ ${#SETS[@]} -gt 0 ]] || SETS=(1gb 10gb highcard)
+if [[ $QUICK -eq 1 && $RECORD -eq 1 ]]; then
+    echo "Базовая скорость записывается только по полным наборам" >&2
+    exit 2
+fi
+
+# Параметры набора: строк, seed, уникальных IP, идентификаторов в путях, запросов в секунду
+dataset_params() {
+    case "$1" in
+        1gb) echo "5700000 1 50000 1000 66" ;;
+        10gb) echo "57000000 2 50000 1000 94" ;;
+        highcard) echo "8000000 3 5000000 5000000 93" ;;
+        *) echo "Неизвестный набор: $1 (доступны 1gb, 10gb, highcard)" >&2; return 1 ;;
+    esac
+}
+
+# Поле строки набора в файле базовых значений по имени столбца
+baseline_value() {
+    awk -F, -v set="$1" -v column="$2" '
+        NR == 1 { for (i = 1; i <= NF; i++) if ($i == column) c = i; next }
+        $1 == set { print $c }' "$BASELINE"
+}
+
+# Пик занятой кучи и пик живой кучи (после сборок) по журналу GC, в МБ: "<пик> <живая>".
+# Занятость при выходе (gc+heap+exit) учитывается в пике, а если сборок не было - и в живой куче.
+heap_from_gc_log() {
+    awk '
+        function mb(v) {
+            unit = substr(v, length(v));
+            v = substr(v, 1, length(v) - 1) + 0;
+            return unit == "G" ? v * 1024 : unit == "K" ? v / 1024 : v;
+        }
+        match($0, /[0-9]+[KMG]->[0-9]+[KMG]\(/) {
+            split(substr($0, RSTART, RLENGTH - 1), parts, "->");
+            if (mb(parts[1]) > before) before = mb(parts[1]);
+            if (mb(parts[2]) > after) after = mb(parts[2]);
+            collections++;
+        }
+        /generation.* used [0-9]+K/ {
+            match($0, / used [0-9]+K/);
+            atExit += mb(substr($0, RSTART + 6, RLENGTH - 6));
+        }
+        END {
+            if (atExit > before) before = atExit;
+            if (collections == 0) after = atExit;
+            printf "%.0f %.0f\n", before, after;
+        }' "$1"
+}
+
+"$ROOT/scripts/build.sh" > /dev/null
+mkdir -p "$DATA"
+[[ -f "$CSV" ]] || echo "date,commit,dataset,quick,lines,size_mb,xmx_mb,seconds,mb_per_s,lines_per_s,peak_heap_mb,live_heap_mb,peak_rss_mb,result" > "$CSV"
+COMMIT=$(git -C "$ROOT" rev-parse --short HEAD 2>/dev/null || echo unknown)
+FAILED=0
+
+for set in "${SETS[@]}"; do
+    read -r lines seed ips ids rate <<< "$(dataset_params "$set")"
+    log="$DATA/$set-${rate}rps.log" # Интенсивность в имени: наборы прежнего генератора не используются
+    if [[ $QUICK -eq 1 ]]; then
+        lines=$((lines / 100))
+        log="$DATA/$set-${rate}rps-quick.log"
+    fi
+    if [[ ! -f "$log" ]]; then
+        echo "💾 Генерация $set ($lines строк)..."
+        "$ROOT/scripts/generate-log.sh" "$lines" "$log.tmp" "$seed" "$ips" "$ids" "$rate"
+        mv "$log.tmp" "$log"
+    fi
+
+    xmx=$(baseline_value "$set" xmx_mb)
+    max_live=$(baseline_value "$set" max_live_heap_mb)
+    max_rss=$(baseline_value "$set" max_rss_mb)
+    base_speed=$(baseline_value "$set" baseline_mb_per_s)
+    out="$DATA/$set.out"
+    gc="$DATA/$set.gc.log"
+
+    start=$(date +%s%N)
+    # Один и тот же сборщик на любой машине, чтобы цифры кучи были сравнимы между прогонами
+    # shellcheck disable=SC2086 # SCALE_JAVA_OPTS - список параметров через пробел
+    java -Xmx"${xmx}m" -XX:+UseSerialGC -XX:+ExitOnOutOfMemoryError -Xlog:gc,gc+heap+exit:file="$gc"::filecount=0 \
+        -Dfile.encoding=UTF-8 -Dsun.stdout.encoding=UTF-8 ${SCALE_JAVA_OPTS:-} \
+        -jar "$JAR" --metrics "$log" > "$out" 2>&1 &
+    pid=$!
+    rss=0
+    while kill -0 "$pid" 2> /dev/null; do
+        hwm=$(awk '/^VmHWM:/ { print int($2 / 1024) }' "/proc/$pid/status" 2> /dev/null || true)
+        [[ -n "$hwm" ]] && rss=$hwm
+        sleep 0.2
+    done
+    status=0
+    wait "$pid" || status=$?
+    end=$(date +%s%N)
+    seconds=$(awk -v ns=$((end - start)) 'BEGIN { printf "%.1f", ns / 1e9 }')
+
+    result=ok
+    problems=()
+    if [[ $status -ne 0 ]] || ! grep -q "Результаты анализа" "$out"; then
+        result=error
+        problems+=("анализ завершился с ошибкой (код $status), вывод: $out")
+        speed=0
+        lines_per_s=0
+    else
+        speed=$(sed -n 's/^⏱  Скорость: \([0-9]*\) строк\/с, \([0-9.]*\) МБ\/с$/\2/p' "$out")
+        lines_per_s=$(sed -n 's/^⏱  Скорость: \([0-9]*\) строк\/с.*/\1/p' "$out")
+    fi
+    read -r peak_heap live_heap <<< "$(heap_from_gc_log "$gc")"
+
+    if [[ $result == ok ]]; then
+        if (( live_heap > max_live )); then
+            problems+=("живая куча $live_heap МБ больше бюджета $max_live МБ")
+        fi
+        if (( rss > max_rss )); then
+            problems+=("пиковый RSS $rss МБ больше бюджета $max_rss МБ")
+        fi
+        if [[ $QUICK -eq 0 && $RECORD -eq 0 ]] \
+                && awk -v s="$speed" -v b="$base_speed" -v t="$TOLERANCE" 'BEGIN { exit !(s < b * (1 - t / 100)) }'; then
+            problems+=("скорость $speed МБ/с ниже базовой $base_speed МБ/с более чем на $TOLERANCE%")
+        fi
+        [[ ${#problems[@]} -eq 0 ]] || result=fail
+    fi
+
+    size_mb=$(( $(stat -c %s "$log") / 1024 / 1024 ))
+    echo "$(date -u +%Y-%m-%dT%H:%M:%SZ),$COMMIT,$set,$QUICK,$lines,$size_mb,$xmx,$seconds,$speed,$lines_per_s,$peak_heap,$live_heap,$rss,$result" >> "$CSV"
+    printf '%-9s %6d МБ за %6s с: %7s МБ/с (базовая %s), куча %4s/%s МБ (живая %s, бюджет %s), RSS %5s МБ (бюджет %s)\n' \
+        "$set" "$size_mb" "$seconds" "$speed" "$base_speed" "$peak_heap" "$xmx" "$live_heap" "$max_live" "$rss" "$max_rss"
+    if [[ $result == ok ]]; then
+        echo "✓ $set: в пределах бюджета"
+    else
+        FAILED=1
+        for problem in "${problems[@]}"; do
+            echo "❌ $set: $problem"
+        done
+    fi
+
+    if [[ $RECORD -eq 1 && $result == ok ]]; then
+        awk -F, -v OFS=, -v set="$set" -v speed="$speed" '
+            NR == 1 { for (i = 1; i <= NF; i++) if ($i == "baseline_mb_per_s") c = i }
+            NR > 1 && $1 == set { $c = speed }
+            { print }' "$BASELINE" > "$BASELINE.tmp"
+        mv "$BASELINE.tmp" "$BASELINE"
+        echo "💾 Базовая скорость $set: $speed МБ/с"
+    fi
+done
+
+echo "История: $CSV"
+exit $FAILED
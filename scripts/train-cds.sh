@@ -0,0 +1,23 @@
+#!/usr/bin/env bash
+# Обучающий запуск для архива Application Class Data Sharing (AppCDS).
+# JVM записывает в build/access-log-parser.jsa классы, загруженные при анализе типичного файла
+# (включая классы лямбд), и при следующих запусках отображает их в память готовыми,
+# пропуская загрузку, разбор и проверку байткода.
+# Запуск: scripts/train-cds.sh [обучающий лог]  (по умолчанию - синтетический лог 1 МБ)
+set -euo pipefail
+
+ROOT="$(cd "$(dirname "$0")/.." && pwd)"
+BUILD="$ROOT/build"
+JAR="$BUILD/access-log-parser.jar"
+ARCHIVE="$BUILD/access-log-parser.jsa"
+
+[[ -f "$JAR" ]] || "$ROOT/scripts/build.sh"
+
+TRAINING_LOG="${1:-$BUILD/training.log}"
+if [[ ! -f "$TRAINING_LOG" ]]; then
+    "$ROOT/scripts/generate-log.sh" 5000 "$TRAINING_LOG"
+fi
+
+rm -f "$ARCHIVE"
+java -XX:ArchiveClassesAtExit="$ARCHIVE" -Dfile.encoding=UTF-8 -jar "$JAR" "$TRAINING_LOG" > /dev/null
+echo "Создан архив $ARCHIVE"
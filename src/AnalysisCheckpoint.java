@@ -0,0 +1,139 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.zip.CRC32;
+
+/**
+ * Класс для сохранения и восстановления промежуточного состояния анализа.
+ * В контрольной точке хранится состояние Statistics, смещение последней полностью
+ * обработанной строки и отпечаток начала файла, защищающий от продолжения на другом файле.
+ * Контрольная точка, записанная с другой версией формата состояния Statistics,
+ * не восстанавливается, и анализ начинается сначала.
+ */
+public class AnalysisCheckpoint {
+
+    private static final int MAGIC = 0x414C4350; // "ALCP"
+    private static final int VERSION = 2; // 2 - в заголовке хранится версия состояния Statistics
+    private static final int FINGERPRINT_BYTES = 4096; // Сколько байт начала файла входит в отпечаток
+
+    private final File checkpointDir; // Каталог с файлами контрольных точек
+    private final long intervalNanos; // Минимальный интервал между сохранениями
+    private long lastSaveNanos; // Время последнего сохранения
+
+    /**
+     * @param checkpointDir каталог для файлов контрольных точек
+     * @param intervalSeconds интервал периодического сохранения в секундах
+     */
+    public AnalysisCheckpoint(File checkpointDir, long intervalSeconds) {
+        this.checkpointDir = checkpointDir;
+        this.intervalNanos = intervalSeconds * 1_000_000_000L;
+    }
+
+    /**
+     * Восстанавливает состояние статистики из контрольной точки файла, если она подходит
+     * @param logFile анализируемый файл логов
+     * @param stats объект статистики для восстановления
+     * @return смещение, с которого нужно продолжить чтение (0 - начать сначала)
+     */
+    public long restore(File logFile, Statistics stats) throws IOException {
+        lastSaveNanos = System.nanoTime();
+        File checkpointFile = checkpointFileFor(logFile);
+        if (!checkpointFile.isFile()) {
+            return 0;
+        }
+
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(checkpointFile)))) {
+            if (in.readInt() != MAGIC || in.readUnsignedByte() != VERSION) {
+                System.out.println("⚠️  Контрольная точка имеет неизвестный формат, анализ начнется сначала");
+                return 0;
+            }
+            if (in.readInt() != Statistics.STATE_VERSION) {
+                System.out.println("⚠️  Контрольная точка записана другой версией программы, анализ начнется сначала");
+                return 0;
+            }
+            long offset = in.readLong();
+            int fingerprintLength = in.readInt();
+            long fingerprint = in.readLong();
+
+            // Смещение в сжатом файле отсчитывается в распакованных данных и может превышать его размер
+            if (!FileContentReader.isCompressed(logFile) && logFile.length() < offset) {
+                System.out.println("⚠️  Файл стал короче контрольной точки (ротация?), анализ начнется сначала");
+                return 0;
+            }
+            if (fingerprint(logFile, fingerprintLength) != fingerprint) {
+                System.out.println("⚠️  Контрольная точка относится к другому файлу, анализ начнется сначала");
+                return 0;
+            }
+
+            stats.readState(in);
+            System.out.printf("↻ Продолжаем анализ с контрольной точки: байт %d %s%n", offset,
+                    FileContentReader.isCompressed(logFile) ? "распакованных данных" : "из " + logFile.length());
+            return offset;
+        }
+    }
+
+    /**
+     * Сохраняет контрольную точку, если с прошлого сохранения прошел заданный интервал
+     */
+    public void saveIfDue(File logFile, Statistics stats, long offset) throws IOException {
+        if (System.nanoTime() - lastSaveNanos >= intervalNanos) {
+            save(logFile, stats, offset);
+        }
+    }
+
+    /**
+     * Атомарно записывает контрольную точку: сначала во временный файл, затем переименованием
+     * @param logFile анализируемый файл логов
+     * @param stats текущее состояние статистики
+     * @param offset смещение байта, следующего за последней обработанной строкой
+     */
+    public void save(File logFile, Statistics stats, long offset) throws IOException {
+        if (!checkpointDir.isDirectory() && !checkpointDir.mkdirs()) {
+            throw new IOException("Не удалось создать каталог контрольных точек: " + checkpointDir);
+        }
+        File checkpointFile = checkpointFileFor(logFile);
+        File tempFile = new File(checkpointDir, checkpointFile.getName() + ".tmp");
+
+        int fingerprintLength = (int) Math.min(FINGERPRINT_BYTES, offset);
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            out.writeInt(Statistics.STATE_VERSION);
+            out.writeLong(offset);
+            out.writeInt(fingerprintLength);
+            out.writeLong(fingerprint(logFile, fingerprintLength));
+            stats.writeState(out);
+        }
+        Files.move(tempFile.toPath(), checkpointFile.toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        lastSaveNanos = System.nanoTime();
+    }
+
+    // Файл контрольной точки для конкретного лог-файла
+    private File checkpointFileFor(File logFile) {
+        return new File(checkpointDir, logFile.getName() + ".ckpt");
+    }
+
+    // Отпечаток файла: CRC32 первых length байт
+    private long fingerprint(File file, int length) throws IOException {
+        CRC32 crc = new CRC32();
+        try (InputStream in = new FileInputStream(file)) {
+            byte[] bytes = in.readNBytes(length);
+            if (bytes.length < length) {
+                return -1;
+            }
+            crc.update(bytes);
+        }
+        return crc.getValue();
+    }
+}
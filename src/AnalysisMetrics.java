@@ -0,0 +1,293 @@
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Легковесная инструментация горячего пути анализа.
+ * Счетчики строк и байт обновляются на каждой строке простыми (не volatile) полями,
+ * а время этапов измеряется только для каждой 64-й строки и экстраполируется
+ * на все строки (в том числе отброшенные фильтром и ошибочные, которые входят в замер
+ * пройденными этапами), чтобы вызовы System.nanoTime не замедляли анализ.
+ * Сохранение контрольных точек и публикация снимков замеряются целиком как отдельный этап.
+ * Другие потоки (JMX, вывод прогресса) читают значения после volatile-публикации.
+ */
+public class AnalysisMetrics implements AnalysisMetricsMBean {
+
+    // ========== КОНСТАНТЫ ==========
+
+    private static final int SAMPLE_MASK = 63; // Замеряем время каждой 64-й строки
+    private static final int PUBLISH_MASK = 1023; // Публикуем счетчики каждые 1024 строки
+    private static final String OBJECT_NAME = "AccessLogParser:type=AnalysisMetrics";
+
+    // ========== ПОЛЯ, ОБНОВЛЯЕМЫЕ ПОТОКОМ АНАЛИЗА ==========
+
+    private long lines; // Прочитано строк
+    private long errors; // Строк с ошибками разбора
+    private long position; // Смещение в файле после последней строки
+    private long sampleCounter; // Счетчик для выбора замеряемых строк (все строки)
+    private long sampledLines; // Количество замеренных строк (каждая 64-я из всех)
+    private long parseNanos; // Время разбора LogEntry на замеренных строках
+    private long userAgentNanos; // Время классификации UserAgent на замеренных строках
+    private long aggregationNanos; // Время обновления статистики на замеренных строках
+    private long checkpointNanos; // Время сохранения контрольных точек и публикации снимков (все вызовы)
+
+    private long startOffset; // Смещение, с которого начат анализ
+    private long totalBytes; // Размер файла
+    private long startNanos; // Время начала анализа
+    private long endNanos; // Время окончания анализа (0 - анализ идет)
+    private long ingestThreadId; // Поток, выполняющий анализ
+    private long allocatedAtStart; // Выделено памяти потоком анализа к началу
+    private long allocatedAtEnd; // Выделено памяти потоком анализа к окончанию
+
+    private volatile long publishedLines; // Барьер публикации счетчиков для других потоков
+    private volatile boolean running; // Идет ли сейчас анализ
+
+    private final com.sun.management.ThreadMXBean threadBean = findThreadBean();
+    private ScheduledExecutorService progressExecutor; // Периодический вывод прогресса
+
+    // ========== МЕТОДЫ ПОТОКА АНАЛИЗА ==========
+
+    /**
+     * Сбрасывает счетчики перед анализом очередного файла
+     * @param totalBytes размер файла в байтах
+     * @param startOffset смещение, с которого начинается чтение
+     */
+    public void start(long totalBytes, long startOffset) {
+        lines = 0;
+        errors = 0;
+        position = startOffset;
+        sampleCounter = 0;
+        sampledLines = 0;
+        parseNanos = 0;
+        userAgentNanos = 0;
+        aggregationNanos = 0;
+        checkpointNanos = 0;
+        this.startOffset = startOffset;
+        this.totalBytes = totalBytes;
+        ingestThreadId = Thread.currentThread().getId();
+        allocatedAtStart = allocatedBytes();
+        startNanos = System.nanoTime();
+        endNanos = 0;
+        publishedLines = 0;
+        running = true;
+    }
+
+    /**
+     * @return true, если время этапов следующей строки нужно замерить
+     */
+    public boolean shouldTimeNextLine() {
+        if ((++sampleCounter & SAMPLE_MASK) != 0) {
+            return false;
+        }
+        sampledLines++;
+        return true;
+    }
+
+    /**
+     * Учитывает замеренное время этапов одной строки (0 - этап не выполнялся)
+     */
+    public void recordStages(long parse, long userAgent, long aggregation) {
+        parseNanos += parse;
+        userAgentNanos += userAgent;
+        aggregationNanos += aggregation;
+    }
+
+    /**
+     * Учитывает время сохранения контрольной точки и публикации снимка
+     * @param nanos затраченное время в наносекундах
+     */
+    public void recordCheckpoint(long nanos) {
+        checkpointNanos += nanos;
+    }
+
+    /**
+     * Увеличивает размер файла, если его дописывают во время анализа (режим отслеживания)
+     * @param totalBytes текущий размер прочитанной части файла в байтах
+     */
+    public void updateTotalBytes(long totalBytes) {
+        this.totalBytes = Math.max(this.totalBytes, totalBytes);
+    }
+
+    /**
+     * Учитывает очередную прочитанную строку
+     * @param parsed была ли строка успешно разобрана
+     * @param nextOffset смещение в файле после строки
+     */
+    public void recordLine(boolean parsed, long nextOffset) {
+        lines++;
+        if (!parsed) {
+            errors++;
+        }
+        position = nextOffset;
+        if ((lines & PUBLISH_MASK) == 0) {
+            publishedLines = lines;
+        }
+    }
+
+    /**
+     * Завершает замер после окончания анализа файла
+     */
+    public void finish() {
+        endNanos = System.nanoTime();
+        allocatedAtEnd = allocatedBytes();
+        running = false;
+        publishedLines = lines;
+    }
+
+    // ========== ВЫВОД ==========
+
+    /**
+     * @return строка прогресса с процентом, скоростью и оценкой оставшегося времени
+     */
+    public String progressLine() {
+        long done = getProcessedBytes();
+        double percent = totalBytes > startOffset ? 100.0 * done / (totalBytes - startOffset) : 100.0;
+        long eta = getEtaSeconds();
+        return String.format("⏱  %.1f%% | %.0f строк/с | %.2f МБ/с | ошибок %.2f%% | осталось %s",
+                percent, getLinesPerSecond(), getBytesPerSecond() / (1024 * 1024),
+                getParseErrorRate() * 100, eta < 0 ? "?" : formatDuration(eta));
+    }
+
+    /**
+     * Выводит итоговую сводку по скорости и распределению времени между этапами
+     */
+    public void printSummary() {
+        System.out.printf("⏱  Скорость: %.0f строк/с, %.2f МБ/с%n",
+                getLinesPerSecond(), getBytesPerSecond() / (1024 * 1024));
+        System.out.printf("   Чтение: %.0f мс, разбор: %.0f мс, User-Agent: %.0f мс, агрегация: %.0f мс, "
+                        + "контрольные точки и публикация: %.0f мс%n",
+                getReadMillis(), getParseMillis(), getUserAgentMillis(), getAggregationMillis(), getCheckpointMillis());
+        System.out.printf("   Ошибок разбора: %.2f%%, выделено памяти: %.0f байт/строка%n",
+                getParseErrorRate() * 100, getAllocatedBytesPerLine());
+    }
+
+    /**
+     * Запускает периодический вывод строки прогресса во время анализа
+     * @param intervalSeconds интервал вывода в секундах
+     */
+    public void startProgressReporter(long intervalSeconds) {
+        progressExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "analysis-progress");
+            thread.setDaemon(true);
+            return thread;
+        });
+        progressExecutor.scheduleAtFixedRate(() -> {
+            if (running) {
+                System.out.println(progressLine());
+            }
+        }, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Регистрирует объект в платформенном MBean-сервере
+     */
+    public void registerMBean() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(OBJECT_NAME));
+        } catch (JMException e) {
+            System.out.println("⚠️  Не удалось зарегистрировать JMX MBean: " + e.getMessage());
+        }
+    }
+
+    // ========== ГЕТТЕРЫ MBEAN ==========
+
+    @Override
+    public long getProcessedLines() { return publishedLines; }
+
+    @Override
+    public long getProcessedBytes() {
+        long published = publishedLines; // Чтение volatile-поля до остальных счетчиков
+        return published == 0 ? 0 : position - startOffset;
+    }
+
+    @Override
+    public long getTotalBytes() { return totalBytes; }
+
+    @Override
+    public double getLinesPerSecond() {
+        double seconds = elapsedNanos() / 1e9;
+        return seconds > 0 ? getProcessedLines() / seconds : 0;
+    }
+
+    @Override
+    public double getBytesPerSecond() {
+        double seconds = elapsedNanos() / 1e9;
+        return seconds > 0 ? getProcessedBytes() / seconds : 0;
+    }
+
+    @Override
+    public double getParseErrorRate() {
+        long published = publishedLines;
+        return published > 0 ? (double) errors / published : 0;
+    }
+
+    @Override
+    public double getReadMillis() {
+        double processing = getParseMillis() + getUserAgentMillis() + getAggregationMillis() + getCheckpointMillis();
+        return Math.max(0, elapsedNanos() / 1e6 - processing);
+    }
+
+    @Override
+    public double getParseMillis() { return extrapolate(parseNanos); }
+
+    @Override
+    public double getUserAgentMillis() { return extrapolate(userAgentNanos); }
+
+    @Override
+    public double getAggregationMillis() { return extrapolate(aggregationNanos); }
+
+    @Override
+    public double getCheckpointMillis() { return checkpointNanos / 1e6; }
+
+    @Override
+    public double getAllocatedBytesPerLine() {
+        long published = publishedLines;
+        long allocated = running ? allocatedBytes() : allocatedAtEnd;
+        return published > 0 && allocated >= 0 ? (double) (allocated - allocatedAtStart) / published : 0;
+    }
+
+    @Override
+    public long getEtaSeconds() {
+        double rate = getBytesPerSecond();
+        if (rate <= 0) return -1;
+        long remaining = totalBytes - startOffset - getProcessedBytes();
+        return Math.max(0, (long) (remaining / rate));
+    }
+
+    // ========== ВСПОМОГАТЕЛЬНЫЕ МЕТОДЫ ==========
+
+    // Время на все строки, оцененное по замеренным: замер - каждая 64-я из всех строк,
+    // поэтому масштаб - отношение всех строк к замеренным из того же счетчика
+    private double extrapolate(long sampledNanos) {
+        long sampled = sampledLines;
+        return sampled > 0 ? sampledNanos / 1e6 * sampleCounter / sampled : 0;
+    }
+
+    private long elapsedNanos() {
+        if (startNanos == 0) return 0;
+        return (running ? System.nanoTime() : endNanos) - startNanos;
+    }
+
+    private long allocatedBytes() {
+        return threadBean != null ? threadBean.getThreadAllocatedBytes(ingestThreadId) : -1;
+    }
+
+    private static com.sun.management.ThreadMXBean findThreadBean() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) bean;
+            if (threadBean.isThreadAllocatedMemorySupported()) {
+                threadBean.setThreadAllocatedMemoryEnabled(true);
+                return threadBean;
+            }
+        }
+        return null;
+    }
+
+    private static String formatDuration(long seconds) {
+        return String.format("%02d:%02d:%02d", seconds / 3600, (seconds % 3600) / 60, seconds % 60);
+    }
+}
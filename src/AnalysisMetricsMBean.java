@@ -0,0 +1,29 @@
+// JMX-интерфейс для наблюдения за ходом анализа (имя по соглашению Standard MBean)
+public interface AnalysisMetricsMBean {
+
+    long getProcessedLines(); // Количество прочитанных строк
+
+    long getProcessedBytes(); // Количество прочитанных байт
+
+    long getTotalBytes(); // Размер анализируемого файла
+
+    double getLinesPerSecond(); // Скорость обработки в строках в секунду
+
+    double getBytesPerSecond(); // Скорость обработки в байтах в секунду
+
+    double getParseErrorRate(); // Доля строк с ошибками разбора (0-1)
+
+    double getReadMillis(); // Оценка времени чтения файла
+
+    double getParseMillis(); // Оценка времени разбора LogEntry
+
+    double getUserAgentMillis(); // Оценка времени классификации UserAgent
+
+    double getAggregationMillis(); // Оценка времени обновления статистики
+
+    double getCheckpointMillis(); // Время сохранения контрольных точек и публикации снимков
+
+    double getAllocatedBytesPerLine(); // Выделено памяти потоком анализа на одну строку
+
+    long getEtaSeconds(); // Оценка оставшегося времени, -1 если неизвестно
+}
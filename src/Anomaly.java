@@ -0,0 +1,53 @@
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * Инцидент, найденный детектором аномалий: интервал подряд идущих аномальных бакетов
+ * одного показателя. Передается слушателю при начале инцидента и при его завершении.
+ */
+public class Anomaly {
+
+    private final AnomalyDetector.Metric metric; // Показатель
+    private final long startSecond; // Начало первого аномального бакета (время лога, секунды от эпохи)
+    private final long endSecond; // Конец последнего аномального бакета
+    private final double peakValue; // Значение показателя с наибольшим отклонением
+    private final double baseline; // Обычное значение показателя перед началом инцидента
+    private final double peakScore; // Наибольшее отклонение в стандартных отклонениях
+    private final boolean ongoing; // Инцидент продолжается (false - завершился)
+
+    public Anomaly(AnomalyDetector.Metric metric, long startSecond, long endSecond, double peakValue,
+                   double baseline, double peakScore, boolean ongoing) {
+        this.metric = metric;
+        this.startSecond = startSecond;
+        this.endSecond = endSecond;
+        this.peakValue = peakValue;
+        this.baseline = baseline;
+        this.peakScore = peakScore;
+        this.ongoing = ongoing;
+    }
+
+    /**
+     * @return описание инцидента для вывода в консоль
+     */
+    public String describe() {
+        String text = metric.getTitle() + ": " + metric.format(peakValue) + " при обычном "
+                + metric.format(baseline) + " (z = " + String.format("%.1f", peakScore) + "), с " + getStartTime();
+        if (ongoing) {
+            return text;
+        }
+        return text + " по " + getEndTime() + " (" + (endSecond - startSecond) / 60 + " мин)";
+    }
+
+    // ========== ГЕТТЕРЫ ==========
+
+    public AnomalyDetector.Metric getMetric() { return metric; }
+    public long getStartSecond() { return startSecond; }
+    public long getEndSecond() { return endSecond; }
+    public double getPeakValue() { return peakValue; }
+    public double getBaseline() { return baseline; }
+    public double getPeakScore() { return peakScore; }
+    public boolean isOngoing() { return ongoing; }
+
+    public LocalDateTime getStartTime() { return LocalDateTime.ofEpochSecond(startSecond, 0, ZoneOffset.UTC); }
+    public LocalDateTime getEndTime() { return LocalDateTime.ofEpochSecond(endSecond, 0, ZoneOffset.UTC); }
+}
@@ -0,0 +1,334 @@
+/**
+ * Потоковый поиск аномалий в показателях трафика. Записи группируются в бакеты фиксированной
+ * длительности по времени лога; по закрытии бакета каждый показатель сравнивается со своей
+ * базовой линией EwmaBaseline, и при отклонении больше порога (в стандартных отклонениях)
+ * начинается инцидент. Подряд идущие аномальные бакеты объединяются в один инцидент,
+ * о начале и завершении которого сообщается слушателю.
+ * <p>
+ * Состояние не зависит от длины лога: счетчики текущего бакета, базовые линии
+ * и открытые инциденты по каждому показателю. Записи, пришедшие немного не по порядку,
+ * учитываются в текущем бакете. Последний, неполный бакет не оценивается.
+ * <p>
+ * Бакет закрывается, когда приходит запись из более позднего бакета. При отслеживании
+ * дописываемого лога записей во время сбоя может не быть вовсе, поэтому бакеты закрываются
+ * и по часам через {@link #advanceClock(long)}: иначе падение трафика не было бы замечено.
+ * Часы учитываются, только если лог живой - последние записи отстают от часов не больше чем
+ * на несколько бакетов. У старого лога (повтор или догон архива) время записей далеко позади,
+ * и часы закрыли бы все бакеты до текущего момента как пустые.
+ */
+public class AnomalyDetector {
+
+    public static final long DEFAULT_BUCKET_SECONDS = 60;
+    public static final double DEFAULT_THRESHOLD = 4;
+
+    private static final double ALPHA = 2.0 / (30 + 1); // Базовая линия примерно по последним 30 бакетам
+    private static final int WARMUP_BUCKETS = 10; // Бакетов до первой оценки отклонений
+    private static final int MIN_RATIO_REQUESTS = 20; // Меньше запросов в бакете - доли не оцениваются
+    private static final double MIN_RATIO_DEVIATION = 0.01; // Отклонения долей меньше 1% не считаются
+    private static final long MAX_GAP_SECONDS = 24 * 60 * 60; // Перерыв, после которого базовые линии строятся заново
+    private static final long LATE_RECORD_SECONDS = 10; // Ожидание опоздавших записей перед закрытием бакета по часам
+    private static final int MAX_CLOCK_LAG_BUCKETS = 3; // Отставание записей от часов, при котором лог считается живым
+
+    /**
+     * Отслеживаемые показатели
+     */
+    public enum Metric {
+        REQUESTS("requestsPerSecond", "Запросов в секунду", false),
+        TRAFFIC("bytesPerSecond", "Трафик в секунду", false),
+        ERROR_RATE("errorRate", "Доля ошибочных запросов", true),
+        NOT_FOUND_RATE("notFoundRate", "Доля ответов 404", true),
+        BOT_SHARE("botShare", "Доля запросов ботов", true);
+
+        private final String key; // Имя в JSON
+        private final String title; // Название для вывода
+        private final boolean ratio; // Доля от запросов бакета (аномален только рост)
+
+        Metric(String key, String title, boolean ratio) {
+            this.key = key;
+            this.title = title;
+            this.ratio = ratio;
+        }
+
+        public String getKey() { return key; }
+
+        public String getTitle() { return title; }
+
+        public boolean isRatio() { return ratio; }
+
+        /**
+         * @param value значение показателя
+         * @return значение в единицах вывода
+         */
+        public String format(double value) {
+            if (ratio) {
+                return String.format("%.2f%%", value * 100);
+            }
+            return this == TRAFFIC ? FileAnalysisResult.formatBytes(value) + "/с" : String.format("%.2f/с", value);
+        }
+    }
+
+    private static final Metric[] METRICS = Metric.values();
+
+    private final long bucketSeconds; // Длительность бакета
+    private final double threshold; // Порог отклонения в стандартных отклонениях
+    private final AnomalyListener listener; // Получатель инцидентов
+
+    // Счетчики текущего бакета
+    private long bucketStart = Long.MIN_VALUE; // Начало текущего бакета (Long.MIN_VALUE - записей еще не было)
+    private long lastRecordSecond = Long.MIN_VALUE; // Время самой поздней записи
+    private boolean recordsSinceClock; // Были ли записи после последнего вызова advanceClock
+    private boolean liveClock; // Идут ли записи в реальном времени (бакеты можно закрывать по часам)
+    private long requests;
+    private long errors;
+    private long notFound;
+    private long bots;
+    private long bytes;
+    private double bytesSquared; // Сумма квадратов размеров ответов (для шума трафика)
+    private double sizeSquareMean; // Скользящее среднее квадрата размера ответа (0 - еще не было запросов)
+
+    // Состояние по показателям (индекс - ordinal показателя)
+    private final EwmaBaseline[] baselines = new EwmaBaseline[METRICS.length];
+    private final boolean[] open = new boolean[METRICS.length]; // Идет ли инцидент
+    private final long[] incidentStart = new long[METRICS.length];
+    private final long[] incidentEnd = new long[METRICS.length];
+    private final double[] incidentBaseline = new double[METRICS.length];
+    private final double[] peakValue = new double[METRICS.length];
+    private final double[] peakScore = new double[METRICS.length];
+    private final int[] incidents = new int[METRICS.length]; // Количество инцидентов
+
+    /**
+     * @param bucketSeconds длительность бакета в секундах
+     * @param threshold порог отклонения в стандартных отклонениях
+     * @param listener получатель инцидентов
+     * @throws IllegalArgumentException если параметры вне допустимых значений
+     */
+    public AnomalyDetector(long bucketSeconds, double threshold, AnomalyListener listener) {
+        if (bucketSeconds <= 0) {
+            throw new IllegalArgumentException("Длительность бакета должна быть положительной: " + bucketSeconds);
+        }
+        if (!(threshold > 0)) {
+            throw new IllegalArgumentException("Порог отклонения должен быть положительным: " + threshold);
+        }
+        this.bucketSeconds = bucketSeconds;
+        this.threshold = threshold;
+        this.listener = listener;
+        for (int i = 0; i < METRICS.length; i++) {
+            baselines[i] = new EwmaBaseline(ALPHA, WARMUP_BUCKETS, threshold);
+        }
+    }
+
+    // ========== УЧЕТ ЗАПРОСОВ ==========
+
+    /**
+     * Учитывает запрос. Если он относится к более позднему бакету, текущий бакет
+     * закрывается и оценивается, а пропущенные бакеты без запросов учитываются как нулевой трафик.
+     * @param epochSecond время запроса
+     * @param responseCode код ответа
+     * @param responseBytes размер ответа
+     * @param bot запрос бота
+     */
+    public void observe(long epochSecond, int responseCode, long responseBytes, boolean bot) {
+        long bucket = Math.floorDiv(epochSecond, bucketSeconds) * bucketSeconds;
+        if (bucketStart == Long.MIN_VALUE) {
+            bucketStart = bucket;
+        } else if (bucket > bucketStart) {
+            advanceTo(bucket);
+        }
+        lastRecordSecond = Math.max(lastRecordSecond, epochSecond);
+        recordsSinceClock = true;
+        requests++;
+        bytes += responseBytes;
+        bytesSquared += (double) responseBytes * responseBytes;
+        if (responseCode >= 400 && responseCode < 600) {
+            errors++;
+        }
+        if (responseCode == 404) {
+            notFound++;
+        }
+        if (bot) {
+            bots++;
+        }
+    }
+
+    /**
+     * Закрывает и оценивает бакеты, закончившиеся к заданному моменту, даже если записей
+     * после них не было (пустые бакеты учитываются как нулевой трафик). Бакет закрывается
+     * с запасом в несколько секунд, чтобы успели прийти записи, которые сервер пишет с опозданием.
+     * <p>
+     * Живой ли лог, решается по записям, пришедшим после предыдущего вызова: если последняя из них
+     * отстает от часов больше чем на MAX_CLOCK_LAG_BUCKETS бакетов, лог повторяется или догоняется,
+     * и бакеты закрываются только по времени записей. Без новых записей прежнее решение сохраняется,
+     * поэтому сбой живого лога по-прежнему закрывает бакеты как пустые.
+     * @param epochSecond текущее время в той же шкале, что и время запросов в observe
+     */
+    public void advanceClock(long epochSecond) {
+        if (bucketStart == Long.MIN_VALUE) return;
+        if (recordsSinceClock) {
+            liveClock = epochSecond - lastRecordSecond <= MAX_CLOCK_LAG_BUCKETS * bucketSeconds;
+            recordsSinceClock = false;
+        }
+        if (!liveClock) return;
+        long bucket = Math.floorDiv(epochSecond - LATE_RECORD_SECONDS, bucketSeconds) * bucketSeconds;
+        if (bucket > bucketStart) {
+            advanceTo(bucket);
+        }
+    }
+
+    /**
+     * Завершает открытые инциденты в конце анализа (неполный последний бакет не оценивается)
+     */
+    public void finish() {
+        for (int i = 0; i < METRICS.length; i++) {
+            if (open[i]) {
+                closeIncident(i);
+            }
+        }
+    }
+
+    // Закрывает текущий бакет и пустые бакеты до заданного
+    private void advanceTo(long bucket) {
+        evaluateBucket();
+        long emptyBuckets = (bucket - bucketStart) / bucketSeconds - 1;
+        if (emptyBuckets * bucketSeconds > MAX_GAP_SECONDS) {
+            // Долгий перерыв (например, склеенные логи разных периодов) - прежняя норма не применима
+            finish();
+            for (EwmaBaseline baseline : baselines) {
+                baseline.clear();
+            }
+            sizeSquareMean = 0;
+        } else {
+            for (long i = 0; i < emptyBuckets; i++) {
+                bucketStart += bucketSeconds;
+                evaluateBucket();
+            }
+        }
+        bucketStart = bucket;
+    }
+
+    // Оценивает показатели текущего бакета и очищает его счетчики
+    private void evaluateBucket() {
+        // Шум трафика зависит от обычного количества запросов - берем его до учета бакета
+        double requestRate = baselines[Metric.REQUESTS.ordinal()].getMean();
+        evaluate(Metric.REQUESTS, (double) requests / bucketSeconds, requestNoise(requestRate));
+        evaluate(Metric.TRAFFIC, (double) bytes / bucketSeconds, trafficNoise(requestRate));
+        if (requests >= MIN_RATIO_REQUESTS) {
+            evaluate(Metric.ERROR_RATE, (double) errors / requests, ratioNoise(Metric.ERROR_RATE));
+            evaluate(Metric.NOT_FOUND_RATE, (double) notFound / requests, ratioNoise(Metric.NOT_FOUND_RATE));
+            evaluate(Metric.BOT_SHARE, (double) bots / requests, ratioNoise(Metric.BOT_SHARE));
+        }
+        if (requests > 0) {
+            double squareMean = bytesSquared / requests;
+            sizeSquareMean = sizeSquareMean == 0 ? squareMean : sizeSquareMean + ALPHA * (squareMean - sizeSquareMean);
+        }
+        requests = 0;
+        errors = 0;
+        notFound = 0;
+        bots = 0;
+        bytes = 0;
+        bytesSquared = 0;
+    }
+
+    private void evaluate(Metric metric, double value, double minDeviation) {
+        int i = metric.ordinal();
+        EwmaBaseline baseline = baselines[i];
+        double score = baseline.score(value, minDeviation);
+        boolean anomalous = metric.isRatio() ? score >= threshold : Math.abs(score) >= threshold;
+        if (anomalous) {
+            boolean started = !open[i];
+            if (started) {
+                open[i] = true;
+                incidents[i]++;
+                incidentStart[i] = bucketStart;
+                incidentBaseline[i] = baseline.getMean();
+                peakScore[i] = 0;
+            }
+            if (Math.abs(score) >= Math.abs(peakScore[i])) {
+                peakScore[i] = score;
+                peakValue[i] = value;
+            }
+            incidentEnd[i] = bucketStart + bucketSeconds;
+            if (started) {
+                listener.onAnomaly(incident(i, true));
+            }
+        } else if (open[i]) {
+            closeIncident(i);
+        }
+        baseline.update(value, minDeviation);
+    }
+
+    // Уровни шума показателей: отклонения в их пределах не считаются аномальными
+
+    // Пуассоновский шум количества запросов в бакете
+    private double requestNoise(double requestRate) {
+        return Math.sqrt(Math.max(requestRate * bucketSeconds, 1)) / bucketSeconds;
+    }
+
+    // Трафик бакета - сумма случайного (пуассоновского) числа ответов случайного размера,
+    // ее дисперсия равна ожидаемому числу запросов, умноженному на средний квадрат размера
+    // (квадрат среднего плюс дисперсия размера): редкие крупные ответы - это не аномалия
+    private double trafficNoise(double requestRate) {
+        double expectedRequests = Math.max(requestRate * bucketSeconds, 1);
+        return Math.max(Math.sqrt(expectedRequests * sizeSquareMean) / bucketSeconds, 1);
+    }
+
+    // Биномиальный шум доли при количестве запросов в текущем бакете
+    private double ratioNoise(Metric metric) {
+        double p = Math.min(Math.max(baselines[metric.ordinal()].getMean(), 1.0 / requests), 1);
+        return Math.max(Math.sqrt(p * (1 - p) / requests), MIN_RATIO_DEVIATION);
+    }
+
+    private void closeIncident(int i) {
+        open[i] = false;
+        listener.onAnomaly(incident(i, false));
+    }
+
+    private Anomaly incident(int i, boolean ongoing) {
+        return new Anomaly(METRICS[i], incidentStart[i], incidentEnd[i], peakValue[i], incidentBaseline[i],
+                peakScore[i], ongoing);
+    }
+
+    /**
+     * Сбрасывает состояние перед анализом следующего файла
+     */
+    public void reset() {
+        bucketStart = Long.MIN_VALUE;
+        lastRecordSecond = Long.MIN_VALUE;
+        recordsSinceClock = false;
+        liveClock = false;
+        requests = 0;
+        errors = 0;
+        notFound = 0;
+        bots = 0;
+        bytes = 0;
+        bytesSquared = 0;
+        sizeSquareMean = 0;
+        for (int i = 0; i < METRICS.length; i++) {
+            baselines[i].clear();
+            open[i] = false;
+            incidents[i] = 0;
+        }
+    }
+
+    // ========== ГЕТТЕРЫ ==========
+
+    public long getBucketSeconds() { return bucketSeconds; }
+    public double getThreshold() { return threshold; }
+
+    /**
+     * @param metric показатель
+     * @return количество инцидентов по показателю
+     */
+    public int getIncidentCount(Metric metric) { return incidents[metric.ordinal()]; }
+
+    /**
+     * @param metric показатель
+     * @return идет ли сейчас инцидент по показателю
+     */
+    public boolean isIncidentOpen(Metric metric) { return open[metric.ordinal()]; }
+
+    /**
+     * @param metric показатель
+     * @return текущее обычное значение показателя
+     */
+    public double getBaseline(Metric metric) { return baselines[metric.ordinal()].getMean(); }
+}
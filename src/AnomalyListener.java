@@ -0,0 +1,9 @@
+// Получатель инцидентов детектора аномалий (вызывается в потоке анализа)
+public interface AnomalyListener {
+
+    /**
+     * Вызывается при начале инцидента (anomaly.isOngoing() == true) и при его завершении
+     * @param anomaly описание инцидента
+     */
+    void onAnomaly(Anomaly anomaly);
+}
@@ -0,0 +1,394 @@
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Класс для разбора и хранения параметров командной строки
+ */
+public class AppOptions {
+
+    // ========== ПОЛЯ КЛАССА ==========
+
+    private File checkpointDir; // Каталог контрольных точек (null - без контрольных точек)
+    private long checkpointIntervalSeconds = 30; // Интервал сохранения контрольной точки
+    private File snapshotDir; // Каталог для экспорта снимков статистики
+    private final List<File> snapshotsToMerge = new ArrayList<>(); // Снимки для объединения
+    private boolean metricsEnabled; // Включена ли инструментация и JMX MBean
+    private long progressIntervalSeconds; // Интервал вывода прогресса (0 - не выводить)
+    private LogFilter filter; // Фильтр записей (null - без фильтрации)
+    private LogFormat logFormat = LogFormat.COMBINED; // Формат строк лога
+    private long offHeapBudgetBytes; // Бюджет памяти вне кучи для агрегатов (0 - агрегаты в куче)
+    private File spillDir = new File(System.getProperty("java.io.tmpdir")); // Каталог сброса агрегатов
+    private long sessionTimeoutSeconds = SessionTracker.DEFAULT_TIMEOUT_SECONDS; // Тайм-аут неактивности сессии
+    private File botSignaturesFile; // Файл сигнатур ботов (null - встроенные сигнатуры)
+    private File botRangesFile; // Файл диапазонов адресов краулеров (null - без проверки)
+    private final List<File> logsToMerge = new ArrayList<>(); // Логи серверов для слияния по времени
+    private long reorderWindowSeconds; // Допустимое опоздание строки внутри лога при слиянии
+    private int httpPort = -1; // Порт HTTP-сервера статистики (-1 - сервер не запускается)
+    private boolean follow; // Отслеживать дописывание файла вместо однократного анализа
+    private double sampleRate; // Доля файла для выборочного анализа (0 - полный анализ)
+    private long sampleTimeMillis; // Ограничение времени выборочного анализа (0 - без ограничения)
+    private Long sampleSeed; // Начальное значение генератора выборки (null - случайное)
+    private boolean anomalyDetection; // Искать аномалии показателей по бакетам времени
+    private long anomalyBucketSeconds = AnomalyDetector.DEFAULT_BUCKET_SECONDS; // Длительность бакета
+    private double anomalyThreshold = AnomalyDetector.DEFAULT_THRESHOLD; // Порог в стандартных отклонениях
+    private boolean routeTemplates; // Учитывать страницы по шаблонам маршрутов
+    private boolean keepQuery; // Сохранять строку запроса в шаблонах
+    private int maxRoutes = RouteTemplates.DEFAULT_MAX_ROUTES; // Предел количества маршрутов
+    private final List<File> files = new ArrayList<>(); // Файлы для однократного анализа без ввода путей
+
+    // ========== РАЗБОР АРГУМЕНТОВ ==========
+
+    /**
+     * Разбирает аргументы командной строки
+     * @param args аргументы, переданные в main
+     * @return объект с параметрами
+     * @throws IllegalArgumentException если аргументы заданы неверно
+     */
+    public static AppOptions parse(String[] args) {
+        AppOptions options = new AppOptions();
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            switch (arg) {
+                case "--checkpoint-dir":
+                    options.checkpointDir = new File(requireValue(args, ++i, arg));
+                    break;
+                case "--checkpoint-interval":
+                    options.checkpointIntervalSeconds = parsePositiveLong(requireValue(args, ++i, arg), arg);
+                    break;
+                case "--export-snapshot":
+                    options.snapshotDir = new File(requireValue(args, ++i, arg));
+                    break;
+                case "--merge-snapshots":
+                    requireValue(args, i + 1, arg);
+                    while (i + 1 < args.length && !args[i + 1].startsWith("--")) {
+                        options.snapshotsToMerge.add(new File(args[++i]));
+                    }
+                    break;
+                case "--metrics":
+                    options.metricsEnabled = true;
+                    break;
+                case "--progress":
+                    options.progressIntervalSeconds = parsePositiveLong(requireValue(args, ++i, arg), arg);
+                    options.metricsEnabled = true;
+                    break;
+                case "--filter":
+                    options.filter = LogFilter.parse(requireValue(args, ++i, arg));
+                    break;
+                case "--log-format":
+                    options.logFormat = LogFormat.nginx(requireValue(args, ++i, arg));
+                    break;
+                case "--apache-format":
+                    options.logFormat = LogFormat.apache(requireValue(args, ++i, arg));
+                    break;
+                case "--offheap-budget":
+                    options.offHeapBudgetBytes = parsePositiveLong(requireValue(args, ++i, arg), arg) * 1024 * 1024;
+                    MemoryBudget.checkLimit(options.offHeapBudgetBytes);
+                    break;
+                case "--spill-dir":
+                    options.spillDir = new File(requireValue(args, ++i, arg));
+                    break;
+                case "--session-timeout":
+                    options.sessionTimeoutSeconds = parsePositiveLong(requireValue(args, ++i, arg), arg) * 60;
+                    break;
+                case "--bot-signatures":
+                    options.botSignaturesFile = new File(requireValue(args, ++i, arg));
+                    break;
+                case "--bot-ranges":
+                    options.botRangesFile = new File(requireValue(args, ++i, arg));
+                    break;
+                case "--merge-logs":
+                    requireValue(args, i + 1, arg);
+                    while (i + 1 < args.length && !args[i + 1].startsWith("--")) {
+                        options.logsToMerge.add(new File(args[++i]));
+                    }
+                    break;
+                case "--reorder-window":
+                    options.reorderWindowSeconds = parseNonNegativeLong(requireValue(args, ++i, arg), arg);
+                    break;
+                case "--http-port":
+                    long port = parseNonNegativeLong(requireValue(args, ++i, arg), arg);
+                    if (port > 65535) {
+                        throw new IllegalArgumentException("Неверный номер порта: " + port);
+                    }
+                    options.httpPort = (int) port;
+                    break;
+                case "--follow":
+                    options.follow = true;
+                    break;
+                case "--sample-rate":
+                    options.sampleRate = parsePercent(requireValue(args, ++i, arg), arg) / 100;
+                    break;
+                case "--sample-time":
+                    options.sampleTimeMillis = parsePositiveLong(requireValue(args, ++i, arg), arg) * 1000;
+                    break;
+                case "--sample-seed":
+                    try {
+                        options.sampleSeed = Long.parseLong(requireValue(args, ++i, arg));
+                    } catch (NumberFormatException e) {
+                        throw new IllegalArgumentException("Параметр " + arg + " должен быть целым числом: " + args[i]);
+                    }
+                    break;
+                case "--anomalies":
+                    options.anomalyDetection = true;
+                    break;
+                case "--anomaly-bucket":
+                    options.anomalyBucketSeconds = parsePositiveLong(requireValue(args, ++i, arg), arg);
+                    options.anomalyDetection = true;
+                    break;
+                case "--anomaly-threshold":
+                    options.anomalyThreshold = parsePositiveDouble(requireValue(args, ++i, arg), arg);
+                    options.anomalyDetection = true;
+                    break;
+                case "--route-templates":
+                    options.routeTemplates = true;
+                    break;
+                case "--keep-query":
+                    options.keepQuery = true;
+                    options.routeTemplates = true;
+                    break;
+                case "--route-limit":
+                    long limit = parsePositiveLong(requireValue(args, ++i, arg), arg);
+                    options.maxRoutes = (int) Math.min(limit, Integer.MAX_VALUE - 1);
+                    options.routeTemplates = true;
+                    break;
+                default:
+                    if (arg.startsWith("--")) {
+                        throw new IllegalArgumentException("Неизвестный параметр: " + arg);
+                    }
+                    options.files.add(new File(arg));
+            }
+        }
+        return options;
+    }
+
+    /**
+     * @return текст справки по параметрам командной строки
+     */
+    public static String usage() {
+        return String.join(System.lineSeparator(),
+                "Запуск: MainApplication [параметры] [файл...]",
+                "  Файлы, указанные в командной строке, анализируются сразу, без интерактивного ввода путей.",
+                "  Сжатые файлы .gz (в том числе склеенные при ротации) распаковываются на лету.",
+                "Параметры:",
+                "  --checkpoint-dir <каталог>       сохранять контрольные точки и продолжать анализ с них",
+                "  --checkpoint-interval <секунды>  интервал сохранения контрольной точки (по умолчанию 30)",
+                "  --export-snapshot <каталог>      сохранять двоичный снимок статистики каждого файла",
+                "  --merge-snapshots <файл>...      объединить снимки статистики и вывести общий результат",
+                "  --metrics                        замерять скорость и этапы анализа, публиковать JMX MBean",
+                "  --progress <секунды>             периодически выводить прогресс и оставшееся время",
+                "  --filter \"<условия>\"            учитывать только подходящие записи, например:",
+                "                                   \"status=5xx path^=/api/ bot=false time>=2023-09-25T04:00\"",
+                "                                   поля: status, method, path (=, ^=, ~=), ip (CIDR), time, bot",
+                "  --log-format '<формат>'          формат строк в синтаксисе log_format nginx, например:",
+                "                                   '$remote_addr - $remote_user [$time_local] \"$request\" $status",
+                "                                   $body_bytes_sent \"$http_referer\" \"$http_user_agent\" $request_time'",
+                "  --apache-format '<формат>'       формат строк в синтаксисе LogFormat Apache (%h %t %r %>s %b %D ...)",
+                "  --offheap-budget <МБ>            хранить IP и страницы вне кучи в пределах бюджета,",
+                "                                   при его превышении сбрасывать их на диск; бюджет должен",
+                "                                   быть меньше -XX:MaxDirectMemorySize (по умолчанию равен -Xmx)",
+                "  --spill-dir <каталог>            каталог для сброса агрегатов (по умолчанию временный)",
+                "  --session-timeout <минуты>       тайм-аут неактивности сессии пользователя (по умолчанию 30)",
+                "  --bot-signatures <файл>          сигнатуры ботов: строки \"Название = подстрока, подстрока\"",
+                "  --bot-ranges <файл>              проверять краулеров по диапазонам: \"Googlebot = 66.249.64.0/19\"",
+                "  --merge-logs <файл>...           анализировать логи нескольких серверов как один поток по времени",
+                "  --reorder-window <секунды>       на сколько секунд строка может опоздать внутри лога (по умолчанию 0)",
+                "  --http-port <порт>               отдавать текущую статистику в JSON: http://127.0.0.1:<порт>/stats",
+                "                                   (0 - любой свободный порт, он выводится при запуске)",
+                "  --follow                         отслеживать дописывание файла (как tail -f) вместо однократного анализа",
+                "  --sample-rate <процент>          быстрая оценка по случайной выборке блоков файла (например, 1)",
+                "  --sample-time <секунды>          выборочная оценка с ограничением по времени",
+                "  --sample-seed <число>            начальное значение генератора выборки для повторяемости",
+                "  --anomalies                      сообщать о всплесках ошибок, 404, ботов и о скачках трафика",
+                "  --anomaly-bucket <секунды>       длительность бакета для поиска аномалий (по умолчанию 60)",
+                "  --anomaly-threshold <число>      порог отклонения в стандартных отклонениях (по умолчанию 4)",
+                "  --route-templates                учитывать страницы по шаблонам маршрутов: /users/{id}, /files/{uuid}",
+                "  --keep-query                     сохранять в шаблонах имена параметров запроса (значения - заполнители)",
+                "  --route-limit <число>            предел количества маршрутов (по умолчанию 10000)");
+    }
+
+    private static String requireValue(String[] args, int index, String option) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException("Не указано значение параметра " + option);
+        }
+        return args[index];
+    }
+
+    private static long parsePositiveLong(String value, String option) {
+        try {
+            long result = Long.parseLong(value);
+            if (result <= 0) {
+                throw new NumberFormatException();
+            }
+            return result;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Параметр " + option + " должен быть положительным числом: " + value);
+        }
+    }
+
+    private static long parseNonNegativeLong(String value, String option) {
+        try {
+            long result = Long.parseLong(value);
+            if (result < 0) {
+                throw new NumberFormatException();
+            }
+            return result;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Параметр " + option + " должен быть неотрицательным числом: " + value);
+        }
+    }
+
+    private static double parsePositiveDouble(String value, String option) {
+        try {
+            double result = Double.parseDouble(value);
+            if (!(result > 0) || Double.isInfinite(result)) {
+                throw new NumberFormatException();
+            }
+            return result;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Параметр " + option + " должен быть положительным числом: " + value);
+        }
+    }
+
+    private static double parsePercent(String value, String option) {
+        try {
+            double result = Double.parseDouble(value);
+            if (!(result > 0 && result <= 100)) {
+                throw new NumberFormatException();
+            }
+            return result;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Параметр " + option + " должен быть числом от 0 до 100: " + value);
+        }
+    }
+
+    // ========== ГЕТТЕРЫ ==========
+
+    /**
+     * @return контрольная точка для анализа или null, если контрольные точки отключены
+     */
+    public AnalysisCheckpoint createCheckpoint() {
+        return checkpointDir != null ? new AnalysisCheckpoint(checkpointDir, checkpointIntervalSeconds) : null;
+    }
+
+    /**
+     * @return каталог для экспорта снимков или null
+     */
+    public File getSnapshotDir() { return snapshotDir; }
+
+    /**
+     * @return снимки для объединения (пустой список - обычный режим)
+     */
+    public List<File> getSnapshotsToMerge() { return snapshotsToMerge; }
+
+    /**
+     * @return включена ли инструментация анализа
+     */
+    public boolean isMetricsEnabled() { return metricsEnabled; }
+
+    /**
+     * @return интервал вывода прогресса в секундах (0 - не выводить)
+     */
+    public long getProgressIntervalSeconds() { return progressIntervalSeconds; }
+
+    /**
+     * @return формат строк лога (по умолчанию - combined)
+     */
+    public LogFormat getLogFormat() { return logFormat; }
+
+    /**
+     * @return бюджет памяти вне кучи для агрегатов или null, если агрегаты хранятся в куче
+     */
+    public MemoryBudget createMemoryBudget() {
+        return offHeapBudgetBytes > 0 ? new MemoryBudget(offHeapBudgetBytes) : null;
+    }
+
+    /**
+     * @return каталог для сброса агрегатов на диск
+     */
+    public File getSpillDir() { return spillDir; }
+
+    /**
+     * @return тайм-аут неактивности сессии в секундах
+     */
+    public long getSessionTimeoutSeconds() { return sessionTimeoutSeconds; }
+
+    /**
+     * @return файл сигнатур ботов или null
+     */
+    public File getBotSignaturesFile() { return botSignaturesFile; }
+
+    /**
+     * @return файл диапазонов адресов краулеров или null
+     */
+    public File getBotRangesFile() { return botRangesFile; }
+
+    /**
+     * @return фильтр записей или null
+     */
+    public LogFilter getFilter() { return filter; }
+
+    /**
+     * @return логи серверов для слияния по времени (пустой список - обычный режим)
+     */
+    public List<File> getLogsToMerge() { return logsToMerge; }
+
+    /**
+     * @return допустимое опоздание строки внутри лога при слиянии в секундах
+     */
+    public long getReorderWindowSeconds() { return reorderWindowSeconds; }
+
+    /**
+     * @return порт HTTP-сервера статистики или -1
+     */
+    public int getHttpPort() { return httpPort; }
+
+    /**
+     * @return отслеживать ли дописывание файла
+     */
+    public boolean isFollow() { return follow; }
+
+    /**
+     * @return включен ли выборочный анализ
+     */
+    public boolean isSampling() { return sampleRate > 0 || sampleTimeMillis > 0; }
+
+    /**
+     * Создает объект выборочного анализа по параметрам командной строки
+     * @return объект выборочного анализа или null, если выборка не задана
+     */
+    public LogSampler createSampler() {
+        if (!isSampling()) {
+            return null;
+        }
+        long seed = sampleSeed != null ? sampleSeed : ThreadLocalRandom.current().nextLong();
+        return new LogSampler(sampleRate > 0 ? sampleRate : 1, sampleTimeMillis, seed);
+    }
+
+    /**
+     * @return включен ли поиск аномалий
+     */
+    public boolean isAnomalyDetection() { return anomalyDetection; }
+
+    /**
+     * Создает детектор аномалий по параметрам командной строки
+     * @param listener получатель инцидентов
+     * @return детектор или null, если поиск аномалий не включен
+     */
+    public AnomalyDetector createAnomalyDetector(AnomalyListener listener) {
+        return anomalyDetection ? new AnomalyDetector(anomalyBucketSeconds, anomalyThreshold, listener) : null;
+    }
+
+    /**
+     * @return шаблоны маршрутов или null, если страницы учитываются по исходным путям
+     */
+    public RouteTemplates createRouteTemplates() {
+        return routeTemplates ? new RouteTemplates(keepQuery, maxRoutes) : null;
+    }
+
+    /**
+     * @return файлы для однократного анализа (пустой список - интерактивный ввод путей)
+     */
+    public List<File> getFiles() { return files; }
+}
@@ -0,0 +1,108 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Официальные диапазоны IPv4-адресов краулеров для проверки, что запрос с User-Agent
+ * краулера действительно пришел от него. Диапазоны загружаются из локального файла
+ * (без обращений к сети) в двоичный префиксный бор: каждый узел - очередной бит адреса,
+ * в узле конца префикса хранится маска краулеров, которым принадлежит диапазон.
+ * Формат файла такой же, как у сигнатур:
+ * <pre>
+ *   Googlebot = 66.249.64.0/19, 192.178.5.0/27
+ *   YandexBot = 5.255.253.0/24, 77.88.5.0/24
+ * </pre>
+ */
+public class BotRanges {
+
+    private static final int INITIAL_NODES = 256;
+
+    private int[] children = new int[INITIAL_NODES * 2]; // Дочерние узлы по биту 0 и 1 (0 - нет)
+    private long[] masks = new long[INITIAL_NODES]; // Маска краулеров, чей диапазон кончается в узле
+    private int nodeCount = 1; // Узел 0 - корень
+    private long coveredMask; // Краулеры, для которых известны диапазоны
+
+    // ========== ЗАГРУЗКА ==========
+
+    /**
+     * Загружает диапазоны из файла
+     * @param file файл со строками "Название = CIDR, CIDR"
+     * @param signatures сигнатуры, задающие номера краулеров
+     * @return диапазоны краулеров
+     * @throws IllegalArgumentException если файл задан неверно
+     */
+    public static BotRanges load(File file, BotSignatures signatures) throws IOException {
+        return parse(Files.readAllLines(file.toPath(), StandardCharsets.UTF_8), signatures);
+    }
+
+    public static BotRanges parse(List<String> lines, BotSignatures signatures) {
+        BotRanges ranges = new BotRanges();
+        for (String raw : lines) {
+            String line = raw.trim();
+            if (line.isEmpty() || line.startsWith("#")) continue;
+            int eq = line.indexOf('=');
+            if (eq <= 0) {
+                throw new IllegalArgumentException("Неверная строка диапазонов краулеров: " + raw);
+            }
+            String name = line.substring(0, eq).trim();
+            int id = signatures.indexOf(name);
+            if (id < 0) {
+                throw new IllegalArgumentException("Краулер не описан в сигнатурах ботов: " + name);
+            }
+            for (String part : line.substring(eq + 1).split(",")) {
+                if (!part.trim().isEmpty()) {
+                    ranges.add(CidrRange.parse(part.trim()), 1L << id);
+                }
+            }
+        }
+        return ranges;
+    }
+
+    // Добавляет диапазон для краулеров из маски
+    public void add(CidrRange range, long mask) {
+        int node = 0;
+        int network = range.getNetwork();
+        for (int bit = 0; bit < range.getPrefixLength(); bit++) {
+            int index = node * 2 + ((network >>> (31 - bit)) & 1);
+            if (children[index] == 0) {
+                children[index] = newNode();
+            }
+            node = children[index];
+        }
+        masks[node] |= mask;
+        coveredMask |= mask;
+    }
+
+    private int newNode() {
+        if (nodeCount == masks.length) {
+            masks = Arrays.copyOf(masks, masks.length * 2);
+            children = Arrays.copyOf(children, children.length * 2);
+        }
+        return nodeCount++;
+    }
+
+    // ========== ПРОВЕРКА ==========
+
+    /**
+     * @param ip IPv4-адрес
+     * @return маска краулеров, в диапазоны которых входит адрес
+     */
+    public long lookup(int ip) {
+        long result = masks[0];
+        int node = 0;
+        for (int bit = 0; bit < 32; bit++) {
+            node = children[node * 2 + ((ip >>> (31 - bit)) & 1)];
+            if (node == 0) break;
+            result |= masks[node];
+        }
+        return result;
+    }
+
+    /**
+     * @return маска краулеров, для которых известны диапазоны
+     */
+    public long getCoveredMask() { return coveredMask; }
+}
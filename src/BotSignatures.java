@@ -0,0 +1,218 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Сигнатуры ботов, скомпилированные в автомат Ахо-Корасик. Автомат за один проход по строке
+ * User-Agent без учета регистра находит все известные краулеры и общие признаки бота
+ * ("bot", "crawler", ...). Список задается текстом, по строке на краулер:
+ * <pre>
+ *   # Название = подстроки User-Agent через запятую
+ *   Googlebot = googlebot
+ *   YandexBot = yandexbot, yandex.com/bots
+ *   * = bot, crawler, spider          (общие признаки без определения краулера)
+ * </pre>
+ * Результат поиска - битовая маска: бит i - краулер с номером i, старший бит - общий признак бота.
+ */
+public class BotSignatures {
+
+    public static final long GENERIC_BOT = Long.MIN_VALUE; // Бит общего признака бота
+    public static final int MAX_CRAWLERS = 63;
+    private static final String GENERIC_NAME = "*";
+    private static final int ALPHABET = 128; // Сигнатуры - ASCII без учета регистра
+
+    // Встроенный список сигнатур, используемый без файла настроек
+    private static final String[] DEFAULT_SIGNATURES = {
+            "Googlebot = googlebot",
+            "YandexBot = yandexbot",
+            "Bingbot = bingbot",
+            "Baiduspider = baiduspider",
+            "DuckDuckBot = duckduckbot",
+            "Applebot = applebot",
+            "AhrefsBot = ahrefsbot",
+            "SemrushBot = semrushbot",
+            "MJ12bot = mj12bot",
+            "PetalBot = petalbot",
+            "FacebookBot = facebookbot",
+            "* = bot, crawler, spider, indexer, scraper"
+    };
+
+    private static BotSignatures defaults; // Встроенные сигнатуры (компилируются при первом обращении)
+
+    private final String[] names; // Названия краулеров по номерам
+    private final int[] transitions; // Переходы автомата: состояние * ALPHABET + символ
+    private final long[] outputs; // Маска найденного в состоянии (с учетом суффиксных ссылок)
+
+    private BotSignatures(String[] names, int[] transitions, long[] outputs) {
+        this.names = names;
+        this.transitions = transitions;
+        this.outputs = outputs;
+    }
+
+    // ========== КОМПИЛЯЦИЯ ==========
+
+    /**
+     * @return встроенные сигнатуры
+     */
+    public static synchronized BotSignatures defaults() {
+        if (defaults == null) {
+            defaults = parse(Arrays.asList(DEFAULT_SIGNATURES));
+        }
+        return defaults;
+    }
+
+    /**
+     * Загружает сигнатуры из файла
+     * @param file файл со строками "Название = подстрока, подстрока"
+     * @return скомпилированные сигнатуры
+     * @throws IllegalArgumentException если файл задан неверно
+     */
+    public static BotSignatures load(File file) throws IOException {
+        return parse(Files.readAllLines(file.toPath(), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Компилирует сигнатуры: строит бор подстрок, затем обходом в ширину достраивает
+     * суффиксные ссылки и превращает бор в полную таблицу переходов
+     * @param lines строки "Название = подстрока, подстрока" (пустые и начинающиеся с # пропускаются)
+     * @return скомпилированные сигнатуры
+     * @throws IllegalArgumentException если строки заданы неверно
+     */
+    public static BotSignatures parse(List<String> lines) {
+        List<String> names = new ArrayList<>();
+        List<String> patterns = new ArrayList<>();
+        List<Long> patternMasks = new ArrayList<>();
+        for (String raw : lines) {
+            String line = raw.trim();
+            if (line.isEmpty() || line.startsWith("#")) continue;
+            int eq = line.indexOf('=');
+            if (eq <= 0) {
+                throw new IllegalArgumentException("Неверная строка сигнатур ботов: " + raw);
+            }
+            String name = line.substring(0, eq).trim();
+            long mask;
+            if (GENERIC_NAME.equals(name)) {
+                mask = GENERIC_BOT;
+            } else {
+                int id = names.indexOf(name);
+                if (id < 0) {
+                    if (names.size() == MAX_CRAWLERS) {
+                        throw new IllegalArgumentException("Слишком много краулеров (не более " + MAX_CRAWLERS + ")");
+                    }
+                    names.add(name);
+                    id = names.size() - 1;
+                }
+                mask = 1L << id;
+            }
+            for (String part : line.substring(eq + 1).split(",")) {
+                String pattern = part.trim().toLowerCase(Locale.ROOT);
+                if (pattern.isEmpty()) continue;
+                for (int i = 0; i < pattern.length(); i++) {
+                    if (pattern.charAt(i) >= ALPHABET) {
+                        throw new IllegalArgumentException("Сигнатура должна состоять из ASCII-символов: " + pattern);
+                    }
+                }
+                patterns.add(pattern);
+                patternMasks.add(mask);
+            }
+        }
+
+        // Бор: переход -1 означает его отсутствие
+        List<int[]> trie = new ArrayList<>();
+        List<Long> output = new ArrayList<>();
+        trie.add(newNode());
+        output.add(0L);
+        for (int p = 0; p < patterns.size(); p++) {
+            String pattern = patterns.get(p);
+            int state = 0;
+            for (int i = 0; i < pattern.length(); i++) {
+                int c = pattern.charAt(i);
+                if (trie.get(state)[c] < 0) {
+                    trie.get(state)[c] = trie.size();
+                    trie.add(newNode());
+                    output.add(0L);
+                }
+                state = trie.get(state)[c];
+            }
+            output.set(state, output.get(state) | patternMasks.get(p));
+        }
+
+        // Суффиксные ссылки обходом в ширину; отсутствующие переходы берутся у суффикса
+        int states = trie.size();
+        int[] transitions = new int[states * ALPHABET];
+        long[] outputs = new long[states];
+        int[] fail = new int[states];
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        for (int c = 0; c < ALPHABET; c++) {
+            int child = trie.get(0)[c];
+            transitions[c] = Math.max(child, 0);
+            if (child > 0) {
+                fail[child] = 0;
+                queue.add(child);
+            }
+        }
+        outputs[0] = output.get(0);
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            outputs[state] = output.get(state) | outputs[fail[state]];
+            for (int c = 0; c < ALPHABET; c++) {
+                int child = trie.get(state)[c];
+                if (child >= 0) {
+                    fail[child] = transitions[fail[state] * ALPHABET + c];
+                    transitions[state * ALPHABET + c] = child;
+                    queue.add(child);
+                } else {
+                    transitions[state * ALPHABET + c] = transitions[fail[state] * ALPHABET + c];
+                }
+            }
+        }
+        return new BotSignatures(names.toArray(new String[0]), transitions, outputs);
+    }
+
+    private static int[] newNode() {
+        int[] node = new int[ALPHABET];
+        Arrays.fill(node, -1);
+        return node;
+    }
+
+    // ========== ПОИСК ==========
+
+    /**
+     * Находит все сигнатуры в строке User-Agent за один проход без учета регистра
+     * @param userAgent строка User-Agent
+     * @return маска краулеров, старший бит (GENERIC_BOT) - общий признак бота; 0 - не бот
+     */
+    public long match(CharSequence userAgent) {
+        long result = 0;
+        int state = 0;
+        for (int i = 0; i < userAgent.length(); i++) {
+            char c = userAgent.charAt(i);
+            if (c >= ALPHABET) {
+                state = 0; // Не-ASCII символ не входит ни в одну сигнатуру
+                continue;
+            }
+            if (c >= 'A' && c <= 'Z') {
+                c += 'a' - 'A';
+            }
+            state = transitions[state * ALPHABET + c];
+            result |= outputs[state];
+        }
+        return result;
+    }
+
+    // Номер краулера по названию (-1, если его нет в списке)
+    public int indexOf(String name) {
+        for (int i = 0; i < names.length; i++) {
+            if (names[i].equals(name)) return i;
+        }
+        return -1;
+    }
+
+    public String getName(int id) { return names[id]; }
+}
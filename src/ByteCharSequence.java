@@ -0,0 +1,61 @@
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Представление участка байтового буфера в виде CharSequence без копирования.
+ * Каждый байт рассматривается как отдельный символ, поэтому содержимое совпадает
+ * с настоящей строкой только для ASCII (см. isAscii). Объект изменяемый и переиспользуется
+ * для каждой строки лога, поэтому хранить ссылку на него нельзя - нужно вызвать toString().
+ */
+public final class ByteCharSequence implements CharSequence {
+
+    private byte[] buffer; // Общий буфер чтения
+    private int start; // Начало участка (включительно)
+    private int end; // Конец участка (не включительно)
+
+    // Направляет представление на новый участок буфера
+    public void set(byte[] buffer, int start, int end) {
+        this.buffer = buffer;
+        this.start = start;
+        this.end = end;
+    }
+
+    @Override
+    public int length() {
+        return end - start;
+    }
+
+    @Override
+    public char charAt(int index) {
+        return (char) (buffer[start + index] & 0xFF);
+    }
+
+    @Override
+    public CharSequence subSequence(int from, int to) {
+        ByteCharSequence result = new ByteCharSequence();
+        result.set(buffer, start + from, start + to);
+        return result;
+    }
+
+    // Состоит ли участок только из ASCII-символов
+    public boolean isAscii() {
+        for (int i = start; i < end; i++) {
+            if (buffer[i] < 0) return false;
+        }
+        return true;
+    }
+
+    // Совпадает ли участок с заданной ASCII-строкой
+    public boolean contentEquals(String value) {
+        if (value.length() != end - start) return false;
+        for (int i = 0; i < value.length(); i++) {
+            if (buffer[start + i] != value.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    // Копия участка в виде строки (байты декодируются как UTF-8)
+    @Override
+    public String toString() {
+        return new String(buffer, start, end - start, StandardCharsets.UTF_8);
+    }
+}
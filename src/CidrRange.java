@@ -0,0 +1,77 @@
+// Диапазон IPv4-адресов в нотации CIDR (например, 10.0.0.0/8)
+public class CidrRange {
+
+    private final int network; // Адрес сети
+    private final int prefixLength; // Длина префикса в битах
+    private final int mask; // Маска сети
+
+    public CidrRange(int network, int prefixLength) {
+        if (prefixLength < 0 || prefixLength > 32) {
+            throw new IllegalArgumentException("Неверная длина префикса: " + prefixLength);
+        }
+        this.prefixLength = prefixLength;
+        this.mask = prefixLength == 0 ? 0 : -1 << (32 - prefixLength);
+        this.network = network & mask;
+    }
+
+    // Разбор диапазона вида "a.b.c.d/n" или одиночного адреса "a.b.c.d"
+    public static CidrRange parse(String cidr) {
+        int slash = cidr.indexOf('/');
+        String address = slash >= 0 ? cidr.substring(0, slash) : cidr;
+        long ip = parseIpv4(address);
+        if (ip < 0) {
+            throw new IllegalArgumentException("Неверный IPv4-адрес: " + address);
+        }
+        int prefixLength = 32;
+        if (slash >= 0) {
+            try {
+                prefixLength = Integer.parseInt(cidr.substring(slash + 1));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Неверная длина префикса: " + cidr);
+            }
+        }
+        return new CidrRange((int) ip, prefixLength);
+    }
+
+    // Разбор IPv4-адреса без создания промежуточных объектов, -1 если адрес неверный
+    public static long parseIpv4(CharSequence address) {
+        long result = 0;
+        int octet = -1;
+        int dots = 0;
+        for (int i = 0; i < address.length(); i++) {
+            char c = address.charAt(i);
+            if (c >= '0' && c <= '9') {
+                octet = (octet < 0 ? 0 : octet * 10) + (c - '0');
+                if (octet > 255) return -1;
+            } else if (c == '.' && octet >= 0 && dots < 3) {
+                result = (result << 8) | octet;
+                octet = -1;
+                dots++;
+            } else {
+                return -1;
+            }
+        }
+        if (octet < 0 || dots != 3) return -1;
+        return (result << 8) | octet;
+    }
+
+    // Проверка, входит ли адрес в диапазон
+    public boolean contains(int ip) {
+        return (ip & mask) == network;
+    }
+
+    public boolean contains(CharSequence address) {
+        long ip = parseIpv4(address);
+        return ip >= 0 && contains((int) ip);
+    }
+
+    // Геттеры
+    public int getNetwork() { return network; }
+    public int getPrefixLength() { return prefixLength; }
+
+    @Override
+    public String toString() {
+        return ((network >>> 24) & 0xFF) + "." + ((network >>> 16) & 0xFF) + "."
+                + ((network >>> 8) & 0xFF) + "." + (network & 0xFF) + "/" + prefixLength;
+    }
+}
@@ -0,0 +1,125 @@
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Оценки по случайной выборке блоков файла (кластерная выборка: блок - кластер строк).
+ * Для каждого блока запоминаются количество строк x и значения показателей y
+ * (ошибки, запросы ботов, трафик...). По ним считаются:
+ * <ul>
+ *   <li>итоги по всему файлу: (N / k) * сумма y, где N - блоков в файле, k - в выборке;</li>
+ *   <li>доли: отношение R = сумма y / сумма x (ratio estimator).</li>
+ * </ul>
+ * Доверительные интервалы (95%) - по дисперсии между блоками с поправкой на конечность
+ * совокупности (1 - k / N); для доли используется линеаризация: Var(R) = (1 - f) / (k * x̄²) * s²,
+ * где s² - выборочная дисперсия остатков y - R * x.
+ */
+public class ClusterSample {
+
+    private static final double Z_95 = 1.959964; // Квантиль нормального распределения для 95%
+
+    private final long populationBlocks; // N - количество блоков в файле
+    private long blocks; // k - количество блоков в выборке
+    private double sumX; // Сумма строк по блокам
+    private double sumX2; // Сумма квадратов строк по блокам
+    // Для каждого показателя: сумма y, сумма y², сумма x*y. Блоки, где показателя не было, дают y = 0
+    private final Map<String, double[]> sums = new HashMap<>();
+
+    /**
+     * @param populationBlocks количество блоков в файле
+     * @throws IllegalArgumentException если количество блоков не положительно
+     */
+    public ClusterSample(long populationBlocks) {
+        if (populationBlocks <= 0) {
+            throw new IllegalArgumentException("Количество блоков должно быть положительным: " + populationBlocks);
+        }
+        this.populationBlocks = populationBlocks;
+    }
+
+    /**
+     * Добавляет прочитанный блок
+     * @param lines количество записей в блоке
+     * @param values значения показателей в блоке
+     */
+    public void addBlock(long lines, Map<String, Long> values) {
+        blocks++;
+        sumX += lines;
+        sumX2 += (double) lines * lines;
+        values.forEach((name, value) -> {
+            double[] s = sums.computeIfAbsent(name, k -> new double[3]);
+            s[0] += value;
+            s[1] += (double) value * value;
+            s[2] += (double) lines * value;
+        });
+    }
+
+    // ========== ОЦЕНКИ ==========
+
+    /**
+     * @return оценка количества записей во всем файле
+     */
+    public double estimateTotalLines() {
+        return blocks == 0 ? 0 : sumX * populationBlocks / blocks;
+    }
+
+    public double totalLinesHalfWidth() {
+        return totalHalfWidth(sumX, sumX2);
+    }
+
+    /**
+     * @param name показатель
+     * @return оценка итога показателя по всему файлу
+     */
+    public double estimateTotal(String name) {
+        double[] s = sums.get(name);
+        return blocks == 0 || s == null ? 0 : s[0] * populationBlocks / blocks;
+    }
+
+    public double totalHalfWidth(String name) {
+        double[] s = sums.get(name);
+        return s == null ? 0 : totalHalfWidth(s[0], s[1]);
+    }
+
+    // Полуширина интервала для итога: Z * N * sqrt((1 - f) * s² / k)
+    private double totalHalfWidth(double sum, double sumSquares) {
+        if (blocks < 2) return Double.NaN;
+        double variance = (sumSquares - sum * sum / blocks) / (blocks - 1);
+        return Z_95 * populationBlocks * Math.sqrt(Math.max(0, correction() * variance / blocks));
+    }
+
+    /**
+     * @param name показатель
+     * @return доля показателя среди записей (0-1)
+     */
+    public double ratio(String name) {
+        double[] s = sums.get(name);
+        return sumX == 0 || s == null ? 0 : s[0] / sumX;
+    }
+
+    /**
+     * @param name показатель
+     * @return полуширина 95% доверительного интервала доли (NaN, если блоков меньше двух)
+     */
+    public double ratioHalfWidth(String name) {
+        if (blocks < 2 || sumX == 0) return Double.NaN;
+        double[] s = sums.getOrDefault(name, new double[3]);
+        double r = s[0] / sumX;
+        // Сумма (y - R x)² = сумма y² - 2R * сумма xy + R² * сумма x²
+        double residuals = s[1] - 2 * r * s[2] + r * r * sumX2;
+        double meanX = sumX / blocks;
+        double variance = correction() * Math.max(0, residuals) / (blocks - 1) / (blocks * meanX * meanX);
+        return Z_95 * Math.sqrt(variance);
+    }
+
+    // Поправка на конечность совокупности
+    private double correction() {
+        return 1 - (double) blocks / populationBlocks;
+    }
+
+    // Названия всех показателей, встретившихся в выборке
+    public Set<String> getNames() { return sums.keySet(); }
+
+    public long getSampledBlocks() { return blocks; }
+    public long getPopulationBlocks() { return populationBlocks; }
+    public long getSampledLines() { return (long) sumX; }
+}
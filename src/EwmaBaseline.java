@@ -0,0 +1,91 @@
+/**
+ * Скользящая базовая линия показателя: экспоненциально взвешенные среднее и дисперсия (EWMA).
+ * Состояние - три числа, независимо от длины истории. Отклонение нового значения измеряется
+ * z-оценкой (x - среднее) / стандартное отклонение.
+ * <p>
+ * Чтобы инцидент не "съедал" базовую линию, после разогрева выбросы (отклонение больше
+ * maxScore стандартных отклонений) сдвигают среднее так, как если бы отклонение было равно
+ * одному стандартному: короткий всплеск почти не смещает норму, а устойчивый сдвиг уровня
+ * становится нормой за несколько десятков значений. В дисперсию выброс входит урезанным
+ * до maxScore стандартных отклонений: если его не учитывать совсем, дисперсия ряда с редкими
+ * крупными значениями остается заниженной, и следующие такие значения снова считаются выбросами.
+ */
+public class EwmaBaseline {
+
+    private final double alpha; // Вес нового значения (0-1]
+    private final int warmup; // Количество значений до начала оценки отклонений
+    private final double maxScore; // Отклонение, начиная с которого значение - выброс
+    private double mean;
+    private double variance;
+    private long count; // Количество учтенных значений
+
+    /**
+     * @param alpha вес нового значения (0-1]
+     * @param warmup количество значений, после которого базовая линия считается надежной
+     * @param maxScore отклонение в стандартных отклонениях, начиная с которого значение считается выбросом
+     * @throws IllegalArgumentException если параметры вне допустимых значений
+     */
+    public EwmaBaseline(double alpha, int warmup, double maxScore) {
+        if (!(alpha > 0 && alpha <= 1)) {
+            throw new IllegalArgumentException("Вес нового значения должен быть в интервале (0, 1]: " + alpha);
+        }
+        if (warmup < 1 || !(maxScore > 0)) {
+            throw new IllegalArgumentException("Неверные параметры базовой линии: " + warmup + ", " + maxScore);
+        }
+        this.alpha = alpha;
+        this.warmup = warmup;
+        this.maxScore = maxScore;
+    }
+
+    /**
+     * Учитывает новое значение показателя
+     * @param value значение
+     * @param minDeviation нижняя граница стандартного отклонения (шум, ниже которого отклонения не считаются)
+     */
+    public void update(double value, double minDeviation) {
+        if (count == 0) {
+            mean = value;
+        } else {
+            double diff = value - mean;
+            double deviation = deviation(minDeviation);
+            if (isReady() && Math.abs(diff) > maxScore * deviation) {
+                // Выброс
+                double clamped = maxScore * deviation;
+                mean += alpha * Math.copySign(deviation, diff);
+                variance = (1 - alpha) * (variance + alpha * clamped * clamped);
+            } else {
+                mean += alpha * diff;
+                variance = (1 - alpha) * (variance + alpha * diff * diff);
+            }
+        }
+        count++;
+    }
+
+    /**
+     * @param value значение
+     * @param minDeviation нижняя граница стандартного отклонения
+     * @return z-оценка значения относительно базовой линии (0 до окончания разогрева)
+     */
+    public double score(double value, double minDeviation) {
+        return isReady() ? (value - mean) / deviation(minDeviation) : 0;
+    }
+
+    private double deviation(double minDeviation) {
+        return Math.max(Math.sqrt(variance), Math.max(minDeviation, Double.MIN_NORMAL));
+    }
+
+    /**
+     * @return накоплено ли достаточно значений для оценки отклонений
+     */
+    public boolean isReady() { return count >= warmup; }
+
+    public double getMean() { return mean; }
+
+    public double getStandardDeviation() { return Math.sqrt(variance); }
+
+    public void clear() {
+        mean = 0;
+        variance = 0;
+        count = 0;
+    }
+}
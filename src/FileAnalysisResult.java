@@ -62,8 +62,8 @@ public class FileAnalysisResult {
                 statistics.getAverageVisitsPerUser());
         System.out.println("9. Количество реальных пользователей: " + statistics.getUniqueHumanUsers());
         System.out.println("10. Количество ошибочных запросов: " + statistics.getErrorRequests());
-        System.out.println("11. Количество существующих страниц: " + statistics.getExistingPages().size());
-        System.out.println("12. Количество несуществующих страниц: " + statistics.getNotFoundPages().size());
+        System.out.println("11. Количество существующих страниц: " + statistics.getExistingPagesCount());
+        System.out.println("12. Количество несуществующих страниц: " + statistics.getNotFoundPagesCount());
         System.out.println("13. Пиковая посещаемость в секунду: " + statistics.getPeakVisitsPerSecond());
         System.out.println("14. Максимальная посещаемость одним пользователем: " + statistics.getMaxVisitsPerUser());
 
@@ -91,17 +91,147 @@ public class FileAnalysisResult {
             System.out.println("   Нет данных о браузерах");
         }
 
+        printSessions();
+        printCrawlers();
+        printAnomalies();
+        printRoutes();
+        printExtendedFields();
+
         if (totalLines == 0) {
             System.out.println("⚠️  Файл не содержит валидных лог-записей");
         }
     }
 
+    /**
+     * Выводит количество сессий и распределения их длительности и глубины
+     */
+    private void printSessions() {
+        Log2Histogram durations = statistics.getSessionDurations();
+        Log2Histogram depths = statistics.getSessionDepths();
+        System.out.printf("18. Количество сессий (тайм-аут %d мин): %d, средняя длительность: %.1f с, "
+                        + "средняя глубина: %.2f запросов%n", statistics.getSessionTimeoutSeconds() / 60,
+                statistics.getSessionCount(), durations.getMean(), depths.getMean());
+        System.out.println("19. Распределение сессий по длительности (секунды):");
+        printHistogram(durations);
+        System.out.println("20. Распределение сессий по глубине (запросы):");
+        printHistogram(depths);
+    }
+
+    /**
+     * Выводит количество запросов по краулерам и результат проверки их адресов
+     */
+    private void printCrawlers() {
+        Map<String, Integer> crawlers = statistics.getCrawlerCounts();
+        System.out.println("21. Запросы краулеров:");
+        if (crawlers.isEmpty()) {
+            System.out.println("   Нет запросов от известных краулеров");
+            return;
+        }
+        Map<String, Integer> verified = statistics.getVerifiedCrawlerCounts();
+        Map<String, Integer> spoofed = statistics.getSpoofedCrawlerCounts();
+        crawlers.entrySet().stream()
+                .sorted(Map.Entry.<String, Integer>comparingByValue().reversed())
+                .forEach(e -> {
+                    String name = e.getKey();
+                    System.out.printf("   - %s: %d (%.2f%%)", name, e.getValue(),
+                            totalLines > 0 ? (double) e.getValue() / totalLines * 100 : 0);
+                    if (verified.containsKey(name) || spoofed.containsKey(name)) {
+                        System.out.printf(", подтверждено: %d, поддельных: %d",
+                                verified.getOrDefault(name, 0), spoofed.getOrDefault(name, 0));
+                    }
+                    System.out.println();
+                });
+    }
+
+    /**
+     * Выводит количество инцидентов по показателям, если поиск аномалий включен
+     * (сами инциденты выводятся по ходу анализа)
+     */
+    private void printAnomalies() {
+        AnomalyDetector anomalies = statistics.getAnomalyDetector();
+        if (anomalies == null) {
+            return;
+        }
+        System.out.printf("22. Инциденты (бакеты по %d с, порог %.1f стандартных отклонения):%n",
+                anomalies.getBucketSeconds(), anomalies.getThreshold());
+        for (AnomalyDetector.Metric metric : AnomalyDetector.Metric.values()) {
+            System.out.printf("   - %s: %d%n", metric.getTitle(), anomalies.getIncidentCount(metric));
+        }
+    }
+
+    /**
+     * Выводит самые частые маршруты, если страницы учитываются по шаблонам маршрутов
+     */
+    private void printRoutes() {
+        RouteTemplates routes = statistics.getRouteTemplates();
+        if (routes == null) {
+            return;
+        }
+        System.out.printf("   Маршрутов в дереве: %d из %d", routes.getRouteCount(), routes.getMaxRoutes());
+        if (routes.getOverflowCount() > 0) {
+            System.out.printf(", путей обрезано по пределу: %d", routes.getOverflowCount());
+        }
+        System.out.println();
+        printTopRoutes("   Самые запрашиваемые маршруты (код 200):", statistics.getExistingPageCounts());
+        printTopRoutes("   Маршруты с ответом 404:", statistics.getNotFoundPageCounts());
+    }
+
+    private void printTopRoutes(String title, Map<String, Integer> counts) {
+        if (counts.isEmpty()) {
+            return;
+        }
+        System.out.println(title);
+        counts.entrySet().stream()
+                .sorted(Map.Entry.<String, Integer>comparingByValue().reversed())
+                .limit(10)
+                .forEach(e -> System.out.printf("   - %s: %d%n", e.getKey(), e.getValue()));
+    }
+
+    private void printHistogram(Log2Histogram histogram) {
+        if (histogram.getTotalCount() == 0) {
+            System.out.println("   Нет данных о сессиях");
+            return;
+        }
+        for (int i = 0; i < histogram.getBucketCount(); i++) {
+            long count = histogram.getCount(i);
+            if (count > 0) {
+                long lower = Log2Histogram.lowerBound(i);
+                long upper = Log2Histogram.upperBound(i);
+                String range = lower == upper ? String.valueOf(lower) : lower + "-" + upper;
+                System.out.printf("   - %s: %d (%.2f%%)%n", range, count, (double) count / histogram.getTotalCount() * 100);
+            }
+        }
+    }
+
+    /**
+     * Выводит статистику полей расширенных форматов лога (время обработки, upstream, хосты),
+     * если они присутствовали в записях
+     */
+    private void printExtendedFields() {
+        if (statistics.getRequestTimeCount() > 0) {
+            System.out.printf("   Среднее время обработки запроса: %.2f мс (максимум %.2f мс)%n",
+                    statistics.getAverageRequestTimeMillis(), statistics.getMaxRequestTimeMillis());
+        }
+        if (statistics.getUpstreamTimeCount() > 0) {
+            System.out.printf("   Среднее время ответа upstream: %.2f мс%n",
+                    statistics.getAverageUpstreamTimeMillis());
+        }
+        Map<String, Integer> hosts = statistics.getHostCounts();
+        if (!hosts.isEmpty()) {
+            System.out.println("   Запросы по хостам:");
+            hosts.entrySet().stream()
+                    .sorted(Map.Entry.<String, Integer>comparingByValue().reversed())
+                    .limit(10)
+                    .forEach(e -> System.out.printf("   - %s: %d%n", e.getKey(), e.getValue()));
+        }
+    }
+
     /**
      * Форматирует размер в байтах в читаемый вид (КБ, МБ, ГБ)
      * @param bytes размер в байтах
      * @return отформатированная строка с размером
      */
-    private String formatBytes(double bytes) {
+    static String formatBytes(double bytes) {
         if (bytes < 1024) {
             return String.format("%.0f байт", bytes);
         } else if (bytes < 1024 * 1024) {
@@ -202,17 +332,17 @@ public class FileAnalysisResult {
     /**
      * @return количество существующих страниц
      */
-    public int getExistingPagesCount() { return statistics.getExistingPages().size(); }
+    public int getExistingPagesCount() { return statistics.getExistingPagesCount(); }
 
     /**
      * @return количество несуществующих страниц
      */
-    public int getNotFoundPagesCount() { return statistics.getNotFoundPages().size(); }
+    public int getNotFoundPagesCount() { return statistics.getNotFoundPagesCount(); }
 
     /**
      * @return количество сайтов-рефереров
      */
-    public int getRefererDomainsCount() { return statistics.getRefererDomains().size(); }
+    public int getRefererDomainsCount() { return statistics.getRefererDomainsCount(); }
 
     // ========== ГЕТТЕРЫ ДЛЯ КОЛЛЕКЦИЙ ==========
 
@@ -1,26 +1,167 @@
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
+import java.io.FileInputStream;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
 
 // Класс, отвечающий за чтение файл построчно + за выброс исключения при превышении макс доп длины строки
 public class FileContentReader {
 
-    private static final int MAX_LINE_LENGTH = 1024;
+    static final int MAX_LINE_LENGTH = 1024;
+    static final int BUFFER_SIZE = 64 * 1024; // Размер буфера потокового чтения
 
-    // Метод, читающий файл построчно через BufferedReader
-    public List<String> readLines(File file) throws IOException {
-        List<String> lines = new ArrayList<>();
-        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                validateLineLength(file.getName(), line.length());
-                lines.add(line);
+    // Обработчик строки в виде участка [start, end) общего буфера чтения (без перевода строки).
+    // Буфер переиспользуется, поэтому после возврата из handle его содержимое меняется
+    @FunctionalInterface
+    public interface RawLineHandler {
+        void handle(byte[] buffer, int start, int end, long nextOffset);
+    }
+
+    // Метод, читающий файл потоково без создания строк: обработчик получает участки общего буфера.
+    // Длина строки здесь проверяется в байтах. Незавершенная последняя строка (ее, возможно,
+    // еще дописывают) передается только при emitPartialLine.
+    // Возвращает смещение за последней переданной строкой.
+    public long readRawLines(File file, long startOffset, RawLineHandler handler,
+                             boolean emitPartialLine) throws IOException {
+        return scanLines(file, startOffset, (buffer, start, end, nextOffset) -> {
+            validateLineLength(file.getName(), end - start);
+            handler.handle(buffer, start, end, nextOffset);
+        }, emitPartialLine);
+    }
+
+    // Метод, открывающий файл для потокового чтения. Файлы .gz распаковываются на лету
+    // в отдельных потоках, смещения в них отсчитываются в распакованных данных
+    static InputStream open(File file) throws IOException {
+        return isCompressed(file) ? new ParallelGzipInputStream(file) : new FileInputStream(file);
+    }
+
+    // Метод, проверяющий, сжат ли файл (по расширению .gz)
+    static boolean isCompressed(File file) {
+        return file.getName().endsWith(".gz");
+    }
+
+    // Метод, оценивающий размер распакованных данных для вывода прогресса. Для .gz берется размер
+    // из конца файла (точен для одного члена меньше 4 ГБ, для склеенных архивов - только последнего)
+    static long estimateSize(File file) throws IOException {
+        if (!isCompressed(file) || file.length() < 4) {
+            return file.length();
+        }
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            in.seek(in.length() - 4);
+            long size = Integer.reverseBytes(in.readInt()) & 0xFFFFFFFFL;
+            return Math.max(size, in.length());
+        }
+    }
+
+    // Метод, отслеживающий дописывание файла (как tail -f): читает новые строки по мере появления.
+    // Незавершенная последняя строка не передается, пока писатель не допишет ее перевод строки.
+    // Если файл стал короче прочитанного (усечен при ротации), чтение начинается с начала.
+    // Между проверками вызывается onIdle. Работает, пока поток не прерван.
+    public void followRawLines(File file, long startOffset, RawLineHandler handler,
+                               Runnable onIdle, long pollMillis) throws IOException, InterruptedException {
+        if (isCompressed(file)) {
+            throw new IOException("Сжатый файл " + file.getName() + " нельзя отслеживать, он не дописывается");
+        }
+        long offset = startOffset;
+        while (!Thread.currentThread().isInterrupted()) {
+            long length = file.length();
+            if (length < offset) {
+                System.out.println("⚠️  Файл " + file.getName() + " усечен, читаем его с начала");
+                offset = 0;
+            }
+            long next = offset;
+            if (length > offset) {
+                next = scanLines(file, offset, (buffer, start, end, nextOffset) -> {
+                    validateLineLength(file.getName(), end - start);
+                    handler.handle(buffer, start, end, nextOffset);
+                }, false);
+            }
+            if (next == offset) { // Новых завершенных строк нет
+                onIdle.run();
+                Thread.sleep(pollMillis);
+            }
+            offset = next;
+        }
+    }
+
+    // Разбиение файла на строки по '\n' в общем буфере. Возвращает смещение за последней
+    // переданной строкой (незавершенная строка в конце передается только при emitPartialLine)
+    private long scanLines(File file, long startOffset, RawLineHandler handler,
+                           boolean emitPartialLine) throws IOException {
+        try (InputStream in = open(file)) {
+            skip(in, startOffset);
+
+            byte[] buffer = new byte[BUFFER_SIZE];
+            long bufferOffset = startOffset; // Смещение в файле первого байта буфера
+            int lineStart = 0;
+            int limit = 0;
+            int scanFrom = 0;
+
+            while (true) {
+                int newline = -1;
+                for (int i = scanFrom; i < limit; i++) {
+                    if (buffer[i] == '\n') {
+                        newline = i;
+                        break;
+                    }
+                }
+
+                if (newline >= 0) {
+                    emitLine(buffer, lineStart, newline, bufferOffset + newline + 1, handler);
+                    lineStart = newline + 1;
+                    scanFrom = lineStart;
+                    continue;
+                }
+
+                // Переносим незавершенную строку в начало буфера и дочитываем файл
+                if (lineStart > 0) {
+                    System.arraycopy(buffer, lineStart, buffer, 0, limit - lineStart);
+                    bufferOffset += lineStart;
+                    limit -= lineStart;
+                    lineStart = 0;
+                }
+                if (limit == buffer.length) {
+                    throw new LongLineException(file.getName(), limit, MAX_LINE_LENGTH);
+                }
+                scanFrom = limit;
+                int read = in.read(buffer, limit, buffer.length - limit);
+                if (read < 0) {
+                    break;
+                }
+                limit += read;
+            }
+
+            // Последняя строка без перевода строки в конце файла
+            if (!emitPartialLine) {
+                return bufferOffset;
+            }
+            if (limit > 0) {
+                emitLine(buffer, 0, limit, bufferOffset + limit, handler);
             }
+            return bufferOffset + limit;
+        }
+    }
+
+    // Переход к смещению: в обычном файле - позиционированием, в сжатом - распаковкой с пропуском
+    private static void skip(InputStream in, long offset) throws IOException {
+        if (in instanceof FileInputStream) {
+            ((FileInputStream) in).getChannel().position(offset);
+            return;
+        }
+        for (long left = offset; left > 0; ) {
+            long skipped = in.skip(left);
+            if (skipped <= 0) {
+                break;
+            }
+            left -= skipped;
+        }
+    }
+
+    private void emitLine(byte[] buffer, int start, int end, long nextOffset, RawLineHandler handler) {
+        if (end > start && buffer[end - 1] == '\r') {
+            end--;
         }
-        return lines;
+        handler.handle(buffer, start, end, nextOffset);
     }
 
     private void validateLineLength(String fileName, int length) {
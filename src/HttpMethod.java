@@ -2,6 +2,8 @@
 public enum HttpMethod {
     GET, POST, PUT, DELETE, HEAD, OPTIONS, PATCH, CONNECT, TRACE, UNKNOWN;
 
+    private static final HttpMethod[] VALUES = values(); // Кэш, чтобы не копировать массив values()
+
     public static HttpMethod fromString(String method) {
         if (method == null || method.isEmpty()) {
             return UNKNOWN;
@@ -13,4 +15,21 @@ public enum HttpMethod {
             return UNKNOWN;
         }
     }
+
+    // Определение метода по участку байтового буфера без создания строки (без учета регистра)
+    public static HttpMethod fromBytes(byte[] buffer, int start, int end) {
+        for (HttpMethod method : VALUES) {
+            String name = method.name();
+            if (method != UNKNOWN && name.length() == end - start) {
+                int i = 0;
+                while (i < name.length() && (buffer[start + i] & 0xDF) == name.charAt(i)) {
+                    i++;
+                }
+                if (i == name.length()) {
+                    return method;
+                }
+            }
+        }
+        return UNKNOWN;
+    }
 }
\ No newline at end of file
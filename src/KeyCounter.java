@@ -0,0 +1,50 @@
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * Счетчик строковых ключей, который может расти до очень большой кардинальности
+ * (IP-адреса, страницы). Реализации: StringCounter в куче и OffHeapStringCounter
+ * вне кучи со сбросом на диск.
+ */
+public interface KeyCounter {
+
+    // Увеличивает счетчик ключа, заданного участком [start, end) последовательности
+    void add(CharSequence seq, int start, int end, int delta);
+
+    // Увеличивает счетчик ключа на delta
+    default void add(CharSequence key, int delta) {
+        add(key, 0, key.length(), delta);
+    }
+
+    // Количество различных ключей
+    int size();
+
+    default boolean isEmpty() {
+        return size() == 0;
+    }
+
+    // Максимальное значение счетчика (0 для пустого счетчика)
+    int max();
+
+    void forEach(ObjIntConsumer<String> action);
+
+    // Удаляет все ключи и освобождает занятые ресурсы
+    void clear();
+
+    // Копия ключей в виде обычного множества
+    default Set<String> toSet() {
+        Set<String> result = new HashSet<>();
+        forEach((key, count) -> result.add(key));
+        return result;
+    }
+
+    // Копия содержимого в виде обычной карты
+    default Map<String, Integer> toMap() {
+        Map<String, Integer> result = new HashMap<>();
+        forEach(result::put);
+        return result;
+    }
+}
@@ -0,0 +1,101 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Гистограмма неотрицательных значений с корзинами по степеням двойки:
+ * корзина 0 - значение 0, корзина i - значения от 2^(i-1) до 2^i - 1.
+ * Занимает фиксированную память при любом количестве значений и складывается с другой гистограммой.
+ */
+public class Log2Histogram {
+
+    private static final int BUCKETS = 64;
+
+    private final long[] counts = new long[BUCKETS]; // Количество значений в корзинах
+    private long totalCount; // Общее количество значений
+    private long totalSum; // Сумма значений (для среднего)
+
+    // Добавляет значение (отрицательные считаются нулем)
+    public void add(long value) {
+        add(value, 1);
+    }
+
+    public void add(long value, long count) {
+        long v = Math.max(0, value);
+        counts[bucket(v)] += count;
+        totalCount += count;
+        totalSum += v * count;
+    }
+
+    // Складывает с другой гистограммой
+    public void addAll(Log2Histogram other) {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] += other.counts[i];
+        }
+        totalCount += other.totalCount;
+        totalSum += other.totalSum;
+    }
+
+    public void clear() {
+        Arrays.fill(counts, 0);
+        totalCount = 0;
+        totalSum = 0;
+    }
+
+    // Номер корзины для значения
+    public static int bucket(long value) {
+        return value <= 0 ? 0 : 64 - Long.numberOfLeadingZeros(value);
+    }
+
+    // Нижняя граница корзины
+    public static long lowerBound(int bucket) {
+        return bucket == 0 ? 0 : 1L << (bucket - 1);
+    }
+
+    // Верхняя граница корзины (включительно)
+    public static long upperBound(int bucket) {
+        return bucket == 0 ? 0 : bucket == BUCKETS - 1 ? Long.MAX_VALUE : (1L << bucket) - 1;
+    }
+
+    public int getBucketCount() { return BUCKETS; }
+    public long getCount(int bucket) { return counts[bucket]; }
+    public long getTotalCount() { return totalCount; }
+
+    public double getMean() {
+        return totalCount > 0 ? (double) totalSum / totalCount : 0;
+    }
+
+    // ========== СОХРАНЕНИЕ И ВОССТАНОВЛЕНИЕ ==========
+
+    // Записывает только непустые корзины
+    public void writeState(DataOutput out) throws IOException {
+        int used = 0;
+        for (long count : counts) {
+            if (count > 0) used++;
+        }
+        BinaryIO.writeVarInt(out, used);
+        for (int i = 0; i < BUCKETS; i++) {
+            if (counts[i] > 0) {
+                BinaryIO.writeVarInt(out, i);
+                BinaryIO.writeVarLong(out, counts[i]);
+            }
+        }
+        BinaryIO.writeVarLong(out, totalSum);
+    }
+
+    // Добавляет к гистограмме состояние, записанное writeState
+    public void mergeState(DataInput in) throws IOException {
+        int used = BinaryIO.readVarInt(in);
+        for (int i = 0; i < used; i++) {
+            int bucket = BinaryIO.readVarInt(in);
+            if (bucket < 0 || bucket >= BUCKETS) {
+                throw new IOException("Неверный номер корзины гистограммы: " + bucket);
+            }
+            long count = BinaryIO.readVarLong(in);
+            counts[bucket] += count;
+            totalCount += count;
+        }
+        totalSum += BinaryIO.readVarLong(in);
+    }
+}
@@ -1,9 +1,6 @@
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
-import java.time.format.DateTimeFormatterBuilder;
-import java.util.Locale;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.time.ZoneOffset;
 
 // Класс, отвечающий за разбор строки лога на составляющие
 public class LogEntry {
@@ -13,61 +10,45 @@ public class LogEntry {
     private final HttpMethod method; // HTTP метод
     private final String path; // Путь запроса
     private final int responseCode; // Код ответа
-    private final int responseSize; // Размер ответа в байтах
+    private final long responseSize; // Размер ответа в байтах
     private final String referer; // URL источника запроса
-    private final UserAgent agent; // Информация о браузере/устройстве
+    private final String agentString; // Исходная строка User-Agent
+    private final String host; // Виртуальный хост (null, если нет в формате)
+    private final long requestTimeMicros; // Время обработки запроса в мкс (-1, если нет в формате)
+    private final long upstreamTimeMicros; // Время ответа upstream в мкс (-1, если нет в формате)
+    private UserAgent agent; // Информация о браузере/устройстве (разбирается при первом обращении)
 
-    // Конструктор для парсинга временных меток
-    private static final DateTimeFormatter DATE_FORMATTER = new DateTimeFormatterBuilder()
-            .appendPattern("dd/MMM/yyyy:HH:mm:ss Z")
-            .toFormatter(Locale.ENGLISH);
-
-    // Регулярное выражение для парсинга логов
-    private static final String LOG_REGEX =
-            "^([\\d.]+) \\S+ \\S+ \\[(.*?)\\] \"(\\w+) (.*?) HTTP/.*?\" (\\d+) (-|\\d+) \"([^\"]*)\" \"([^\"]*)\"$";
-
-    // Конструктор для принятия и разбиения строки на составляющие
+    // Конструктор для принятия и разбиения строки стандартного формата combined на составляющие
     public LogEntry(String logLine) {
-        Pattern pattern = Pattern.compile(LOG_REGEX);
-        Matcher matcher = pattern.matcher(logLine);
-
-        if (matcher.find() && matcher.groupCount() >= 8) {
-            this.ipAddr = matcher.group(1);
-            this.time = parseDateTime(matcher.group(2));
-            this.method = HttpMethod.fromString(matcher.group(3));
-            this.path = matcher.group(4);
-            this.responseCode = Integer.parseInt(matcher.group(5));
-            this.responseSize = parseResponseSize(matcher.group(6));
-            this.referer = "-".equals(matcher.group(7)) ? null : matcher.group(7);
-            this.agent = new UserAgent(matcher.group(8));
-        } else {
-            throw new IllegalArgumentException("Неверный формат лог-строки: " + logLine);
-        }
+        this(logLine, LogFormat.COMBINED);
     }
 
-    // Парсинг временной метки
-    private LocalDateTime parseDateTime(String dateTimeString) {
-        try {
-            return LocalDateTime.parse(dateTimeString, DATE_FORMATTER);
-        } catch (Exception e) {
-            throw new IllegalArgumentException("Неверный формат даты: " + dateTimeString);
-        }
+    // Конструктор для строки в заданном формате
+    public LogEntry(String logLine, LogFormat format) {
+        this(parseFields(logLine, format));
     }
 
-    // Парсинг размера ответа
-    private int parseResponseSize(String responseSizeStr) { // изменено с int на long
-        // Если размер не указан или указан как "-"
-        if (responseSizeStr == null || responseSizeStr.isEmpty() || "-".equals(responseSizeStr)) {
-            return 0;
-        }
+    // Конструктор из разобранной переиспользуемой записи: значения копируются в строки
+    private LogEntry(MutableLogEntry entry) {
+        this.ipAddr = entry.getIpAddr().toString();
+        this.time = LocalDateTime.ofEpochSecond(entry.getEpochSecond(), 0, ZoneOffset.UTC);
+        this.method = entry.getMethod();
+        this.path = entry.getPath().toString();
+        this.responseCode = entry.getResponseCode();
+        this.responseSize = entry.getResponseSize();
+        this.referer = entry.getReferer() == null ? null : entry.getReferer().toString();
+        this.agentString = entry.getUserAgent().toString();
+        this.host = entry.getHost() == null ? null : entry.getHost().toString();
+        this.requestTimeMicros = entry.getRequestTimeMicros();
+        this.upstreamTimeMicros = entry.getUpstreamTimeMicros();
+    }
 
-        try {
-            long size = Long.parseLong(responseSizeStr); // изменено на Long.parseLong
-            return Math.max((int) size, 0); // Гарантируем неотрицательное значение
-        } catch (NumberFormatException e) {
-            System.out.println("⚠️  Неверный формат размера данных: " + responseSizeStr + ", заменяем на 0");
-            return 0;
-        }
+    // Разбор строки скомпилированным форматом
+    private static MutableLogEntry parseFields(String logLine, LogFormat format) {
+        byte[] bytes = logLine.getBytes(StandardCharsets.UTF_8);
+        MutableLogEntry fields = new MutableLogEntry();
+        format.parse(bytes, 0, bytes.length, fields, null);
+        return fields;
     }
 
     // Геттеры для свойств (полей) класса LogEntry
@@ -78,5 +59,14 @@ public class LogEntry {
     public int getResponseCode() { return responseCode; }
     public long getResponseSize() { return responseSize; } // изменено с int на long
     public String getReferer() { return referer; }
-    public UserAgent getAgent() { return agent; }
+    public String getHost() { return host; }
+    public long getRequestTimeMicros() { return requestTimeMicros; }
+    public long getUpstreamTimeMicros() { return upstreamTimeMicros; }
+    public String getUserAgentString() { return agentString; }
+    public UserAgent getAgent() {
+        if (agent == null) {
+            agent = new UserAgent(agentString);
+        }
+        return agent;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,265 @@
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntPredicate;
+import java.util.function.LongPredicate;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Фильтр записей лога, компилируемый один раз из выражения командной строки.
+ * Выражение состоит из условий через пробел, которые должны выполняться все сразу:
+ * <pre>
+ *   status=5xx,404  status=400-499  method=GET,POST  path^=/api/  path~=\.php$
+ *   ip=10.0.0.0/8,1.2.3.4  time>=2023-09-25T04:00  time&lt;2023-09-25T05:00  bot=false
+ * </pre>
+ * Перед условием можно поставить "!" для отрицания.
+ * Условия разложены по этапам разбора строки, чтобы LogFormat проверял их как можно раньше:
+ * код ответа и метод - до разбора даты, дата - до выделения остальных полей,
+ * а признак бота - только после того, как все остальные условия выполнены.
+ * Строковые условия проверяются по CharSequence, поэтому работают и с представлениями
+ * буфера чтения в MutableLogEntry без создания строк.
+ */
+public class LogFilter {
+
+    // ========== УСЛОВИЯ ПО ЭТАПАМ РАЗБОРА ==========
+
+    private final List<IntPredicate> statusTests = new ArrayList<>(); // Код ответа
+    private final List<Predicate<HttpMethod>> methodTests = new ArrayList<>(); // HTTP метод
+    private final List<LongPredicate> timeTests = new ArrayList<>(); // Время запроса (секунды от эпохи)
+    private final List<Predicate<CharSequence>> ipTests = new ArrayList<>(); // IP-адрес клиента
+    private final List<Predicate<CharSequence>> pathTests = new ArrayList<>(); // Путь запроса
+    private final List<Predicate<UserAgent>> agentTests = new ArrayList<>(); // User-Agent
+
+    private final String expression; // Исходное выражение
+
+    private LogFilter(String expression) {
+        this.expression = expression;
+    }
+
+    // ========== КОМПИЛЯЦИЯ ВЫРАЖЕНИЯ ==========
+
+    /**
+     * Компилирует выражение фильтра
+     * @param expression условия через пробел
+     * @return скомпилированный фильтр
+     * @throws IllegalArgumentException если выражение задано неверно
+     */
+    public static LogFilter parse(String expression) {
+        LogFilter filter = new LogFilter(expression.trim());
+        for (String term : expression.trim().split("\\s+")) {
+            if (!term.isEmpty()) {
+                filter.addTerm(term);
+            }
+        }
+        return filter;
+    }
+
+    private void addTerm(String term) {
+        boolean negated = term.startsWith("!");
+        String condition = negated ? term.substring(1) : term;
+
+        int opStart = 0;
+        while (opStart < condition.length() && Character.isLetter(condition.charAt(opStart))) {
+            opStart++;
+        }
+        int opEnd = opStart;
+        while (opEnd < condition.length() && "=<>^~".indexOf(condition.charAt(opEnd)) >= 0) {
+            opEnd++;
+        }
+        String field = condition.substring(0, opStart);
+        String op = condition.substring(opStart, opEnd);
+        String value = condition.substring(opEnd);
+        if (field.isEmpty() || op.isEmpty() || value.isEmpty()) {
+            throw new IllegalArgumentException("Неверное условие фильтра: " + term);
+        }
+
+        switch (field) {
+            case "status":
+                requireOp(term, op, "=");
+                IntPredicate status = compileStatus(value);
+                statusTests.add(negated ? status.negate() : status);
+                break;
+            case "method":
+                requireOp(term, op, "=");
+                Predicate<HttpMethod> method = compileMethod(value);
+                methodTests.add(negated ? method.negate() : method);
+                break;
+            case "time":
+                LongPredicate time = compileTime(term, op, value);
+                timeTests.add(negated ? time.negate() : time);
+                break;
+            case "ip":
+                requireOp(term, op, "=");
+                Predicate<CharSequence> ip = compileIp(value);
+                ipTests.add(negated ? ip.negate() : ip);
+                break;
+            case "path":
+                Predicate<CharSequence> path = compilePath(term, op, value);
+                pathTests.add(negated ? path.negate() : path);
+                break;
+            case "bot":
+                requireOp(term, op, "=");
+                boolean expected = parseBoolean(term, value);
+                Predicate<UserAgent> bot = agent -> agent.isBot() == expected;
+                agentTests.add(negated ? bot.negate() : bot);
+                break;
+            default:
+                throw new IllegalArgumentException("Неизвестное поле фильтра: " + field);
+        }
+    }
+
+    // Коды ответа: точный код, класс вида 5xx или диапазон 400-499, через запятую
+    private static IntPredicate compileStatus(String value) {
+        IntPredicate result = code -> false;
+        for (String part : value.split(",")) {
+            IntPredicate single;
+            try {
+                if (part.length() == 3 && part.endsWith("xx")) {
+                    int hundreds = Integer.parseInt(part.substring(0, 1));
+                    single = code -> code / 100 == hundreds;
+                } else if (part.contains("-")) {
+                    int from = Integer.parseInt(part.substring(0, part.indexOf('-')));
+                    int to = Integer.parseInt(part.substring(part.indexOf('-') + 1));
+                    single = code -> code >= from && code <= to;
+                } else {
+                    int exact = Integer.parseInt(part);
+                    single = code -> code == exact;
+                }
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Неверный код ответа в фильтре: " + part);
+            }
+            result = result.or(single);
+        }
+        return result;
+    }
+
+    private static Predicate<HttpMethod> compileMethod(String value) {
+        List<HttpMethod> methods = new ArrayList<>();
+        for (String part : value.split(",")) {
+            HttpMethod method = HttpMethod.fromString(part);
+            if (method == HttpMethod.UNKNOWN && !"UNKNOWN".equalsIgnoreCase(part)) {
+                throw new IllegalArgumentException("Неизвестный HTTP метод в фильтре: " + part);
+            }
+            methods.add(method);
+        }
+        return methods::contains;
+    }
+
+    private static LongPredicate compileTime(String term, String op, String value) {
+        long bound;
+        try {
+            bound = LocalDateTime.parse(value).toEpochSecond(ZoneOffset.UTC);
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Неверное время в фильтре (ожидается 2023-09-25T04:00): " + value);
+        }
+        switch (op) {
+            case ">=": return time -> time >= bound;
+            case ">": return time -> time > bound;
+            case "<=": return time -> time <= bound;
+            case "<": return time -> time < bound;
+            default: throw new IllegalArgumentException("Неверная операция сравнения времени: " + term);
+        }
+    }
+
+    private static Predicate<CharSequence> compileIp(String value) {
+        List<CidrRange> ranges = new ArrayList<>();
+        for (String part : value.split(",")) {
+            ranges.add(CidrRange.parse(part));
+        }
+        return ip -> {
+            long address = CidrRange.parseIpv4(ip);
+            if (address < 0) return false;
+            for (CidrRange range : ranges) {
+                if (range.contains((int) address)) return true;
+            }
+            return false;
+        };
+    }
+
+    private static Predicate<CharSequence> compilePath(String term, String op, String value) {
+        switch (op) {
+            case "^=":
+                return path -> startsWith(path, value);
+            case "=":
+                return value::contentEquals;
+            case "~=":
+                try {
+                    Pattern pattern = Pattern.compile(value);
+                    return path -> pattern.matcher(path).find();
+                } catch (PatternSyntaxException e) {
+                    throw new IllegalArgumentException("Неверное регулярное выражение в фильтре: " + value);
+                }
+            default:
+                throw new IllegalArgumentException("Неверная операция для пути: " + term);
+        }
+    }
+
+    private static boolean startsWith(CharSequence value, String prefix) {
+        if (value.length() < prefix.length()) return false;
+        for (int i = 0; i < prefix.length(); i++) {
+            if (value.charAt(i) != prefix.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    private static boolean parseBoolean(String term, String value) {
+        if ("true".equalsIgnoreCase(value)) return true;
+        if ("false".equalsIgnoreCase(value)) return false;
+        throw new IllegalArgumentException("Ожидается true или false: " + term);
+    }
+
+    private static void requireOp(String term, String op, String expected) {
+        if (!expected.equals(op)) {
+            throw new IllegalArgumentException("Неверная операция в условии фильтра: " + term);
+        }
+    }
+
+    // ========== ПРОВЕРКИ ПО ЭТАПАМ ==========
+
+    public boolean acceptsStatus(int responseCode) {
+        for (IntPredicate test : statusTests) {
+            if (!test.test(responseCode)) return false;
+        }
+        return true;
+    }
+
+    public boolean acceptsMethod(HttpMethod method) {
+        return all(methodTests, method);
+    }
+
+    // Время в секундах от эпохи (локальное время лога, как LocalDateTime.toEpochSecond(UTC))
+    public boolean acceptsTime(long epochSecond) {
+        for (LongPredicate test : timeTests) {
+            if (!test.test(epochSecond)) return false;
+        }
+        return true;
+    }
+
+    public boolean acceptsIp(CharSequence ip) {
+        return all(ipTests, ip);
+    }
+
+    public boolean acceptsPath(CharSequence path) {
+        return all(pathTests, path);
+    }
+
+    public boolean acceptsAgent(UserAgent agent) {
+        return all(agentTests, agent);
+    }
+
+    private static <T> boolean all(List<Predicate<T>> tests, T value) {
+        for (Predicate<T> test : tests) {
+            if (!test.test(value)) return false;
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return expression;
+    }
+}
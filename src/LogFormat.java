@@ -0,0 +1,322 @@
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Формат строки access-лога, скомпилированный из описания nginx (log_format) или Apache (LogFormat).
+ * Описание превращается в цепочку шагов: литерал, который должен совпасть побайтно, и поле,
+ * которое тянется до первого байта следующего литерала (или до конца строки для последнего поля).
+ * Шаги хранятся в параллельных массивах и выполняются одним циклом, без регулярных выражений.
+ * <pre>
+ *   nginx:  $remote_addr - $remote_user [$time_local] "$request" $status $body_bytes_sent ...
+ *   Apache: %h %l %u %t \"%r\" %&gt;s %b \"%{Referer}i\" \"%{User-agent}i\" %D
+ * </pre>
+ * Кроме полей стандартного формата combined поддерживаются время обработки запроса,
+ * время ответа upstream и хост. Остальные переменные формата пропускаются.
+ */
+public class LogFormat {
+
+    // Поля записи, которые умеет заполнять MutableLogEntry
+    public enum Field {
+        REMOTE_ADDR, TIME_LOCAL, TIME_ISO8601, REQUEST, STATUS, BODY_BYTES, REFERER, USER_AGENT,
+        REQUEST_TIME_SECONDS, REQUEST_TIME_MICROS, UPSTREAM_RESPONSE_TIME, HOST, IGNORED
+    }
+
+    // Стандартный формат combined (nginx и Apache пишут одинаковые строки)
+    public static final String COMBINED_NGINX = "$remote_addr - $remote_user [$time_local] "
+            + "\"$request\" $status $body_bytes_sent \"$http_referer\" \"$http_user_agent\"";
+    public static final LogFormat COMBINED = nginx(COMBINED_NGINX);
+
+    private static final int NO_DELIMITER = -1; // Поле тянется до конца строки
+    private static final int TIME_LOCAL_LENGTH = 26; // Длина "dd/MMM/yyyy:HH:mm:ss +zzzz"
+
+    // ========== СКОМПИЛИРОВАННЫЕ ШАГИ ==========
+
+    private final String description; // Исходное описание формата
+    private final byte[][] literals; // Литерал шага (null для шага-поля)
+    private final Field[] fields; // Поле шага (null для шага-литерала)
+    private final int[] delimiters; // Байт, которым заканчивается поле, или NO_DELIMITER
+    private final boolean[] present = new boolean[Field.values().length]; // Какие поля есть в формате
+
+    private LogFormat(String description, List<Object> tokens) {
+        this.description = description;
+        int count = tokens.size();
+        this.literals = new byte[count][];
+        this.fields = new Field[count];
+        this.delimiters = new int[count];
+
+        for (int i = 0; i < count; i++) {
+            Object token = tokens.get(i);
+            if (token instanceof Field) {
+                Field field = (Field) token;
+                fields[i] = field;
+                present[field.ordinal()] = true;
+                if (i + 1 == count) {
+                    delimiters[i] = NO_DELIMITER;
+                } else if (tokens.get(i + 1) instanceof String) {
+                    delimiters[i] = ((String) tokens.get(i + 1)).getBytes(StandardCharsets.UTF_8)[0];
+                } else {
+                    throw new IllegalArgumentException("Поля формата должны разделяться текстом: " + description);
+                }
+            } else {
+                literals[i] = ((String) token).getBytes(StandardCharsets.UTF_8);
+            }
+        }
+
+        if (!present[Field.REQUEST.ordinal()] || !present[Field.STATUS.ordinal()]
+                || (!present[Field.TIME_LOCAL.ordinal()] && !present[Field.TIME_ISO8601.ordinal()])) {
+            throw new IllegalArgumentException(
+                    "Формат должен содержать время, строку запроса и код ответа: " + description);
+        }
+    }
+
+    // ========== КОМПИЛЯЦИЯ ==========
+
+    /**
+     * Компилирует формат в синтаксисе директивы log_format nginx
+     * @param format описание формата ($переменная или ${переменная})
+     * @return скомпилированный формат
+     * @throws IllegalArgumentException если формат нельзя разобрать однозначно
+     */
+    public static LogFormat nginx(String format) {
+        List<Object> tokens = new ArrayList<>();
+        StringBuilder literal = new StringBuilder();
+        int i = 0;
+        while (i < format.length()) {
+            char c = format.charAt(i);
+            if (c != '$') {
+                literal.append(c);
+                i++;
+                continue;
+            }
+            boolean braced = i + 1 < format.length() && format.charAt(i + 1) == '{';
+            int nameStart = braced ? i + 2 : i + 1;
+            int nameEnd = nameStart;
+            while (nameEnd < format.length() && isNameChar(format.charAt(nameEnd))) {
+                nameEnd++;
+            }
+            if (nameEnd == nameStart || (braced && (nameEnd >= format.length() || format.charAt(nameEnd) != '}'))) {
+                throw new IllegalArgumentException("Неверная переменная в формате nginx: " + format.substring(i));
+            }
+            addToken(tokens, literal, nginxField(format.substring(nameStart, nameEnd)));
+            i = braced ? nameEnd + 1 : nameEnd;
+        }
+        addToken(tokens, literal, null);
+        return new LogFormat(format, tokens);
+    }
+
+    /**
+     * Компилирует формат в синтаксисе директивы LogFormat Apache
+     * @param format описание формата (%h, %&gt;s, %{Header}i и т.д.; \" и \t раскрываются)
+     * @return скомпилированный формат
+     * @throws IllegalArgumentException если формат нельзя разобрать однозначно
+     */
+    public static LogFormat apache(String format) {
+        List<Object> tokens = new ArrayList<>();
+        StringBuilder literal = new StringBuilder();
+        int i = 0;
+        while (i < format.length()) {
+            char c = format.charAt(i);
+            if (c == '\\' && i + 1 < format.length()) {
+                char next = format.charAt(i + 1);
+                literal.append(next == 't' ? '\t' : next == 'n' ? '\n' : next);
+                i += 2;
+                continue;
+            }
+            if (c != '%') {
+                literal.append(c);
+                i++;
+                continue;
+            }
+
+            // %[условия][<>]{аргумент}код
+            int pos = i + 1;
+            while (pos < format.length() && "!0123456789,<>".indexOf(format.charAt(pos)) >= 0) {
+                pos++;
+            }
+            String argument = null;
+            if (pos < format.length() && format.charAt(pos) == '{') {
+                int close = format.indexOf('}', pos);
+                if (close < 0) {
+                    throw new IllegalArgumentException("Незакрытая скобка в формате Apache: " + format.substring(i));
+                }
+                argument = format.substring(pos + 1, close);
+                pos = close + 1;
+            }
+            if (pos >= format.length()) {
+                throw new IllegalArgumentException("Неполная директива в формате Apache: " + format.substring(i));
+            }
+            char code = format.charAt(pos);
+            if (code == '%') {
+                literal.append('%');
+            } else if (code == 't' && argument == null) {
+                // %t пишется как [dd/MMM/yyyy:HH:mm:ss +zzzz]
+                literal.append('[');
+                addToken(tokens, literal, Field.TIME_LOCAL);
+                literal.append(']');
+            } else {
+                addToken(tokens, literal, apacheField(code, argument));
+            }
+            i = pos + 1;
+        }
+        addToken(tokens, literal, null);
+        return new LogFormat(format, tokens);
+    }
+
+    private static void addToken(List<Object> tokens, StringBuilder literal, Field field) {
+        if (literal.length() > 0) {
+            tokens.add(literal.toString());
+            literal.setLength(0);
+        }
+        if (field != null) {
+            tokens.add(field);
+        }
+    }
+
+    private static Field nginxField(String name) {
+        switch (name) {
+            case "remote_addr": return Field.REMOTE_ADDR;
+            case "time_local": return Field.TIME_LOCAL;
+            case "time_iso8601": return Field.TIME_ISO8601;
+            case "request": return Field.REQUEST;
+            case "status": return Field.STATUS;
+            case "body_bytes_sent":
+            case "bytes_sent": return Field.BODY_BYTES;
+            case "http_referer": return Field.REFERER;
+            case "http_user_agent": return Field.USER_AGENT;
+            case "request_time": return Field.REQUEST_TIME_SECONDS;
+            case "upstream_response_time": return Field.UPSTREAM_RESPONSE_TIME;
+            case "host":
+            case "http_host":
+            case "server_name": return Field.HOST;
+            default: return Field.IGNORED;
+        }
+    }
+
+    private static Field apacheField(char code, String argument) {
+        if (argument != null) {
+            if (code != 'i') return Field.IGNORED;
+            switch (argument.toLowerCase(Locale.ROOT)) {
+                case "referer": return Field.REFERER;
+                case "user-agent": return Field.USER_AGENT;
+                case "host": return Field.HOST;
+                default: return Field.IGNORED;
+            }
+        }
+        switch (code) {
+            case 'h':
+            case 'a': return Field.REMOTE_ADDR;
+            case 'r': return Field.REQUEST;
+            case 's': return Field.STATUS;
+            case 'b':
+            case 'B':
+            case 'O': return Field.BODY_BYTES;
+            case 'D': return Field.REQUEST_TIME_MICROS;
+            case 'T': return Field.REQUEST_TIME_SECONDS;
+            case 'v':
+            case 'V': return Field.HOST;
+            default: return Field.IGNORED;
+        }
+    }
+
+    private static boolean isNameChar(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_';
+    }
+
+    // ========== РАЗБОР ==========
+
+    /**
+     * Разбирает строку из участка буфера в переиспользуемую запись. Условия фильтра проверяются
+     * сразу после заполнения соответствующего поля, в порядке следования полей в формате,
+     * а User-Agent фильтр проверяет уже вызывающий код (после классификации через кэш).
+     * @param buffer буфер чтения
+     * @param start начало строки
+     * @param end конец строки (не включительно, без перевода строки)
+     * @param entry запись, которую нужно заполнить
+     * @param filter фильтр записей (может быть null)
+     * @return false, если строка не проходит фильтр
+     * @throws IllegalArgumentException если строка не соответствует формату
+     */
+    public boolean parse(byte[] buffer, int start, int end, MutableLogEntry entry, LogFilter filter) {
+        entry.clear();
+        return parseSteps(buffer, start, end, entry, filter, false);
+    }
+
+    /**
+     * Разбирает строку только до поля времени (остальные поля не заполняются)
+     * @param buffer буфер чтения
+     * @param start начало строки
+     * @param end конец строки (не включительно, без перевода строки)
+     * @param entry запись для промежуточного разбора
+     * @return время запроса в секундах от эпохи UTC (с учетом смещения часового пояса)
+     *         или Long.MIN_VALUE, если строка не соответствует формату
+     */
+    public long parseEpochSecond(byte[] buffer, int start, int end, MutableLogEntry entry) {
+        entry.clear();
+        try {
+            return parseSteps(buffer, start, end, entry, null, true) ? entry.getUtcEpochSecond() : Long.MIN_VALUE;
+        } catch (IllegalArgumentException e) {
+            return Long.MIN_VALUE;
+        }
+    }
+
+    private boolean parseSteps(byte[] buffer, int start, int end, MutableLogEntry entry,
+                               LogFilter filter, boolean timeOnly) {
+        int pos = start;
+        for (int step = 0; step < fields.length; step++) {
+            Field field = fields[step];
+            if (field == null) {
+                byte[] literal = literals[step];
+                if (end - pos < literal.length) throw invalid(buffer, start, end);
+                for (int i = 0; i < literal.length; i++) {
+                    if (buffer[pos + i] != literal[i]) throw invalid(buffer, start, end);
+                }
+                pos += literal.length;
+                continue;
+            }
+
+            int delimiter = delimiters[step];
+            int stop = end;
+            if (field == Field.TIME_LOCAL) {
+                // Дата фиксированной длины: разделитель не ищем, а проверяем на своем месте
+                stop = pos + TIME_LOCAL_LENGTH;
+                if (stop > end || (delimiter != NO_DELIMITER && (stop == end || buffer[stop] != delimiter))) {
+                    throw invalid(buffer, start, end);
+                }
+            } else if (delimiter != NO_DELIMITER) {
+                stop = pos;
+                while (stop < end && buffer[stop] != delimiter) stop++;
+                if (stop == end) throw invalid(buffer, start, end);
+            }
+            if (!entry.set(field, buffer, pos, stop)) throw invalid(buffer, start, end);
+            if (timeOnly && (field == Field.TIME_LOCAL || field == Field.TIME_ISO8601)) return true;
+            if (filter != null && !accepts(field, entry, filter)) return false;
+            pos = stop;
+        }
+        if (pos != end) throw invalid(buffer, start, end);
+        return !timeOnly;
+    }
+
+    // Проверка условий фильтра, относящихся к только что заполненному полю
+    private static boolean accepts(Field field, MutableLogEntry entry, LogFilter filter) {
+        switch (field) {
+            case STATUS: return filter.acceptsStatus(entry.getResponseCode());
+            case REQUEST: return filter.acceptsMethod(entry.getMethod()) && filter.acceptsPath(entry.getPath());
+            case TIME_LOCAL:
+            case TIME_ISO8601: return filter.acceptsTime(entry.getEpochSecond());
+            case REMOTE_ADDR: return filter.acceptsIp(entry.getIpAddr());
+            default: return true;
+        }
+    }
+
+    private static IllegalArgumentException invalid(byte[] buffer, int start, int end) {
+        return new IllegalArgumentException("Неверный формат лог-строки: "
+                + new String(buffer, start, end - start, StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public String toString() {
+        return description;
+    }
+}
@@ -0,0 +1,256 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Слияние логов нескольких серверов в один поток строк, упорядоченный по времени запроса.
+ * Каждый файл читается своим курсором с буфером упреждающего чтения, а куча курсоров
+ * выдает строку с наименьшим временем. В памяти находятся только буферы курсоров,
+ * поэтому расход памяти - O(количество файлов × размер буфера), а не размер файлов.
+ * <p>
+ * Внутри одного файла строки могут идти немного не по порядку (nginx пишет строку по окончании
+ * запроса). Окно переупорядочивания задает, на сколько секунд строка может опоздать: курсор
+ * держит строки, пока не прочитает строку новее самой ранней из них больше чем на окно.
+ * При нулевом окне строки выдаются прямо из буфера чтения без копирования.
+ * <p>
+ * Время строк сравнивается в UTC с учетом смещения часового пояса, поэтому логи серверов
+ * из разных поясов сливаются в порядке фактического времени запросов.
+ */
+public class LogMerger {
+
+    private static final int MAX_PENDING_LINES = 4096; // Предел строк в окне переупорядочивания курсора
+
+    private final List<File> files;
+    private final LogFormat format;
+    private final long reorderWindowSeconds;
+    private long outOfOrderLines; // Строки, выданные позже более новых (опоздали больше чем на окно)
+    private long bytesRead; // Прочитано байт из всех файлов
+
+    /**
+     * @param files файлы логов
+     * @param format формат строк (время нужно для упорядочивания)
+     * @param reorderWindowSeconds допустимое опоздание строки внутри файла в секундах
+     * @throws IllegalArgumentException если файлы не заданы или окно отрицательно
+     */
+    public LogMerger(List<File> files, LogFormat format, long reorderWindowSeconds) {
+        if (files.isEmpty()) {
+            throw new IllegalArgumentException("Не заданы файлы для слияния");
+        }
+        if (reorderWindowSeconds < 0) {
+            throw new IllegalArgumentException("Окно переупорядочивания не может быть отрицательным: "
+                    + reorderWindowSeconds);
+        }
+        this.files = new ArrayList<>(files);
+        this.format = format;
+        this.reorderWindowSeconds = reorderWindowSeconds;
+    }
+
+    /**
+     * Передает обработчику строки всех файлов в порядке времени. Строки с одинаковым временем
+     * выдаются в порядке файлов, строки без распознаваемого времени - сразу после предыдущей
+     * строки своего файла. Вместо смещения в файле обработчик получает общее число прочитанных байт.
+     * @param handler обработчик строк
+     */
+    public void merge(FileContentReader.RawLineHandler handler) throws IOException {
+        outOfOrderLines = 0;
+        bytesRead = 0;
+        PriorityQueue<Cursor> heap = new PriorityQueue<>(files.size(),
+                Comparator.comparingLong((Cursor c) -> c.second).thenComparingInt(c -> c.index));
+        List<Cursor> cursors = new ArrayList<>();
+        try {
+            for (File file : files) {
+                Cursor cursor = new Cursor(file, cursors.size());
+                cursors.add(cursor);
+                if (cursor.advance()) {
+                    heap.add(cursor);
+                }
+            }
+
+            long lastSecond = Long.MIN_VALUE;
+            while (!heap.isEmpty()) {
+                Cursor cursor = heap.poll();
+                if (cursor.second < lastSecond) {
+                    outOfOrderLines++;
+                } else {
+                    lastSecond = cursor.second;
+                }
+                handler.handle(cursor.lineBuffer, cursor.lineStart, cursor.lineEnd, bytesRead);
+                if (cursor.advance()) {
+                    heap.add(cursor);
+                }
+            }
+        } finally {
+            for (Cursor cursor : cursors) {
+                cursor.close();
+            }
+        }
+    }
+
+    /**
+     * @return количество строк, опоздавших больше чем на окно переупорядочивания
+     */
+    public long getOutOfOrderLines() { return outOfOrderLines; }
+
+    /**
+     * @return общий размер файлов в байтах (для сжатых файлов - оценка распакованного размера)
+     */
+    public long getTotalBytes() throws IOException {
+        long total = 0;
+        for (File file : files) {
+            total += FileContentReader.estimateSize(file);
+        }
+        return total;
+    }
+
+    // ========== КУРСОР ФАЙЛА ==========
+
+    // Строка, ожидающая в окне переупорядочивания (массивы переиспользуются)
+    private static final class PendingLine {
+        long second; // Время строки в секундах от эпохи UTC
+        long sequence; // Номер строки в файле - для устойчивого порядка при равном времени
+        byte[] bytes = new byte[256];
+        int length;
+    }
+
+    private final class Cursor {
+        final int index; // Номер файла - для устойчивого порядка при равном времени
+        private final File file;
+        private final InputStream in;
+        private final MutableLogEntry scratch = new MutableLogEntry(); // Для разбора времени
+
+        // Буфер упреждающего чтения
+        private final byte[] buffer = new byte[FileContentReader.BUFFER_SIZE];
+        private int position; // Начало непрочитанной части буфера
+        private int limit; // Конец данных в буфере
+        private boolean eof;
+        private int rawStart; // Последняя прочитанная строка [rawStart, rawEnd)
+        private int rawEnd;
+
+        // Окно переупорядочивания
+        private final PriorityQueue<PendingLine> pending = new PriorityQueue<>(
+                Comparator.comparingLong((PendingLine l) -> l.second).thenComparingLong(l -> l.sequence));
+        private final List<PendingLine> free = new ArrayList<>();
+        private PendingLine released; // Выданная строка, возвращается в пул при следующем шаге
+        private long sequence;
+        private long newestSecond = Long.MIN_VALUE; // Самое позднее время среди прочитанных строк
+
+        // Текущая строка курсора
+        long second; // В секундах от эпохи UTC
+        byte[] lineBuffer;
+        int lineStart;
+        int lineEnd;
+
+        Cursor(File file, int index) throws IOException {
+            this.file = file;
+            this.index = index;
+            this.in = FileContentReader.open(file);
+        }
+
+        // Переходит к следующей строке в порядке времени; false - строки закончились
+        boolean advance() throws IOException {
+            if (reorderWindowSeconds == 0) {
+                if (!readLine()) return false;
+                second = timeOf(buffer, rawStart, rawEnd);
+                lineBuffer = buffer;
+                lineStart = rawStart;
+                lineEnd = rawEnd;
+                return true;
+            }
+
+            if (released != null) {
+                free.add(released);
+                released = null;
+            }
+            // Дочитываем, пока самую раннюю строку еще может обогнать опоздавшая
+            while (pending.size() < MAX_PENDING_LINES
+                    && (pending.isEmpty() || newestSecond - pending.peek().second <= reorderWindowSeconds)
+                    && readLine()) {
+                PendingLine line = free.isEmpty() ? new PendingLine() : free.remove(free.size() - 1);
+                line.second = timeOf(buffer, rawStart, rawEnd);
+                line.sequence = sequence++;
+                line.length = rawEnd - rawStart;
+                if (line.bytes.length < line.length) {
+                    line.bytes = Arrays.copyOf(line.bytes, Math.max(line.length, line.bytes.length * 2));
+                }
+                System.arraycopy(buffer, rawStart, line.bytes, 0, line.length);
+                pending.add(line);
+            }
+            released = pending.poll();
+            if (released == null) return false;
+            second = released.second;
+            lineBuffer = released.bytes;
+            lineStart = 0;
+            lineEnd = released.length;
+            return true;
+        }
+
+        // Время строки; строка без времени получает время предыдущей строки файла
+        private long timeOf(byte[] bytes, int start, int end) {
+            long time = format.parseEpochSecond(bytes, start, end, scratch);
+            if (time == Long.MIN_VALUE) {
+                return newestSecond;
+            }
+            newestSecond = Math.max(newestSecond, time);
+            return time;
+        }
+
+        // Читает следующую строку в [rawStart, rawEnd) буфера (без перевода строки)
+        private boolean readLine() throws IOException {
+            while (true) {
+                for (int i = position; i < limit; i++) {
+                    if (buffer[i] == '\n') {
+                        setLine(position, i);
+                        bytesRead += i + 1 - position;
+                        position = i + 1;
+                        return true;
+                    }
+                }
+                if (eof) {
+                    // Последняя строка без перевода строки в конце файла
+                    if (position < limit) {
+                        setLine(position, limit);
+                        bytesRead += limit - position;
+                        position = limit;
+                        return true;
+                    }
+                    return false;
+                }
+                // Переносим незавершенную строку в начало буфера и дочитываем файл
+                if (position > 0) {
+                    System.arraycopy(buffer, position, buffer, 0, limit - position);
+                    limit -= position;
+                    position = 0;
+                }
+                if (limit == buffer.length) {
+                    throw new LongLineException(file.getName(), limit, FileContentReader.MAX_LINE_LENGTH);
+                }
+                int read = in.read(buffer, limit, buffer.length - limit);
+                if (read < 0) {
+                    eof = true;
+                } else {
+                    limit += read;
+                }
+            }
+        }
+
+        private void setLine(int start, int end) {
+            if (end - start > FileContentReader.MAX_LINE_LENGTH) {
+                throw new LongLineException(file.getName(), end - start, FileContentReader.MAX_LINE_LENGTH);
+            }
+            if (end > start && buffer[end - 1] == '\r') {
+                end--;
+            }
+            rawStart = start;
+            rawEnd = end;
+        }
+
+        void close() throws IOException {
+            in.close();
+        }
+    }
+}
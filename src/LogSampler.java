@@ -0,0 +1,158 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Выборочный анализ больших файлов: читаются случайные блоки файла, строки блоков
+ * проходят обычный разбор Statistics, а по блокам накапливается кластерная выборка
+ * для оценки итогов и долей с доверительными интервалами.
+ * <p>
+ * Файл делится на блоки фиксированного размера; строка относится к блоку, в котором она
+ * начинается (ее конец дочитывается за границей блока), поэтому каждая строка попадает
+ * в выборку с одинаковой вероятностью. Блоки выбираются без повторений генератором
+ * с заданным начальным значением, так что запуск с тем же seed воспроизводим.
+ * При ограничении по времени блоки читаются в случайном порядке до истечения времени,
+ * иначе выбранные блоки читаются по возрастанию смещения.
+ */
+public class LogSampler {
+
+    public static final int BLOCK_SIZE = FileContentReader.BUFFER_SIZE;
+
+    private final double rate; // Доля блоков файла в выборке (0-1]
+    private final long timeBudgetMillis; // Ограничение по времени (0 - без ограничения)
+    private final long seed;
+
+    /**
+     * @param rate доля блоков файла (0-1]
+     * @param timeBudgetMillis ограничение по времени в мс (0 - без ограничения)
+     * @param seed начальное значение генератора
+     * @throws IllegalArgumentException если параметры вне допустимых значений
+     */
+    public LogSampler(double rate, long timeBudgetMillis, long seed) {
+        if (!(rate > 0 && rate <= 1)) {
+            throw new IllegalArgumentException("Доля выборки должна быть в интервале (0, 1]: " + rate);
+        }
+        if (timeBudgetMillis < 0) {
+            throw new IllegalArgumentException("Ограничение по времени не может быть отрицательным: " + timeBudgetMillis);
+        }
+        this.rate = rate;
+        this.timeBudgetMillis = timeBudgetMillis;
+        this.seed = seed;
+    }
+
+    /**
+     * Анализирует случайные блоки файла
+     * @param file файл логов
+     * @param stats статистика, в которую добавляются строки выборки
+     * @return оценки по выборке
+     */
+    public SampleResult analyze(File file, Statistics stats) throws IOException {
+        if (FileContentReader.isCompressed(file)) {
+            throw new IOException("Выборочный анализ невозможен для сжатого файла " + file.getName()
+                    + ": в нем нельзя перейти к случайному блоку");
+        }
+        long started = System.nanoTime();
+        long deadline = started + timeBudgetMillis * 1_000_000;
+        long length = file.length();
+        int populationBlocks = (int) Math.max(1, (length + BLOCK_SIZE - 1) / BLOCK_SIZE);
+        int[] order = chooseBlocks(populationBlocks);
+        ClusterSample sample = new ClusterSample(populationBlocks);
+        System.out.printf("🎲 Выборочный анализ: %d из %d блоков по %d КБ (seed %d)...%n",
+                order.length, populationBlocks, BLOCK_SIZE / 1024, seed);
+
+        byte[] buffer = new byte[BLOCK_SIZE + FileContentReader.MAX_LINE_LENGTH + 2];
+        BlockCounts before = new BlockCounts(stats);
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            for (int block : order) {
+                if (timeBudgetMillis > 0 && sample.getSampledBlocks() > 0 && System.nanoTime() - deadline >= 0) {
+                    break;
+                }
+                readBlock(in, file, length, block, buffer, stats);
+                BlockCounts after = new BlockCounts(stats);
+                sample.addBlock(after.entries - before.entries, after.minus(before));
+                before = after;
+            }
+        }
+        return new SampleResult(file.getName(), sample, seed, (System.nanoTime() - started) / 1_000_000);
+    }
+
+    // Номера блоков выборки: частичная перестановка Фишера-Йетса
+    private int[] chooseBlocks(int populationBlocks) {
+        int count = (int) Math.max(1, Math.min(populationBlocks, Math.round(populationBlocks * rate)));
+        int[] blocks = new int[populationBlocks];
+        for (int i = 0; i < populationBlocks; i++) {
+            blocks[i] = i;
+        }
+        Random random = new Random(seed);
+        for (int i = 0; i < count; i++) {
+            int j = i + random.nextInt(populationBlocks - i);
+            int swap = blocks[i];
+            blocks[i] = blocks[j];
+            blocks[j] = swap;
+        }
+        int[] chosen = Arrays.copyOf(blocks, count);
+        if (timeBudgetMillis == 0) {
+            Arrays.sort(chosen); // Все выбранные блоки будут прочитаны - читаем их по порядку
+        }
+        return chosen;
+    }
+
+    // Передает в статистику строки, начинающиеся внутри блока
+    private void readBlock(RandomAccessFile in, File file, long length, int block, byte[] buffer,
+                           Statistics stats) throws IOException {
+        long blockStart = (long) block * BLOCK_SIZE;
+        long blockEnd = Math.min(length, blockStart + BLOCK_SIZE);
+        // Читаем с байта перед блоком, чтобы знать, начинается ли строка на границе
+        long readFrom = Math.max(0, blockStart - 1);
+        int limit = (int) Math.min(buffer.length, length - readFrom);
+        in.seek(readFrom);
+        in.readFully(buffer, 0, limit);
+        boolean atFileEnd = readFrom + limit == length;
+
+        int pos = 0;
+        if (blockStart > 0) {
+            while (pos < limit && buffer[pos] != '\n') pos++;
+            pos++; // Первая строка, начинающаяся в блоке
+        }
+        int blockLimit = (int) (blockEnd - readFrom);
+        while (pos < blockLimit) {
+            int newline = pos;
+            while (newline < limit && buffer[newline] != '\n') newline++;
+            if (newline == limit && !atFileEnd) {
+                throw new LongLineException(file.getName(), newline - pos, FileContentReader.MAX_LINE_LENGTH);
+            }
+            int end = newline > pos && buffer[newline - 1] == '\r' ? newline - 1 : newline;
+            if (end - pos > FileContentReader.MAX_LINE_LENGTH) {
+                throw new LongLineException(file.getName(), end - pos, FileContentReader.MAX_LINE_LENGTH);
+            }
+            stats.processLine(buffer, pos, end);
+            pos = newline + 1;
+        }
+    }
+
+    // Значения показателей статистики на момент после очередного блока
+    private static final class BlockCounts {
+        final long entries;
+        final Map<String, Long> values = new HashMap<>();
+
+        BlockCounts(Statistics stats) {
+            entries = stats.getTotalEntries();
+            values.put(SampleResult.ERRORS, (long) stats.getErrorRequests());
+            values.put(SampleResult.BOTS, (long) stats.getTotalEntries() - stats.getHumanVisits());
+            values.put(SampleResult.TRAFFIC, stats.getTotalTraffic());
+            stats.getCrawlerCounts().forEach((name, count) -> values.put(SampleResult.CRAWLER + name, (long) count));
+            stats.getBrowserCounts().forEach((name, count) -> values.put(SampleResult.BROWSER + name, (long) count));
+        }
+
+        // Приращения показателей в блоке
+        Map<String, Long> minus(BlockCounts previous) {
+            Map<String, Long> delta = new HashMap<>();
+            values.forEach((name, value) -> delta.put(name, value - previous.values.getOrDefault(name, 0L)));
+            return delta;
+        }
+    }
+}
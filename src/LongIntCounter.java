@@ -0,0 +1,121 @@
+import java.util.Arrays;
+
+/**
+ * Счетчик с ключами long на открытой адресации, без упаковки ключей и значений в объекты.
+ * Используется для посещений по секундам.
+ */
+public class LongIntCounter {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    // Обработчик пары ключ-значение
+    @FunctionalInterface
+    public interface Visitor {
+        void accept(long key, int count);
+    }
+
+    private long[] keys; // Ключи
+    private int[] counts; // Значения (0 - свободная ячейка)
+    private int size; // Количество ключей
+
+    public LongIntCounter() {
+        clear();
+    }
+
+    // Увеличивает счетчик ключа на положительное delta
+    public void add(long key, int delta) {
+        int mask = keys.length - 1;
+        int index = hash(key) & mask;
+        while (counts[index] != 0) {
+            if (keys[index] == key) {
+                counts[index] += delta;
+                return;
+            }
+            index = (index + 1) & mask;
+        }
+        keys[index] = key;
+        counts[index] = delta;
+        if (++size * 2 > keys.length) {
+            resize();
+        }
+    }
+
+    public int get(long key) {
+        int mask = keys.length - 1;
+        int index = hash(key) & mask;
+        while (counts[index] != 0) {
+            if (keys[index] == key) {
+                return counts[index];
+            }
+            index = (index + 1) & mask;
+        }
+        return 0;
+    }
+
+    public void clear() {
+        keys = new long[INITIAL_CAPACITY];
+        counts = new int[INITIAL_CAPACITY];
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    // Максимальное значение счетчика (0 для пустого счетчика)
+    public int max() {
+        int max = 0;
+        for (int count : counts) {
+            max = Math.max(max, count);
+        }
+        return max;
+    }
+
+    // Ключи по возрастанию
+    public long[] sortedKeys() {
+        long[] result = new long[size];
+        int n = 0;
+        for (int i = 0; i < keys.length; i++) {
+            if (counts[i] != 0) {
+                result[n++] = keys[i];
+            }
+        }
+        Arrays.sort(result);
+        return result;
+    }
+
+    public void forEach(Visitor visitor) {
+        for (int i = 0; i < keys.length; i++) {
+            if (counts[i] != 0) {
+                visitor.accept(keys[i], counts[i]);
+            }
+        }
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private void resize() {
+        long[] oldKeys = keys;
+        int[] oldCounts = counts;
+        keys = new long[oldKeys.length * 2];
+        counts = new int[keys.length];
+        int mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldCounts[i] != 0) {
+                int index = hash(oldKeys[i]) & mask;
+                while (counts[index] != 0) {
+                    index = (index + 1) & mask;
+                }
+                keys[index] = oldKeys[i];
+                counts[index] = oldCounts[i];
+            }
+        }
+    }
+}
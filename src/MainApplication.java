@@ -2,6 +2,7 @@ import java.io.File;
 import java.io.IOException;
 import java.util.List;
 import java.util.Scanner;
+import java.util.stream.Collectors;
 
 // Основной класс приложения
 public class MainApplication {
@@ -9,14 +10,20 @@ public class MainApplication {
     private final FileInputService fileInputService; // Ввод и валидация пути к файлу
     private final FileContentReader fileContentReader; // Построчное чтение файла
     private final Statistics statistics; // Анализ и подсчет статистики содержимого файла
+    private final AppOptions options; // Параметры командной строки
     private int processedFilesCount; // Счетчик файлов
+    private int failedFilesCount; // Файлы, обработка которых завершилась ошибкой
+
+    private static final long FOLLOW_POLL_MILLIS = 500; // Интервал проверки дописывания файла
 
     public MainApplication(FileInputService fileInputService,
                            FileContentReader fileContentReader,
-                           Statistics statistics) {
+                           Statistics statistics,
+                           AppOptions options) {
         this.fileInputService = fileInputService;
         this.fileContentReader = fileContentReader;
         this.statistics = statistics;
+        this.options = options;
         this.processedFilesCount = 0;
     }
 
@@ -38,38 +45,257 @@ public class MainApplication {
         }
     }
 
+    // Метод однократной обработки файлов, переданных в командной строке (без интерактивного ввода).
+    // Возвращает false, если хотя бы один файл не удалось обработать
+    public boolean processFiles(List<File> files) {
+        for (File file : files) {
+            if (!file.isFile()) {
+                System.out.println("❌ Файл не найден: " + file.getPath());
+                failedFilesCount++;
+                continue;
+            }
+            processFile(file);
+            statistics.reset();
+        }
+        return failedFilesCount == 0;
+    }
+
     // Метод обработки одного файла
     private void processFile(File file) {
         // Увеличиваем и выводим Счетчик файлов
         processedFilesCount++;
         System.out.printf("%nПуть указан верно%nЭто файл номер %d%n", processedFilesCount);
+        if (options.isFollow()) {
+            followFile(file);
+            return;
+        }
+        if (options.isSampling()) {
+            sampleFile(file);
+            return;
+        }
         try {
-            // Читаем построчно файл через класс fileContentReader
-            List<String> lines = fileContentReader.readLines(file);
-            // Анализируем строки через класс LogAnalyzerService
-            FileAnalysisResult result = statistics.analyzeFile(file.getName(), lines);
+            // Читаем файл потоково через fileContentReader и анализируем строки,
+            // при необходимости продолжая с контрольной точки
+            FileAnalysisResult result = statistics.analyzeFile(file, fileContentReader, options.createCheckpoint());
             // Выводим результаты через класс FileAnalysisResult
             result.printResults();
+            // Сохраняем снимок статистики для последующего объединения
+            if (options.getSnapshotDir() != null) {
+                File snapshot = StatisticsSnapshot.export(statistics, options.getSnapshotDir(), file);
+                System.out.println("💾 Снимок статистики сохранен: " + snapshot.getPath());
+            }
             // Обрабатываем возможные исключения
         } catch (LongLineException e) { // Пользовательский класс исключения для случая превышения макс допустимой длины строки
             System.out.println("❌ " + e.getMessage());
+            failedFilesCount++;
         } catch (IOException e) {
             System.out.println("❌ Ошибка при обработке файла: " + e.getMessage());
+            failedFilesCount++;
         }
     }
 
+    // Метод отслеживания дописывания файла: работает до остановки программы
+    private void followFile(File file) {
+        try {
+            statistics.followFile(file, fileContentReader, options.createCheckpoint(), FOLLOW_POLL_MILLIS);
+        } catch (LongLineException e) {
+            System.out.println("❌ " + e.getMessage());
+            failedFilesCount++;
+        } catch (IOException e) {
+            System.out.println("❌ Ошибка при обработке файла: " + e.getMessage());
+            failedFilesCount++;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Метод быстрой выборочной оценки файла
+    private void sampleFile(File file) {
+        try {
+            options.createSampler().analyze(file, statistics).printResults();
+        } catch (LongLineException e) {
+            System.out.println("❌ " + e.getMessage());
+            failedFilesCount++;
+        } catch (IOException e) {
+            System.out.println("❌ Ошибка при обработке файла: " + e.getMessage());
+            failedFilesCount++;
+        }
+    }
+
+    // Метод объединения снимков статистики, полученных на разных узлах.
+    // Возвращает false, если снимки не удалось объединить
+    private static boolean mergeSnapshots(AppOptions options, Statistics statistics) {
+        try {
+            StatisticsSnapshot.merge(options.getSnapshotsToMerge(), statistics).printResults();
+            return true;
+        } catch (IOException e) {
+            System.out.println("❌ Ошибка при объединении снимков: " + e.getMessage());
+            return false;
+        }
+    }
+
+    // Метод анализа логов нескольких серверов, объединенных в один поток по времени.
+    // Возвращает false, если хотя бы один лог не найден или анализ завершился ошибкой
+    private static boolean mergeLogs(AppOptions options, Statistics statistics) {
+        List<File> files = options.getLogsToMerge();
+        for (File file : files) {
+            if (!file.isFile()) {
+                System.out.println("❌ Файл не найден: " + file.getPath());
+                return false;
+            }
+        }
+        System.out.printf("🔗 Объединяем логи по времени: %d файлов%n", files.size());
+        try {
+            LogMerger merger = new LogMerger(files, options.getLogFormat(), options.getReorderWindowSeconds());
+            String name = files.stream().map(File::getName).collect(Collectors.joining(", "));
+            statistics.analyzeMerged(merger, name).printResults();
+            return true;
+        } catch (LongLineException e) {
+            System.out.println("❌ " + e.getMessage());
+            return false;
+        } catch (IOException e) {
+            System.out.println("❌ Ошибка при слиянии логов: " + e.getMessage());
+            return false;
+        }
+    }
+
+    // Метод создания статистики с хранением агрегатов, шаблонами маршрутов и сигнатурами ботов, заданными в параметрах
+    private static Statistics createStatistics(AppOptions options) throws IOException {
+        Statistics statistics = new Statistics();
+        statistics.setSessionTimeout(options.getSessionTimeoutSeconds());
+        BotSignatures signatures = BotSignatures.defaults();
+        if (options.getBotSignaturesFile() != null) {
+            signatures = BotSignatures.load(options.getBotSignaturesFile());
+            statistics.setBotSignatures(signatures);
+        }
+        if (options.getBotRangesFile() != null) {
+            statistics.setBotRanges(BotRanges.load(options.getBotRangesFile(), signatures));
+        }
+        RouteTemplates routes = options.createRouteTemplates();
+        if (routes != null) {
+            statistics.setRouteTemplates(routes);
+        }
+        MemoryBudget budget = options.createMemoryBudget();
+        if (budget != null) {
+            statistics.useOffHeapAggregates(budget, options.getSpillDir());
+        }
+        return statistics;
+    }
+
+    // Метод вывода инцидента, найденного детектором аномалий
+    private static void printAnomaly(Anomaly anomaly) {
+        System.out.println((anomaly.isOngoing() ? "🚨 Аномалия: " : "✓ Инцидент завершен: ") + anomaly.describe());
+    }
+
+    // Метод создания инструментации: JMX MBean и периодический вывод прогресса
+    private static AnalysisMetrics createMetrics(AppOptions options) {
+        AnalysisMetrics metrics = new AnalysisMetrics();
+        metrics.registerMBean();
+        if (options.getProgressIntervalSeconds() > 0) {
+            metrics.startProgressReporter(options.getProgressIntervalSeconds());
+        }
+        return metrics;
+    }
+
     // Точка входа в программу
     public static void main(String[] args) {
+        // Разбираем параметры командной строки
+        AppOptions options;
+        try {
+            options = AppOptions.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.out.println("❌ " + e.getMessage());
+            System.out.println(AppOptions.usage());
+            System.exit(1);
+            return;
+        }
+
+        // Загружаем сигнатуры и диапазоны ботов до начала анализа
+        Statistics statistics;
+        try {
+            statistics = createStatistics(options);
+        } catch (IOException | IllegalArgumentException e) {
+            System.out.println("❌ Ошибка загрузки настроек ботов: " + e.getMessage());
+            System.exit(1);
+            return;
+        }
+
+        // Режим объединения снимков не требует ввода путей к файлам
+        if (!options.getSnapshotsToMerge().isEmpty()) {
+            if (!mergeSnapshots(options, statistics)) {
+                System.exit(1);
+            }
+            return;
+        }
+
+        // Инициализируем все компоненты
+        if (options.isMetricsEnabled()) {
+            statistics.setMetrics(createMetrics(options));
+        }
+        statistics.setFilter(options.getFilter());
+        statistics.setLogFormat(options.getLogFormat());
+        if (options.isAnomalyDetection()) {
+            if (options.isSampling()) {
+                // Случайные блоки файла не образуют непрерывного ряда бакетов
+                System.out.println("⚠️  Поиск аномалий не работает при выборочном анализе и будет пропущен");
+            } else {
+                statistics.setAnomalyDetector(options.createAnomalyDetector(MainApplication::printAnomaly));
+            }
+        }
+        StatisticsServer server = null;
+        if (options.getHttpPort() >= 0) {
+            try {
+                server = new StatisticsServer(options.getHttpPort(), StatisticsServer.DEFAULT_PUBLISH_INTERVAL_MILLIS);
+                statistics.setServer(server);
+                System.out.printf("🌐 Статистика доступна по адресу http://127.0.0.1:%d/stats%n", server.getPort());
+            } catch (IOException e) {
+                System.out.println("❌ Не удалось запустить HTTP-сервер: " + e.getMessage());
+                System.exit(1);
+                return;
+            }
+        }
+
+        // Сервер работает, пока идет анализ: в режиме --follow анализ не завершается сам,
+        // в остальных режимах сервер останавливается вместе с ним, чтобы программа могла завершиться
+        boolean success;
+        try {
+            success = run(options, statistics);
+        } finally {
+            if (server != null) {
+                server.stop();
+            }
+        }
+        if (!success) {
+            System.exit(1);
+        }
+    }
+
+    // Метод выбора режима работы: слияние логов, файлы из командной строки или интерактивный ввод.
+    // Возвращает false, если анализ завершился ошибкой
+    private static boolean run(AppOptions options, Statistics statistics) {
+        // Режим слияния логов нескольких серверов также не требует ввода путей
+        if (!options.getLogsToMerge().isEmpty()) {
+            return mergeLogs(options, statistics);
+        }
+
+        // Файлы из командной строки обрабатываются сразу, без Scanner и интерактивного ввода,
+        // чтобы при запуске из скриптов не тратить время на его инициализацию
+        if (!options.getFiles().isEmpty()) {
+            MainApplication app = new MainApplication(null, new FileContentReader(), statistics, options);
+            return app.processFiles(options.getFiles());
+        }
+
         // Создаем экземпляр Scanner для ввода путей к файлам
         try (Scanner scanner = new Scanner(System.in)) {
-            // Инициализируем все компоненты
             MainApplication app = new MainApplication(
                     new FileInputService(scanner),
                     new FileContentReader(),
-                    new Statistics()
+                    statistics,
+                    options
             );
             // Запускаем программу
             app.start();
         }
+        return true;
     }
 }
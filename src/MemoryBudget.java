@@ -0,0 +1,82 @@
+import com.sun.management.HotSpotDiagnosticMXBean;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Общий бюджет памяти вне кучи для агрегатов высокой кардинальности.
+ * Счетчики резервируют память перед выделением буфера; если резерв не удался,
+ * счетчик сбрасывает свое содержимое на диск и освобождает память.
+ * Буферы выделяются через ByteBuffer.allocateDirect, поэтому бюджет не может превышать
+ * предел прямой памяти JVM (-XX:MaxDirectMemorySize, по умолчанию равен -Xmx).
+ */
+public class MemoryBudget {
+
+    // Прямая память сверх бюджета: буферы ввода-вывода JDK и превышение бюджета минимальным блоком
+    private static final long DIRECT_MEMORY_RESERVE = 16 * 1024 * 1024;
+
+    private final long limitBytes; // Предел памяти вне кучи
+    private long usedBytes; // Зарезервировано сейчас
+    private long peakBytes; // Максимум зарезервированной памяти
+
+    /**
+     * @param limitBytes предел памяти вне кучи в байтах
+     * @throws IllegalArgumentException если предел не положителен или не помещается в прямую память JVM
+     */
+    public MemoryBudget(long limitBytes) {
+        checkLimit(limitBytes);
+        this.limitBytes = limitBytes;
+    }
+
+    /**
+     * Проверяет, что бюджет положителен и помещается в предел прямой памяти JVM
+     * @param limitBytes предел памяти вне кучи в байтах
+     * @throws IllegalArgumentException если бюджет не подходит
+     */
+    public static void checkLimit(long limitBytes) {
+        if (limitBytes <= 0) {
+            throw new IllegalArgumentException("Бюджет памяти должен быть положительным: " + limitBytes);
+        }
+        long maxDirect = maxDirectMemory();
+        if (limitBytes > maxDirect - DIRECT_MEMORY_RESERVE) {
+            throw new IllegalArgumentException(String.format(
+                    "Бюджет памяти вне кучи %d МБ не помещается в предел прямой памяти JVM %d МБ "
+                            + "(нужен запас %d МБ), увеличьте -XX:MaxDirectMemorySize",
+                    limitBytes >> 20, maxDirect >> 20, DIRECT_MEMORY_RESERVE >> 20));
+        }
+    }
+
+    /**
+     * Резервирует память, если она помещается в бюджет
+     * @param bytes размер в байтах
+     * @return true, если память зарезервирована
+     */
+    public boolean tryReserve(long bytes) {
+        if (usedBytes + bytes > limitBytes) {
+            return false;
+        }
+        usedBytes += bytes;
+        peakBytes = Math.max(peakBytes, usedBytes);
+        return true;
+    }
+
+    // Резервирует память без проверки предела (когда без нее продолжить работу невозможно)
+    public void forceReserve(long bytes) {
+        usedBytes += bytes;
+        peakBytes = Math.max(peakBytes, usedBytes);
+    }
+
+    public void release(long bytes) {
+        usedBytes -= bytes;
+    }
+
+    /**
+     * @return предел прямой памяти JVM в байтах (-XX:MaxDirectMemorySize, без него - предел кучи)
+     */
+    public static long maxDirectMemory() {
+        HotSpotDiagnosticMXBean bean = ManagementFactory.getPlatformMXBean(HotSpotDiagnosticMXBean.class);
+        long configured = bean != null ? Long.parseLong(bean.getVMOption("MaxDirectMemorySize").getValue()) : 0;
+        return configured > 0 ? configured : Runtime.getRuntime().maxMemory();
+    }
+
+    public long getLimitBytes() { return limitBytes; }
+    public long getPeakBytes() { return peakBytes; }
+}
@@ -0,0 +1,320 @@
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Изменяемая переиспользуемая запись лога (flyweight) для разбора без выделения памяти.
+ * Строковые поля доступны как представления ByteCharSequence над общим буфером чтения,
+ * числовые - как примитивы. Содержимое действительно только до разбора следующей строки,
+ * поэтому сохранять ссылки на представления нельзя.
+ */
+public class MutableLogEntry {
+
+    // Названия месяцев в формате даты access-лога
+    private static final String MONTHS = "JanFebMarAprMayJunJulAugSepOctNovDec";
+    private static final int DATE_LENGTH = 26; // Длина "dd/MMM/yyyy:HH:mm:ss +zzzz"
+    private static final int ISO_DATE_LENGTH = 19; // Длина "yyyy-MM-ddTHH:mm:ss" без смещения
+    private static final byte[] HTTP_VERSION = " HTTP/".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] EMPTY = new byte[0];
+    private static final long[] POWERS = {100_000, 10_000, 1_000, 100, 10, 1}; // Вес цифр дробной части в мкс
+
+    private final ByteCharSequence ip = new ByteCharSequence(); // IP-адрес клиента
+    private final ByteCharSequence path = new ByteCharSequence(); // Путь запроса
+    private final ByteCharSequence referer = new ByteCharSequence(); // URL источника запроса
+    private final ByteCharSequence userAgent = new ByteCharSequence(); // Строка User-Agent
+    private final ByteCharSequence host = new ByteCharSequence(); // Виртуальный хост (заголовок Host)
+    private boolean hasReferer; // Указан ли referer (не "-")
+    private boolean hasHost; // Указан ли хост
+    private HttpMethod method; // HTTP метод
+    private int responseCode; // Код ответа
+    private long responseSize; // Размер ответа в байтах
+    private long epochSecond; // Время запроса (локальное время лога в секундах от эпохи)
+    private int offsetSeconds; // Смещение часового пояса времени запроса в секундах
+    private long requestTimeMicros; // Время обработки запроса в микросекундах (-1, если нет в формате)
+    private long upstreamTimeMicros; // Время ответа upstream в микросекундах (-1, если нет)
+
+    // Кэш последней разобранной даты: соседние строки обычно относятся к одной секунде
+    private final byte[] lastDate = new byte[DATE_LENGTH];
+    private long lastEpochSecond = Long.MIN_VALUE;
+    private int lastOffsetSeconds;
+
+    // ========== ЗАПОЛНЕНИЕ ПОЛЕЙ ==========
+
+    // Сброс полей перед разбором очередной строки (необязательные поля формата могут отсутствовать)
+    void clear() {
+        ip.set(EMPTY, 0, 0);
+        referer.set(EMPTY, 0, 0);
+        path.set(EMPTY, 0, 0);
+        userAgent.set(EMPTY, 0, 0);
+        host.set(EMPTY, 0, 0);
+        hasReferer = false;
+        hasHost = false;
+        method = HttpMethod.UNKNOWN;
+        responseCode = 0;
+        responseSize = 0;
+        epochSecond = 0;
+        offsetSeconds = 0;
+        requestTimeMicros = -1;
+        upstreamTimeMicros = -1;
+    }
+
+    /**
+     * Заполняет поле записи из участка буфера, выделенного скомпилированным LogFormat
+     * @param field тип поля
+     * @param buffer буфер чтения
+     * @param start начало значения
+     * @param end конец значения (не включительно)
+     * @return false, если значение имеет неверный формат
+     */
+    boolean set(LogFormat.Field field, byte[] buffer, int start, int end) {
+        switch (field) {
+            case REMOTE_ADDR:
+                ip.set(buffer, start, end);
+                return end > start;
+            case TIME_LOCAL:
+                if (end - start != DATE_LENGTH) return false;
+                epochSecond = parseDate(buffer, start);
+                return true;
+            case TIME_ISO8601:
+                return parseIsoDate(buffer, start, end);
+            case REQUEST:
+                return parseRequest(buffer, start, end);
+            case STATUS:
+                int status = parseNumber(buffer, start, end);
+                responseCode = status;
+                return status >= 0;
+            case BODY_BYTES:
+                if (end - start == 1 && buffer[start] == '-') {
+                    responseSize = 0;
+                    return true;
+                }
+                long size = parseLong(buffer, start, end);
+                responseSize = size;
+                return size >= 0;
+            case REFERER:
+                referer.set(buffer, start, end);
+                hasReferer = !referer.contentEquals("-");
+                return true;
+            case USER_AGENT:
+                userAgent.set(buffer, start, end);
+                return true;
+            case REQUEST_TIME_SECONDS:
+                requestTimeMicros = parseSecondsList(buffer, start, end);
+                return true;
+            case REQUEST_TIME_MICROS:
+                requestTimeMicros = parseLong(buffer, start, end);
+                return true;
+            case UPSTREAM_RESPONSE_TIME:
+                upstreamTimeMicros = parseSecondsList(buffer, start, end);
+                return true;
+            case HOST:
+                host.set(buffer, start, end);
+                hasHost = end > start && !host.contentEquals("-");
+                return true;
+            default:
+                return true;
+        }
+    }
+
+    // Разбор запроса "METHOD path HTTP/x". Версия протокола ищется с конца запроса:
+    // она занимает несколько последних байт, а путь может быть длинным
+    private boolean parseRequest(byte[] buffer, int start, int end) {
+        int methodEnd = start;
+        while (methodEnd < end && isWordChar(buffer[methodEnd])) methodEnd++;
+        if (methodEnd == start || methodEnd >= end || buffer[methodEnd] != ' ') return false;
+        method = HttpMethod.fromBytes(buffer, start, methodEnd);
+
+        int versionStart = lastIndexOf(buffer, HTTP_VERSION, methodEnd + 1, end);
+        if (versionStart < 0) return false;
+        path.set(buffer, methodEnd + 1, versionStart);
+        return true;
+    }
+
+    // Сумма времен в секундах вида "0.012" или "0.010, 0.002 : 0.001" (несколько upstream) в микросекундах.
+    // "-" означает отсутствие значения (-1)
+    private static long parseSecondsList(byte[] buffer, int start, int end) {
+        long total = 0;
+        long whole = 0; // Целые секунды текущего значения
+        long micros = 0; // Дробная часть текущего значения в микросекундах
+        int fraction = -1; // Количество цифр после точки (-1 - точки еще не было)
+        boolean any = false;
+        for (int i = start; i <= end; i++) {
+            byte b = i < end ? buffer[i] : (byte) ',';
+            if (isDigit(b)) {
+                if (fraction < 0) {
+                    whole = whole * 10 + (b - '0');
+                } else if (fraction < 6) {
+                    micros += (b - '0') * POWERS[fraction++];
+                }
+                any = true;
+            } else if (b == '.' && fraction < 0) {
+                fraction = 0;
+            } else if (b == ',' || b == ':' || b == ' ') {
+                total += whole * 1_000_000L + micros;
+                whole = 0;
+                micros = 0;
+                fraction = -1;
+            } else if (b != '-') {
+                return -1;
+            }
+        }
+        return any ? total : -1;
+    }
+
+    // Разбор "yyyy-MM-ddTHH:mm:ss+zz:zz" ($time_iso8601) в секунды от эпохи; смещение ("+zz:zz"
+    // или "+zzzz") запоминается отдельно, без него ("Z" или пусто) время считается UTC
+    private boolean parseIsoDate(byte[] buffer, int start, int end) {
+        if (end - start < ISO_DATE_LENGTH) return false;
+        int year = digits(buffer, start, 4);
+        int month = digits(buffer, start + 5, 2);
+        int day = digits(buffer, start + 8, 2);
+        int hour = digits(buffer, start + 11, 2);
+        int minute = digits(buffer, start + 14, 2);
+        int second = digits(buffer, start + 17, 2);
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > 31 || hour < 0 || hour > 23
+                || minute < 0 || minute > 59 || second < 0 || second > 59 || buffer[start + 4] != '-'
+                || buffer[start + 7] != '-' || buffer[start + 10] != 'T' || buffer[start + 13] != ':'
+                || buffer[start + 16] != ':') {
+            return false;
+        }
+        epochSecond = daysFromCivil(year, month, day) * 86400L + hour * 3600L + minute * 60L + second;
+        offsetSeconds = parseIsoOffset(buffer, start + ISO_DATE_LENGTH, end);
+        return true;
+    }
+
+    // Смещение после времени ISO 8601 в секундах; дробная часть секунд пропускается,
+    // нераспознанный суффикс считается нулевым смещением (как до учета поясов)
+    private static int parseIsoOffset(byte[] buffer, int pos, int end) {
+        if (pos < end && buffer[pos] == '.') {
+            pos++;
+            while (pos < end && isDigit(buffer[pos])) pos++;
+        }
+        if (pos == end) return 0;
+        byte sign = buffer[pos];
+        int hours = -1;
+        int minutes = -1;
+        if (end - pos == 6 && buffer[pos + 3] == ':') {
+            hours = digits(buffer, pos + 1, 2);
+            minutes = digits(buffer, pos + 4, 2);
+        } else if (end - pos == 5) {
+            hours = digits(buffer, pos + 1, 2);
+            minutes = digits(buffer, pos + 3, 2);
+        }
+        if ((sign != '+' && sign != '-') || hours < 0 || minutes < 0) return 0;
+        int offset = hours * 3600 + minutes * 60;
+        return sign == '-' ? -offset : offset;
+    }
+
+    // Неотрицательное целое (-1, если участок пуст, содержит не цифры или слишком длинный)
+    private static int parseNumber(byte[] buffer, int start, int end) {
+        if (end <= start || end - start > 9) return -1;
+        return digits(buffer, start, end - start);
+    }
+
+    private static long parseLong(byte[] buffer, int start, int end) {
+        if (end <= start || end - start > 18) return -1;
+        long result = 0;
+        for (int i = start; i < end; i++) {
+            if (!isDigit(buffer[i])) return -1;
+            result = result * 10 + (buffer[i] - '0');
+        }
+        return result;
+    }
+
+    // Разбор даты "dd/MMM/yyyy:HH:mm:ss +zzzz" в секунды от эпохи (без учета смещения, как в LogEntry);
+    // смещение запоминается в offsetSeconds
+    private long parseDate(byte[] buffer, int pos) {
+        boolean same = lastEpochSecond != Long.MIN_VALUE;
+        for (int i = 0; same && i < DATE_LENGTH; i++) {
+            same = lastDate[i] == buffer[pos + i];
+        }
+        if (same) {
+            offsetSeconds = lastOffsetSeconds;
+            return lastEpochSecond;
+        }
+
+        int month = -1;
+        for (int m = 0; m < 12; m++) {
+            if (buffer[pos + 3] == MONTHS.charAt(m * 3) && buffer[pos + 4] == MONTHS.charAt(m * 3 + 1)
+                    && buffer[pos + 5] == MONTHS.charAt(m * 3 + 2)) {
+                month = m + 1;
+                break;
+            }
+        }
+        int day = digits(buffer, pos, 2);
+        int year = digits(buffer, pos + 7, 4);
+        int hour = digits(buffer, pos + 12, 2);
+        int minute = digits(buffer, pos + 15, 2);
+        int second = digits(buffer, pos + 18, 2);
+        byte sign = buffer[pos + 21];
+        if (month < 0 || day < 1 || day > 31 || year < 0 || hour < 0 || hour > 23 || minute < 0 || minute > 59
+                || second < 0 || second > 59 || buffer[pos + 2] != '/' || buffer[pos + 6] != '/'
+                || buffer[pos + 11] != ':' || buffer[pos + 14] != ':' || buffer[pos + 17] != ':'
+                || buffer[pos + 20] != ' ' || (sign != '+' && sign != '-') || digits(buffer, pos + 22, 4) < 0) {
+            throw new IllegalArgumentException("Неверный формат даты: "
+                    + new String(buffer, pos, DATE_LENGTH, StandardCharsets.UTF_8));
+        }
+
+        long result = daysFromCivil(year, month, day) * 86400L + hour * 3600L + minute * 60L + second;
+        int offset = digits(buffer, pos + 22, 2) * 3600 + digits(buffer, pos + 24, 2) * 60;
+        offsetSeconds = sign == '-' ? -offset : offset;
+        System.arraycopy(buffer, pos, lastDate, 0, DATE_LENGTH);
+        lastEpochSecond = result;
+        lastOffsetSeconds = offsetSeconds;
+        return result;
+    }
+
+    // Число дней от 1970-01-01 до заданной даты (алгоритм Говарда Хиннанта)
+    static long daysFromCivil(int year, int month, int day) {
+        int y = month <= 2 ? year - 1 : year;
+        int era = Math.floorDiv(y, 400);
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097L + dayOfEra - 719468;
+    }
+
+    private static int digits(byte[] buffer, int pos, int count) {
+        int result = 0;
+        for (int i = pos; i < pos + count; i++) {
+            if (!isDigit(buffer[i])) return -1;
+            result = result * 10 + (buffer[i] - '0');
+        }
+        return result;
+    }
+
+    private static int lastIndexOf(byte[] buffer, byte[] value, int from, int end) {
+        outer:
+        for (int i = end - value.length; i >= from; i--) {
+            for (int j = 0; j < value.length; j++) {
+                if (buffer[i + j] != value[j]) continue outer;
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+
+    private static boolean isWordChar(byte b) {
+        return isDigit(b) || (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z') || b == '_';
+    }
+
+    // ========== ГЕТТЕРЫ ==========
+
+    public ByteCharSequence getIpAddr() { return ip; }
+    public long getEpochSecond() { return epochSecond; }
+    // Смещение часового пояса времени запроса в секундах
+    public int getOffsetSeconds() { return offsetSeconds; }
+    // Время запроса в секундах от эпохи UTC (с учетом смещения часового пояса)
+    public long getUtcEpochSecond() { return epochSecond - offsetSeconds; }
+    public HttpMethod getMethod() { return method; }
+    public ByteCharSequence getPath() { return path; }
+    public int getResponseCode() { return responseCode; }
+    public long getResponseSize() { return responseSize; }
+    public ByteCharSequence getReferer() { return hasReferer ? referer : null; } // null, если не указан
+    public ByteCharSequence getUserAgent() { return userAgent; }
+    public ByteCharSequence getHost() { return hasHost ? host : null; } // null, если не указан
+    public long getRequestTimeMicros() { return requestTimeMicros; } // -1, если не указано
+    public long getUpstreamTimeMicros() { return upstreamTimeMicros; } // -1, если не указано
+}
@@ -0,0 +1,609 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * Счетчик строк, хранящий таблицу и ключи вне кучи (в прямых ByteBuffer) в пределах общего
+ * бюджета памяти. Таблица на открытой адресации хранит в ячейке хеш, счетчик и ссылку на ключ,
+ * ключи в UTF-8 лежат подряд в блоках. Когда бюджет исчерпан, содержимое сортируется по ключам
+ * и сбрасывается на диск отдельной серией, а память освобождается. При чтении итогов серии
+ * и данные в памяти сливаются k-путевым слиянием, одинаковые ключи суммируются.
+ * Куча при этом не растет с числом ключей, и сборщику мусора нечего обходить.
+ */
+public class OffHeapStringCounter implements KeyCounter {
+
+    private static final int SLOT_SIZE = 16; // Ячейка: хеш (4 байта), счетчик (4), ссылка на ключ (8, 0 - пусто)
+    private static final int INITIAL_CAPACITY = 1024; // Ячеек в таблице после создания и сброса
+    private static final int MIN_CHUNK_SIZE = 64 * 1024; // Размер блока для ключей
+    private static final int MAX_CHUNK_SIZE = 1024 * 1024;
+    private static final int MAX_KEY_LENGTH = 0xFFFF; // Длина ключа хранится в двух байтах
+    private static final int MAX_RUNS = 16; // При большем числе серий они сливаются в одну
+    private static final int IO_BUFFER_SIZE = 64 * 1024;
+
+    // Обработчик ключа в UTF-8 при слиянии
+    @FunctionalInterface
+    private interface EntryVisitor {
+        void accept(byte[] key, int length, int count);
+    }
+
+    private final MemoryBudget budget; // Общий бюджет памяти вне кучи
+    private final File spillDir; // Каталог для серий, сброшенных на диск
+    private final int chunkSize; // Размер блока для ключей
+
+    private ByteBuffer table; // Таблица ячеек (null - еще не выделена)
+    private int capacity; // Количество ячеек
+    private int size; // Количество ключей в памяти
+    private final List<ByteBuffer> chunks = new ArrayList<>(); // Блоки с ключами: [длина 2 байта][UTF-8]
+    private int chunkPosition; // Позиция записи в последнем блоке
+    private long reservedBytes; // Сколько памяти зарезервировано в бюджете
+
+    private final List<File> runs = new ArrayList<>(); // Отсортированные серии на диске
+    private byte[] scratch = new byte[256]; // Ключ текущей операции в UTF-8
+
+    // Итоги слияния памяти и серий на диске (пересчитываются после изменений)
+    private boolean summaryValid;
+    private int mergedSize;
+    private int mergedMax;
+
+    /**
+     * @param budget общий бюджет памяти вне кучи
+     * @param spillDir каталог для сброса серий на диск
+     */
+    public OffHeapStringCounter(MemoryBudget budget, File spillDir) {
+        this.budget = budget;
+        this.spillDir = spillDir;
+        this.chunkSize = (int) Math.max(MIN_CHUNK_SIZE, Math.min(MAX_CHUNK_SIZE, budget.getLimitBytes() / 16));
+    }
+
+    // ========== ИЗМЕНЕНИЕ ==========
+
+    @Override
+    public void add(CharSequence seq, int start, int end, int delta) {
+        int length = encode(seq, start, end);
+        int hash = hash(scratch, length);
+        summaryValid = false;
+        if (table != null) {
+            int slot = findSlot(hash, length);
+            if (table.getLong(slot + 8) != 0) {
+                table.putInt(slot + 4, table.getInt(slot + 4) + delta);
+                return;
+            }
+        }
+
+        // Новый ключ: если места в бюджете нет, сбрасываем накопленное на диск и начинаем заново
+        if (!ensureRoom(length, false)) {
+            spill();
+            ensureRoom(length, true);
+        }
+        int slot = findSlot(hash, length);
+        table.putInt(slot, hash);
+        table.putInt(slot + 4, delta);
+        table.putLong(slot + 8, storeKey(length));
+        size++;
+    }
+
+    @Override
+    public void clear() {
+        releaseMemory();
+        for (File run : runs) {
+            run.delete();
+        }
+        runs.clear();
+        summaryValid = false;
+    }
+
+    // ========== ЧТЕНИЕ ==========
+
+    // После сброса на диск size и max сливают все серии (итог кэшируется до следующего изменения),
+    // поэтому их не стоит вызывать во время анализа
+    @Override
+    public int size() {
+        if (runs.isEmpty()) {
+            return size;
+        }
+        summarize();
+        return mergedSize;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0 && runs.isEmpty();
+    }
+
+    @Override
+    public int max() {
+        if (!runs.isEmpty()) {
+            summarize();
+            return mergedMax;
+        }
+        int max = 0;
+        for (int slot = 0; table != null && slot < capacity * SLOT_SIZE; slot += SLOT_SIZE) {
+            if (table.getLong(slot + 8) != 0) {
+                max = Math.max(max, table.getInt(slot + 4));
+            }
+        }
+        return max;
+    }
+
+    @Override
+    public void forEach(ObjIntConsumer<String> action) {
+        merge((key, length, count) -> action.accept(new String(key, 0, length, StandardCharsets.UTF_8), count));
+    }
+
+    // Количество серий, сброшенных на диск
+    public int getRunCount() {
+        return runs.size();
+    }
+
+    // ========== ХРАНЕНИЕ ВНЕ КУЧИ ==========
+
+    // Ключ в UTF-8 в scratch: ASCII копируется побайтно, остальное кодируется через String
+    private int encode(CharSequence seq, int start, int end) {
+        int length = end - start;
+        if (scratch.length < length) {
+            scratch = new byte[Math.max(length, scratch.length * 2)];
+        }
+        for (int i = 0; i < length; i++) {
+            char c = seq.charAt(start + i);
+            if (c >= 0x80) {
+                byte[] bytes = seq.subSequence(start, end).toString().getBytes(StandardCharsets.UTF_8);
+                if (scratch.length < bytes.length) {
+                    scratch = new byte[bytes.length];
+                }
+                System.arraycopy(bytes, 0, scratch, 0, bytes.length);
+                length = bytes.length;
+                break;
+            }
+            scratch[i] = (byte) c;
+        }
+        if (length > MAX_KEY_LENGTH) {
+            throw new IllegalArgumentException("Слишком длинный ключ: " + length + " байт");
+        }
+        return length;
+    }
+
+    private static int hash(byte[] key, int length) {
+        int hash = 0;
+        for (int i = 0; i < length; i++) {
+            hash = 31 * hash + key[i];
+        }
+        return hash ^ (hash >>> 16);
+    }
+
+    // Ячейка с ключом из scratch или первая свободная ячейка на его пути
+    private int findSlot(int hash, int length) {
+        int mask = capacity - 1;
+        int index = hash & mask;
+        while (true) {
+            int slot = index * SLOT_SIZE;
+            long ref = table.getLong(slot + 8);
+            if (ref == 0 || (table.getInt(slot) == hash && keyEquals(ref, length))) {
+                return slot;
+            }
+            index = (index + 1) & mask;
+        }
+    }
+
+    private boolean keyEquals(long ref, int length) {
+        ByteBuffer chunk = chunks.get(chunkIndex(ref));
+        int offset = chunkOffset(ref);
+        if ((chunk.getShort(offset) & 0xFFFF) != length) return false;
+        for (int i = 0; i < length; i++) {
+            if (chunk.get(offset + 2 + i) != scratch[i]) return false;
+        }
+        return true;
+    }
+
+    // Гарантирует место в таблице и блоке для нового ключа; force - выделить даже сверх бюджета
+    private boolean ensureRoom(int keyLength, boolean force) {
+        if (table == null) {
+            if (!reserve((long) INITIAL_CAPACITY * SLOT_SIZE, force)) return false;
+            table = ByteBuffer.allocateDirect(INITIAL_CAPACITY * SLOT_SIZE);
+            capacity = INITIAL_CAPACITY;
+        } else if ((size + 1) * 2 > capacity) {
+            if (!reserve((long) capacity * 2 * SLOT_SIZE, force)) return false;
+            rehash(capacity * 2);
+        }
+        if (chunks.isEmpty() || chunkPosition + 2 + keyLength > chunks.get(chunks.size() - 1).capacity()) {
+            int newChunkSize = Math.max(chunkSize, 2 + keyLength);
+            if (!reserve(newChunkSize, force)) return false;
+            chunks.add(ByteBuffer.allocateDirect(newChunkSize));
+            chunkPosition = 0;
+        }
+        return true;
+    }
+
+    private boolean reserve(long bytes, boolean force) {
+        if (!budget.tryReserve(bytes)) {
+            if (!force) return false;
+            // Бюджет меньше минимального рабочего объема: превышаем его, но продолжаем работу
+            budget.forceReserve(bytes);
+        }
+        reservedBytes += bytes;
+        return true;
+    }
+
+    private void rehash(int newCapacity) {
+        ByteBuffer oldTable = table;
+        int oldCapacity = capacity;
+        table = ByteBuffer.allocateDirect(newCapacity * SLOT_SIZE);
+        capacity = newCapacity;
+        int mask = newCapacity - 1;
+        for (int slot = 0; slot < oldCapacity * SLOT_SIZE; slot += SLOT_SIZE) {
+            long ref = oldTable.getLong(slot + 8);
+            if (ref != 0) {
+                int hash = oldTable.getInt(slot);
+                int index = hash & mask;
+                while (table.getLong(index * SLOT_SIZE + 8) != 0) {
+                    index = (index + 1) & mask;
+                }
+                int target = index * SLOT_SIZE;
+                table.putInt(target, hash);
+                table.putInt(target + 4, oldTable.getInt(slot + 4));
+                table.putLong(target + 8, ref);
+            }
+        }
+        budget.release((long) oldCapacity * SLOT_SIZE);
+        reservedBytes -= (long) oldCapacity * SLOT_SIZE;
+    }
+
+    // Копирует ключ из scratch в последний блок и возвращает ссылку на него
+    private long storeKey(int length) {
+        ByteBuffer chunk = chunks.get(chunks.size() - 1);
+        int offset = chunkPosition;
+        chunk.putShort(offset, (short) length);
+        chunk.put(offset + 2, scratch, 0, length);
+        chunkPosition += 2 + length;
+        return (((long) (chunks.size() - 1) << 32) | offset) + 1;
+    }
+
+    private static int chunkIndex(long ref) {
+        return (int) ((ref - 1) >>> 32);
+    }
+
+    private static int chunkOffset(long ref) {
+        return (int) (ref - 1);
+    }
+
+    // Освобождение памяти вне кучи (сами буферы освободит сборщик мусора вместе с объектами ByteBuffer)
+    private void releaseMemory() {
+        table = null;
+        capacity = 0;
+        size = 0;
+        chunks.clear();
+        chunkPosition = 0;
+        budget.release(reservedBytes);
+        reservedBytes = 0;
+    }
+
+    // ========== СБРОС НА ДИСК ==========
+
+    // Записывает содержимое памяти отсортированной серией и освобождает память
+    private void spill() {
+        if (size > 0) {
+            File run = createRunFile();
+            try (DataOutputStream out = openRun(run)) {
+                MemoryCursor cursor = new MemoryCursor();
+                while (cursor.next()) {
+                    writeEntry(out, cursor.key, cursor.keyLength, cursor.count);
+                }
+                BinaryIO.writeVarInt(out, 0);
+            } catch (IOException e) {
+                run.delete();
+                throw new UncheckedIOException("Не удалось сбросить агрегаты на диск: " + run, e);
+            }
+            runs.add(run);
+        }
+        releaseMemory();
+        if (runs.size() > MAX_RUNS) {
+            compactRuns();
+        }
+    }
+
+    // Сливает все серии на диске в одну, чтобы при чтении итогов не держать много открытых файлов
+    private void compactRuns() {
+        File run = createRunFile();
+        List<File> merged = new ArrayList<>(runs);
+        try (DataOutputStream out = openRun(run)) {
+            mergeCursors(openCursors(merged, false), (key, length, count) -> {
+                try {
+                    writeEntry(out, key, length, count);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            BinaryIO.writeVarInt(out, 0);
+        } catch (IOException e) {
+            run.delete();
+            throw new UncheckedIOException("Не удалось слить серии агрегатов: " + run, e);
+        } catch (UncheckedIOException e) {
+            run.delete();
+            throw e;
+        }
+        for (File file : merged) {
+            file.delete();
+        }
+        runs.clear();
+        runs.add(run);
+    }
+
+    private File createRunFile() {
+        try {
+            if (!spillDir.isDirectory() && !spillDir.mkdirs()) {
+                throw new IOException("Не удалось создать каталог " + spillDir);
+            }
+            File run = File.createTempFile("aggregate-", ".run", spillDir);
+            run.deleteOnExit();
+            return run;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось создать файл для сброса агрегатов: " + e.getMessage(), e);
+        }
+    }
+
+    private static DataOutputStream openRun(File run) throws IOException {
+        return new DataOutputStream(new BufferedOutputStream(new FileOutputStream(run), IO_BUFFER_SIZE));
+    }
+
+    // Запись серии: [длина ключа + 1][UTF-8][счетчик], в конце 0
+    private static void writeEntry(DataOutputStream out, byte[] key, int length, int count) throws IOException {
+        BinaryIO.writeVarInt(out, length + 1);
+        out.write(key, 0, length);
+        BinaryIO.writeVarInt(out, count);
+    }
+
+    // ========== СЛИЯНИЕ ==========
+
+    // Обходит все ключи (в памяти и на диске), суммируя счетчики одинаковых ключей
+    private void merge(EntryVisitor visitor) {
+        if (runs.isEmpty()) {
+            // Все в памяти: обход таблицы без сортировки
+            byte[] key = new byte[256];
+            for (int slot = 0; table != null && slot < capacity * SLOT_SIZE; slot += SLOT_SIZE) {
+                long ref = table.getLong(slot + 8);
+                if (ref != 0) {
+                    ByteBuffer chunk = chunks.get(chunkIndex(ref));
+                    int offset = chunkOffset(ref);
+                    int length = chunk.getShort(offset) & 0xFFFF;
+                    if (key.length < length) {
+                        key = new byte[length];
+                    }
+                    chunk.get(offset + 2, key, 0, length);
+                    visitor.accept(key, length, table.getInt(slot + 4));
+                }
+            }
+            return;
+        }
+        try {
+            mergeCursors(openCursors(runs, true), visitor);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось прочитать сброшенные агрегаты", e);
+        }
+    }
+
+    private void summarize() {
+        if (summaryValid) {
+            return;
+        }
+        int[] totals = new int[2]; // Количество ключей и максимум
+        merge((key, length, count) -> {
+            totals[0]++;
+            totals[1] = Math.max(totals[1], count);
+        });
+        mergedSize = totals[0];
+        mergedMax = totals[1];
+        summaryValid = true;
+    }
+
+    private List<Cursor> openCursors(List<File> files, boolean withMemory) throws IOException {
+        List<Cursor> cursors = new ArrayList<>();
+        try {
+            for (File file : files) {
+                cursors.add(new RunCursor(file));
+            }
+        } catch (IOException e) {
+            for (Cursor cursor : cursors) {
+                cursor.close();
+            }
+            throw e;
+        }
+        if (withMemory && size > 0) {
+            cursors.add(new MemoryCursor());
+        }
+        return cursors;
+    }
+
+    // k-путевое слияние отсортированных курсоров через очередь с приоритетом
+    private static void mergeCursors(List<Cursor> cursors, EntryVisitor visitor) throws IOException {
+        PriorityQueue<Cursor> queue = new PriorityQueue<>(Math.max(1, cursors.size()), Cursor::compareTo);
+        try {
+            for (Cursor cursor : cursors) {
+                if (cursor.next()) {
+                    queue.add(cursor);
+                }
+            }
+            byte[] current = new byte[256];
+            while (!queue.isEmpty()) {
+                Cursor head = queue.poll();
+                int length = head.keyLength;
+                if (current.length < length) {
+                    current = new byte[length];
+                }
+                System.arraycopy(head.key, 0, current, 0, length);
+                long total = head.count;
+                advance(queue, head);
+                while (!queue.isEmpty() && queue.peek().keyEquals(current, length)) {
+                    Cursor same = queue.poll();
+                    total += same.count;
+                    advance(queue, same);
+                }
+                visitor.accept(current, length, (int) Math.min(total, Integer.MAX_VALUE));
+            }
+        } finally {
+            for (Cursor cursor : cursors) {
+                cursor.close();
+            }
+        }
+    }
+
+    private static void advance(PriorityQueue<Cursor> queue, Cursor cursor) throws IOException {
+        if (cursor.next()) {
+            queue.add(cursor);
+        }
+    }
+
+    // Последовательность ключей по возрастанию (байты UTF-8 без знака)
+    private abstract static class Cursor {
+        byte[] key = new byte[256];
+        int keyLength;
+        int count;
+
+        abstract boolean next() throws IOException;
+
+        void close() throws IOException {
+        }
+
+        int compareTo(Cursor other) {
+            return Arrays.compareUnsigned(key, 0, keyLength, other.key, 0, other.keyLength);
+        }
+
+        boolean keyEquals(byte[] other, int length) {
+            return Arrays.equals(key, 0, keyLength, other, 0, length);
+        }
+
+        void ensureKeyCapacity(int length) {
+            if (key.length < length) {
+                key = new byte[Math.max(length, key.length * 2)];
+            }
+        }
+    }
+
+    // Курсор по серии на диске
+    private static final class RunCursor extends Cursor {
+        private final DataInputStream in;
+
+        RunCursor(File file) throws IOException {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), IO_BUFFER_SIZE));
+        }
+
+        @Override
+        boolean next() throws IOException {
+            int header = BinaryIO.readVarInt(in);
+            if (header == 0) {
+                return false;
+            }
+            keyLength = header - 1;
+            ensureKeyCapacity(keyLength);
+            in.readFully(key, 0, keyLength);
+            count = BinaryIO.readVarInt(in);
+            return true;
+        }
+
+        @Override
+        void close() throws IOException {
+            in.close();
+        }
+    }
+
+    // Курсор по ключам в памяти в отсортированном порядке
+    private final class MemoryCursor extends Cursor {
+        private final int[] slots = sortedSlots();
+        private int position;
+
+        @Override
+        boolean next() {
+            if (position == slots.length) {
+                return false;
+            }
+            int slot = slots[position++];
+            long ref = table.getLong(slot + 8);
+            ByteBuffer chunk = chunks.get(chunkIndex(ref));
+            int offset = chunkOffset(ref);
+            keyLength = chunk.getShort(offset) & 0xFFFF;
+            ensureKeyCapacity(keyLength);
+            chunk.get(offset + 2, key, 0, keyLength);
+            count = table.getInt(slot + 4);
+            return true;
+        }
+    }
+
+    // ========== СОРТИРОВКА ==========
+
+    // Смещения занятых ячеек, упорядоченные по ключам
+    private int[] sortedSlots() {
+        int[] slots = new int[size];
+        int n = 0;
+        for (int slot = 0; slot < capacity * SLOT_SIZE; slot += SLOT_SIZE) {
+            if (table.getLong(slot + 8) != 0) {
+                slots[n++] = slot;
+            }
+        }
+        sortSlots(slots, 0, n);
+        return slots;
+    }
+
+    // Быстрая сортировка с разбиением Хоара, короткие участки - вставками
+    private void sortSlots(int[] slots, int from, int to) {
+        while (to - from > 16) {
+            int pivot = slots[(from + to) >>> 1];
+            int i = from;
+            int j = to - 1;
+            while (i <= j) {
+                while (compareSlots(slots[i], pivot) < 0) i++;
+                while (compareSlots(slots[j], pivot) > 0) j--;
+                if (i <= j) {
+                    int tmp = slots[i];
+                    slots[i++] = slots[j];
+                    slots[j--] = tmp;
+                }
+            }
+            // Рекурсия по меньшей части, чтобы глубина стека оставалась логарифмической
+            if (j - from < to - i) {
+                sortSlots(slots, from, j + 1);
+                from = i;
+            } else {
+                sortSlots(slots, i, to);
+                to = j + 1;
+            }
+        }
+        for (int i = from + 1; i < to; i++) {
+            int value = slots[i];
+            int j = i - 1;
+            while (j >= from && compareSlots(slots[j], value) > 0) {
+                slots[j + 1] = slots[j];
+                j--;
+            }
+            slots[j + 1] = value;
+        }
+    }
+
+    private int compareSlots(int slotA, int slotB) {
+        long refA = table.getLong(slotA + 8);
+        long refB = table.getLong(slotB + 8);
+        ByteBuffer chunkA = chunks.get(chunkIndex(refA));
+        ByteBuffer chunkB = chunks.get(chunkIndex(refB));
+        int offsetA = chunkOffset(refA);
+        int offsetB = chunkOffset(refB);
+        int lengthA = chunkA.getShort(offsetA) & 0xFFFF;
+        int lengthB = chunkB.getShort(offsetB) & 0xFFFF;
+        int common = Math.min(lengthA, lengthB);
+        for (int i = 0; i < common; i++) {
+            int a = chunkA.get(offsetA + 2 + i) & 0xFF;
+            int b = chunkB.get(offsetB + 2 + i) & 0xFF;
+            if (a != b) return a - b;
+        }
+        return lengthA - lengthB;
+    }
+}
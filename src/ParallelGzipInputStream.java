@@ -0,0 +1,473 @@
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayDeque;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Поток распакованных данных файла gzip, в том числе многочленного (склеенные при ротации
+ * архивы). Распаковка идет в отдельных потоках, а читающему потоку передаются заполненные
+ * буферы через кольцо переиспользуемых буферов, так что разбор строк не ждет распаковки.
+ * <p>
+ * Члены gzip независимы, поэтому при нескольких процессорах файл делится на участки:
+ * граница участка - найденный заголовок члена (1f 8b 08 ...) не ближе CHUNK_BYTES от начала
+ * предыдущего участка, и участки распаковываются параллельно. Такой заголовок может случайно
+ * встретиться внутри сжатых данных; тогда предыдущий участок распаковывает член дальше границы
+ * до его настоящего конца, а участок, начатый не на границе члена, отбрасывается, и распаковка
+ * продолжается с настоящего конца. Данные участков выдаются строго по порядку, поэтому результат
+ * всегда совпадает с последовательной распаковкой. При одном процессоре весь файл распаковывается
+ * одним потоком.
+ * <p>
+ * Границы ищутся заранее в отдельном потоке, по одной на каждый запущенный участок: читающий
+ * поток их не ждет, а участок ждет свою границу, только дойдя до члена за CHUNK_BYTES от своего
+ * начала. Поэтому в одночленном файле поиск, читающий остаток файла, идет одновременно
+ * с распаковкой и не задерживает ее, а крупные члены на любом расстоянии друг от друга
+ * все равно распаковываются параллельно.
+ */
+public class ParallelGzipInputStream extends InputStream {
+
+    static final long CHUNK_BYTES = 8L * 1024 * 1024; // Минимальный сжатый размер участка
+    private static final int BLOCK_SIZE = FileContentReader.BUFFER_SIZE; // Размер буфера кольца
+    private static final int BLOCKS_PER_CHUNK = 16; // Буферов в кольце каждого участка
+    private static final int INPUT_SIZE = 64 * 1024; // Буфер чтения сжатых данных
+    private static final int MAX_THREADS = 4;
+
+    // Флаги заголовка gzip (RFC 1952)
+    private static final int FHCRC = 2;
+    private static final int FEXTRA = 4;
+    private static final int FNAME = 8;
+    private static final int FCOMMENT = 16;
+
+    private static final Block END = new Block(0); // Признак конца участка в очереди
+
+    private final File file;
+    private final long length; // Размер сжатого файла
+    private final int parallelism; // Сколько участков распаковывается одновременно
+    private final ExecutorService executor;
+    private final ExecutorService scanExecutor; // Поиск границ участков (null - участок один)
+    private final RandomAccessFile scanner; // Поиск заголовков членов для границ участков
+    private final ArrayDeque<Chunk> chunks = new ArrayDeque<>(); // Запущенные участки по порядку
+    private final ArrayDeque<Block> spare = new ArrayDeque<>(); // Буферы завершенных участков
+    private Future<Long> nextChunkStart = CompletableFuture.completedFuture(0L); // Начало следующего участка
+    private boolean finished; // Распакован последний участок
+    private Chunk current; // Участок, из которого сейчас читаются данные
+    private Block block; // Текущий буфер (null - еще не получен)
+    private int position; // Позиция чтения в текущем буфере
+
+    /**
+     * Открывает файл и запускает распаковку
+     * @param file файл gzip
+     */
+    public ParallelGzipInputStream(File file) throws IOException {
+        this(file, Math.max(1, Math.min(MAX_THREADS, Runtime.getRuntime().availableProcessors() - 1)));
+    }
+
+    /**
+     * @param file файл gzip
+     * @param parallelism сколько участков распаковывать одновременно
+     * @throws IllegalArgumentException если parallelism не положителен
+     */
+    public ParallelGzipInputStream(File file, int parallelism) throws IOException {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("Количество потоков распаковки должно быть положительным: " + parallelism);
+        }
+        this.file = file;
+        this.parallelism = parallelism;
+        this.scanner = new RandomAccessFile(file, "r");
+        this.length = scanner.length();
+        this.executor = Executors.newFixedThreadPool(parallelism, runnable -> {
+            Thread thread = new Thread(runnable, "gzip-inflate");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.scanExecutor = parallelism == 1 ? null : Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "gzip-scan");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // ========== ЧТЕНИЕ ==========
+
+    @Override
+    public int read() throws IOException {
+        if (!ensureData()) {
+            return -1;
+        }
+        return block.data[position++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int count) throws IOException {
+        if (count == 0) {
+            return 0;
+        }
+        if (!ensureData()) {
+            return -1;
+        }
+        int n = Math.min(count, block.length - position);
+        System.arraycopy(block.data, position, bytes, offset, n);
+        position += n;
+        return n;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (current != null) {
+            current.future.cancel(true);
+            current.stop.cancel(true);
+            current = null;
+        }
+        cancelAll();
+        executor.shutdownNow();
+        if (scanExecutor != null) {
+            scanExecutor.shutdownNow();
+        }
+        scanner.close();
+    }
+
+    // Есть ли непрочитанные данные; при необходимости берет следующий буфер
+    private boolean ensureData() throws IOException {
+        while (block == null || position == block.length) {
+            if (!nextBlock()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Возвращает прочитанный буфер в кольцо и берет следующий; false - данные закончились
+    private boolean nextBlock() throws IOException {
+        if (block != null && block != END) {
+            current.free.add(block);
+        }
+        block = null;
+        while (true) {
+            if (current == null) {
+                schedule();
+                current = chunks.pollFirst();
+                if (current == null) {
+                    return false;
+                }
+            }
+            Block next = take(current.full);
+            if (next != END) {
+                block = next;
+                position = 0;
+                return true;
+            }
+            if (current.error != null) {
+                throw current.error;
+            }
+            long end = current.end;
+            current.free.drainTo(spare);
+            current = null;
+            if (end >= length) {
+                cancelAll();
+                finished = true;
+            } else if (!chunks.isEmpty() && valueOf(chunks.peekFirst().start) != end) {
+                // Участок распаковал член дальше ложного заголовка: следующие участки начаты
+                // внутри члена, распаковка продолжается с настоящего конца
+                cancelAll();
+                nextChunkStart = CompletableFuture.completedFuture(end);
+            }
+        }
+    }
+
+    // Запускает распаковку следующих участков, пока их меньше parallelism
+    private void schedule() throws IOException {
+        while (chunks.size() < parallelism && !finished) {
+            Future<Long> start = nextChunkStart;
+            Future<Long> stop = scanExecutor == null ? CompletableFuture.completedFuture(length)
+                    : scanExecutor.submit(() -> findMemberStart(start.get() + CHUNK_BYTES));
+            Chunk chunk = new Chunk(start, stop);
+            chunk.future = executor.submit(chunk);
+            chunks.addLast(chunk);
+            nextChunkStart = stop;
+        }
+    }
+
+    private void cancelAll() {
+        for (Chunk chunk : chunks) {
+            chunk.future.cancel(true);
+            chunk.stop.cancel(true); // Поиск границы больше не нужен
+        }
+        chunks.clear();
+    }
+
+    // Смещение первого похожего на заголовок члена gzip не раньше from
+    // (length - не найден, остаток файла распаковывается одним участком)
+    private long findMemberStart(long from) throws IOException {
+        byte[] bytes = new byte[INPUT_SIZE];
+        long offset = from;
+        while (offset + 10 <= length) {
+            if (Thread.interrupted()) {
+                throw new InterruptedIOException("Поиск границы участка прерван");
+            }
+            scanner.seek(offset);
+            int count = scanner.read(bytes, 0, (int) Math.min(bytes.length, length - offset));
+            if (count < 10) {
+                break;
+            }
+            for (int i = 0; i + 10 <= count; i++) {
+                if (isHeader(bytes, i)) {
+                    return offset + i;
+                }
+            }
+            offset += count - 9; // Заголовок может начинаться в последних байтах прочитанного
+        }
+        return length;
+    }
+
+    // Заголовок gzip: сигнатура, метод deflate, нулевые зарезервированные флаги, допустимые XFL и ОС
+    private static boolean isHeader(byte[] bytes, int i) {
+        int xfl = bytes[i + 8] & 0xFF;
+        int os = bytes[i + 9] & 0xFF;
+        return bytes[i] == 0x1F && bytes[i + 1] == (byte) 0x8B && bytes[i + 2] == 8
+                && (bytes[i + 3] & 0xE0) == 0 && (xfl == 0 || xfl == 2 || xfl == 4) && (os <= 13 || os == 255);
+    }
+
+    // Граница участка, найденная в потоке поиска (ожидает ее, если поиск еще идет)
+    private static long valueOf(Future<Long> boundary) throws IOException {
+        try {
+            return boundary.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Чтение сжатого файла прервано");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+        }
+    }
+
+    private static Block take(BlockingQueue<Block> queue) throws IOException {
+        try {
+            return queue.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Чтение сжатого файла прервано");
+        }
+    }
+
+    // ========== УЧАСТОК ==========
+
+    // Буфер распакованных данных
+    private static final class Block {
+        final byte[] data;
+        int length;
+
+        Block(int size) {
+            data = new byte[size];
+        }
+    }
+
+    // Распаковка членов gzip от start до первого члена, начинающегося не раньше stop
+    private final class Chunk implements Runnable {
+        final Future<Long> start; // Граница предыдущего участка
+        final Future<Long> stop; // Ищется, пока участок распаковывается
+        final BlockingQueue<Block> full = new ArrayBlockingQueue<>(BLOCKS_PER_CHUNK + 1); // Для чтения
+        final BlockingQueue<Block> free = new ArrayBlockingQueue<>(BLOCKS_PER_CHUNK); // Для распаковки
+        volatile long end; // Смещение конца последнего распакованного члена
+        volatile IOException error;
+        Future<?> future;
+
+        Chunk(Future<Long> start, Future<Long> stop) {
+            this.start = start;
+            this.stop = stop;
+            for (int i = 0; i < BLOCKS_PER_CHUNK; i++) {
+                free.add(spare.isEmpty() ? new Block(BLOCK_SIZE) : spare.poll());
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                inflate();
+            } catch (InterruptedException e) {
+                return; // Участок отменен
+            } catch (IOException e) {
+                error = e;
+            } catch (RuntimeException e) {
+                error = new IOException(e);
+            }
+            full.add(END); // Место есть всегда: буферов данных не больше BLOCKS_PER_CHUNK
+        }
+
+        private void inflate() throws IOException, InterruptedException {
+            Inflater inflater = new Inflater(true);
+            CRC32 crc = new CRC32();
+            long start = valueOf(this.start);
+            long stopAt = -1; // Граница запрашивается, только когда может понадобиться
+            try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+                Input input = new Input(in, start);
+                Block out = free.take();
+                out.length = 0;
+                while (true) {
+                    long memberStart = input.position();
+                    if (memberStart >= start + CHUNK_BYTES) {
+                        if (stopAt < 0) {
+                            stopAt = valueOf(stop);
+                        }
+                        if (memberStart >= stopAt) {
+                            break;
+                        }
+                    }
+                    int first = input.peek();
+                    if (first < 0) {
+                        break;
+                    }
+                    if (first == 0 && memberStart > 0) {
+                        input.skipToEnd(); // Нулевое выравнивание после последнего члена
+                        break;
+                    }
+                    readHeader(input);
+                    inflater.reset();
+                    crc.reset();
+                    long size = 0;
+                    while (!inflater.finished()) {
+                        if (inflater.needsInput()) {
+                            if (input.pos == input.limit && !input.fill()) {
+                                throw new EOFException("Сжатый файл " + file.getName() + " обрывается на середине");
+                            }
+                            inflater.setInput(input.buffer, input.pos, input.limit - input.pos);
+                        }
+                        if (out.length == out.data.length) {
+                            full.put(out);
+                            out = free.take();
+                            out.length = 0;
+                        }
+                        int n;
+                        try {
+                            n = inflater.inflate(out.data, out.length, out.data.length - out.length);
+                        } catch (DataFormatException e) {
+                            throw new ZipException("Поврежденные сжатые данные в " + file.getName() + ": " + e.getMessage());
+                        }
+                        input.pos = input.limit - inflater.getRemaining();
+                        crc.update(out.data, out.length, n);
+                        out.length += n;
+                        size += n;
+                        if (n == 0 && inflater.needsDictionary()) {
+                            throw new ZipException("Неподдерживаемые сжатые данные в " + file.getName());
+                        }
+                    }
+                    long expectedCrc = input.readIntLE() & 0xFFFFFFFFL;
+                    long expectedSize = input.readIntLE() & 0xFFFFFFFFL;
+                    if (expectedCrc != crc.getValue() || expectedSize != (size & 0xFFFFFFFFL)) {
+                        throw new ZipException("Контрольная сумма gzip не совпадает в " + file.getName());
+                    }
+                    if (Thread.interrupted()) {
+                        throw new InterruptedException();
+                    }
+                }
+                if (out.length > 0) {
+                    full.put(out);
+                } else {
+                    free.add(out);
+                }
+                end = input.position();
+            } finally {
+                inflater.end();
+            }
+        }
+    }
+
+    // Заголовок члена gzip: проверяется сигнатура и метод, необязательные поля пропускаются
+    private void readHeader(Input input) throws IOException {
+        if (input.read() != 0x1F || input.read() != 0x8B) {
+            throw new ZipException("Файл " + file.getName() + " не является архивом gzip");
+        }
+        if (input.read() != 8) {
+            throw new ZipException("Неподдерживаемый метод сжатия в " + file.getName());
+        }
+        int flags = input.read();
+        input.skip(6); // Время изменения, XFL, ОС
+        if ((flags & FEXTRA) != 0) {
+            input.skip(input.read() | input.read() << 8);
+        }
+        if ((flags & FNAME) != 0) {
+            while (input.read() != 0) ;
+        }
+        if ((flags & FCOMMENT) != 0) {
+            while (input.read() != 0) ;
+        }
+        if ((flags & FHCRC) != 0) {
+            input.skip(2);
+        }
+    }
+
+    // Буферизованное чтение сжатых данных с отслеживанием смещения в файле
+    private final class Input {
+        final RandomAccessFile in;
+        final byte[] buffer = new byte[INPUT_SIZE];
+        int pos;
+        int limit;
+        long bufferStart; // Смещение в файле первого байта буфера
+
+        Input(RandomAccessFile in, long start) throws IOException {
+            this.in = in;
+            in.seek(start);
+            bufferStart = start;
+        }
+
+        long position() {
+            return bufferStart + pos;
+        }
+
+        // Дочитывает файл в буфер, сохраняя непрочитанные байты; false - конец файла
+        boolean fill() throws IOException {
+            System.arraycopy(buffer, pos, buffer, 0, limit - pos);
+            bufferStart += pos;
+            limit -= pos;
+            pos = 0;
+            int n = in.read(buffer, limit, buffer.length - limit);
+            if (n < 0) {
+                return false;
+            }
+            limit += n;
+            return true;
+        }
+
+        int peek() throws IOException {
+            if (pos == limit && !fill()) {
+                return -1;
+            }
+            return buffer[pos] & 0xFF;
+        }
+
+        int read() throws IOException {
+            if (pos == limit && !fill()) {
+                throw new EOFException("Сжатый файл " + file.getName() + " обрывается на середине");
+            }
+            return buffer[pos++] & 0xFF;
+        }
+
+        int readIntLE() throws IOException {
+            return read() | read() << 8 | read() << 16 | read() << 24;
+        }
+
+        void skip(int count) throws IOException {
+            for (int i = 0; i < count; i++) {
+                read();
+            }
+        }
+
+        void skipToEnd() {
+            bufferStart = length;
+            pos = 0;
+            limit = 0;
+        }
+    }
+}
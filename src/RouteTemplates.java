@@ -0,0 +1,373 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Приведение путей запросов к шаблонам маршрутов, чтобы множества страниц не росли
+ * с каждым новым идентификатором: /users/123?x=1 и /users/456 дают один маршрут /users/{id}.
+ * <ul>
+ *   <li>строка запроса отбрасывается или сохраняется в виде имен параметров: имена проходят
+ *       через дерево маршрутов так же, как сегменты пути, а значения всегда заменяются
+ *       заполнителями ({id}, {uuid}, {hex} для идентификаторов, {*} для остальных);</li>
+ *   <li>числовые сегменты заменяются на {id}, UUID - на {uuid}, длинные шестнадцатеричные - на {hex};</li>
+ *   <li>остальные сегменты запоминаются в префиксном дереве маршрутов. Если у узла уже
+ *       MAX_CHILDREN разных сегментов (например, имена пользователей), новые сегменты
+ *       под ним заменяются на {*}; если дерево достигло предела маршрутов, остаток пути
+ *       заменяется на {*}. Поэтому количество шаблонов ограничено при любом логе.</li>
+ * </ul>
+ * Дерево хранится в массивах с хеш-таблицей ребер на открытой адресации, а сегменты ищутся
+ * прямо в исходной последовательности, так что для известных маршрутов память не выделяется.
+ * <p>
+ * Шаблон пути зависит от того, какие сегменты уже встречались, поэтому дерево входит
+ * в сохраняемое состояние статистики: после продолжения с контрольной точки пути приводятся
+ * к тем же шаблонам, что и до остановки. При объединении снимков деревья объединяются,
+ * а если вместе они выходят за пределы, об этом сообщает {@link #mergeState(DataInput)}.
+ */
+public class RouteTemplates {
+
+    public static final int DEFAULT_MAX_ROUTES = 10_000;
+    private static final int MAX_CHILDREN = 64; // Разных обычных сегментов под одним узлом
+    private static final int MIN_HEX_LENGTH = 8; // Более короткие шестнадцатеричные сегменты - обычные слова
+    private static final int INITIAL_CAPACITY = 64;
+    private static final int ROOT = 0;
+    private static final int NONE = -1;
+
+    private static final String ID = "{id}";
+    private static final String UUID = "{uuid}";
+    private static final String HEX = "{hex}";
+    private static final String ANY = "{*}";
+    private static final String QUERY = "?"; // Узел строки запроса под узлом маршрута
+
+    private final boolean keepQuery; // Сохранять строку запроса
+    private final int maxRoutes; // Предел количества узлов дерева
+
+    // Узлы дерева (индекс 0 - корень)
+    private String[] labels; // Сегмент или заполнитель, ведущий в узел
+    private int[] parents; // Родительский узел
+    private int[] hashes; // Хеш пары (родитель, сегмент)
+    private int[] childCounts; // Количество обычных (не заполнителей) сегментов под узлом
+    private int size; // Количество узлов
+    private int[] table; // Хеш-таблица ребер: индекс узла + 1 (0 - свободная ячейка)
+    private int overflows; // Сколько раз остаток пути был заменен из-за предела маршрутов
+
+    private final StringBuilder template = new StringBuilder(); // Переиспользуемый результат
+
+    /**
+     * @param keepQuery сохранять ли строку запроса
+     * @param maxRoutes предел количества маршрутов в дереве
+     * @throws IllegalArgumentException если предел не положителен
+     */
+    public RouteTemplates(boolean keepQuery, int maxRoutes) {
+        if (maxRoutes <= 0) {
+            throw new IllegalArgumentException("Предел количества маршрутов должен быть положительным: " + maxRoutes);
+        }
+        this.keepQuery = keepQuery;
+        this.maxRoutes = maxRoutes;
+        clear();
+    }
+
+    // ========== ПРИВЕДЕНИЕ ПУТИ ==========
+
+    /**
+     * Приводит путь запроса к шаблону маршрута, при необходимости запоминая новые сегменты.
+     * Результат - переиспользуемый объект, который меняется при следующем вызове,
+     * поэтому хранить ссылку на него нельзя.
+     * @param path путь запроса (может быть представлением буфера)
+     * @return шаблон маршрута
+     */
+    public CharSequence normalize(CharSequence path) {
+        template.setLength(0);
+        int length = path.length();
+        int queryStart = indexOf(path, '?', 0, length);
+        int node = ROOT;
+        int pos = 0;
+        while (pos < queryStart) {
+            if (path.charAt(pos) == '/') {
+                template.append('/');
+                pos++;
+                continue;
+            }
+            int end = indexOf(path, '/', pos, queryStart);
+            node = descend(node, path, pos, end);
+            if (node == NONE) {
+                return overflow();
+            }
+            template.append(labels[node]);
+            pos = end;
+        }
+        if (keepQuery && queryStart < length) {
+            appendQuery(path, node, queryStart + 1, length);
+        }
+        return template;
+    }
+
+    // Параметры запроса: имена - узлы дерева под отдельным узлом "?" маршрута (поэтому их
+    // количество ограничено, как и у сегментов), значения всегда заменяются заполнителями
+    private void appendQuery(CharSequence path, int node, int start, int end) {
+        int query = find(node, QUERY, 0, QUERY.length());
+        if (query == NONE) {
+            if (size >= maxRoutes + 1) {
+                overflow();
+                return;
+            }
+            query = add(node, QUERY, 0, QUERY.length(), false);
+        }
+        template.append(QUERY);
+        node = query;
+        int pos = start;
+        while (pos < end) {
+            int next = indexOf(path, '&', pos, end);
+            int equals = indexOf(path, '=', pos, next);
+            node = descend(node, path, pos, equals);
+            if (node == NONE) {
+                overflow();
+                return;
+            }
+            template.append(labels[node]);
+            if (equals < next) {
+                template.append('=');
+                if (equals + 1 < next) {
+                    String placeholder = placeholder(path, equals + 1, next);
+                    template.append(placeholder != null ? placeholder : ANY);
+                }
+            }
+            if (next < end) {
+                template.append('&');
+            }
+            pos = next + 1;
+        }
+    }
+
+    // Дочерний узел для сегмента [start, end): заполнитель для идентификатора, сам сегмент
+    // или {*}, если под узлом уже MAX_CHILDREN сегментов; NONE - достигнут предел маршрутов
+    private int descend(int node, CharSequence seq, int start, int end) {
+        String placeholder = placeholder(seq, start, end);
+        int child = placeholder != null ? find(node, placeholder, 0, placeholder.length())
+                : find(node, seq, start, end);
+        if (child == NONE) {
+            if (placeholder == null && childCounts[node] >= MAX_CHILDREN) {
+                placeholder = ANY;
+                child = find(node, ANY, 0, ANY.length());
+            }
+            if (child == NONE) {
+                if (size >= maxRoutes + 1) {
+                    return NONE;
+                }
+                child = placeholder != null ? add(node, placeholder, 0, placeholder.length(), false)
+                        : add(node, seq, start, end, true);
+            }
+        }
+        return child;
+    }
+
+    // Остаток пути заменяется на {*} из-за предела маршрутов
+    private CharSequence overflow() {
+        template.append(ANY);
+        overflows++;
+        return template;
+    }
+
+    // Заполнитель для сегмента-идентификатора: {id}, {uuid}, {hex} или null
+    private static String placeholder(CharSequence seq, int start, int end) {
+        int length = end - start;
+        if (length == 0) {
+            return null;
+        }
+        boolean digits = true;
+        boolean hex = true;
+        boolean hasDigit = false;
+        for (int i = start; i < end; i++) {
+            char c = seq.charAt(i);
+            boolean digit = c >= '0' && c <= '9';
+            hasDigit |= digit;
+            digits &= digit;
+            hex &= digit || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F');
+        }
+        if (digits) {
+            return ID;
+        }
+        if (length == 36 && isUuid(seq, start)) {
+            return UUID;
+        }
+        return hex && hasDigit && length >= MIN_HEX_LENGTH ? HEX : null;
+    }
+
+    // UUID: 8-4-4-4-12 шестнадцатеричных цифр
+    private static boolean isUuid(CharSequence seq, int start) {
+        for (int i = 0; i < 36; i++) {
+            char c = seq.charAt(start + i);
+            if (i == 8 || i == 13 || i == 18 || i == 23) {
+                if (c != '-') return false;
+            } else if (Character.digit(c, 16) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int indexOf(CharSequence seq, char target, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (seq.charAt(i) == target) return i;
+        }
+        return to;
+    }
+
+    // ========== ДЕРЕВО МАРШРУТОВ ==========
+
+    private static int hash(int parent, CharSequence seq, int start, int end) {
+        int hash = StringCounter.hash(seq, start, end) * 31 + parent;
+        return hash ^ (hash >>> 16);
+    }
+
+    // Дочерний узел с заданным сегментом или NONE
+    private int find(int parent, CharSequence seq, int start, int end) {
+        int hash = hash(parent, seq, start, end);
+        int mask = table.length - 1;
+        int index = hash & mask;
+        while (table[index] != 0) {
+            int node = table[index] - 1;
+            if (hashes[node] == hash && parents[node] == parent
+                    && StringCounter.equals(labels[node], seq, start, end)) {
+                return node;
+            }
+            index = (index + 1) & mask;
+        }
+        return NONE;
+    }
+
+    private int add(int parent, CharSequence seq, int start, int end, boolean literal) {
+        if (size == labels.length) {
+            int capacity = labels.length * 2;
+            labels = Arrays.copyOf(labels, capacity);
+            parents = Arrays.copyOf(parents, capacity);
+            hashes = Arrays.copyOf(hashes, capacity);
+            childCounts = Arrays.copyOf(childCounts, capacity);
+        }
+        int node = size++;
+        labels[node] = seq.subSequence(start, end).toString();
+        parents[node] = parent;
+        hashes[node] = hash(parent, seq, start, end);
+        if (literal) {
+            childCounts[parent]++;
+        }
+        if (size * 2 > table.length) {
+            rehash(table.length * 2);
+        } else {
+            insert(node);
+        }
+        return node;
+    }
+
+    private void insert(int node) {
+        int mask = table.length - 1;
+        int index = hashes[node] & mask;
+        while (table[index] != 0) {
+            index = (index + 1) & mask;
+        }
+        table[index] = node + 1;
+    }
+
+    private void rehash(int newSize) {
+        table = new int[newSize];
+        for (int node = 1; node < size; node++) {
+            insert(node);
+        }
+    }
+
+    // ========== СОХРАНЕНИЕ И ВОССТАНОВЛЕНИЕ СОСТОЯНИЯ ==========
+
+    /**
+     * Записывает дерево маршрутов: узлы в порядке создания (родитель всегда раньше потомка)
+     * @param out поток для записи
+     */
+    public void writeState(DataOutput out) throws IOException {
+        BinaryIO.writeVarInt(out, size - 1);
+        for (int node = 1; node < size; node++) {
+            BinaryIO.writeVarInt(out, parents[node]);
+            BinaryIO.writeString(out, labels[node]);
+        }
+        BinaryIO.writeVarInt(out, overflows);
+    }
+
+    /**
+     * Добавляет к дереву маршруты, прочитанные из потока. В пустое дерево с теми же пределами
+     * маршруты восстанавливаются точно; узлы, не помещающиеся в пределы, пропускаются.
+     * @param in поток, записанный методом writeState
+     * @return false, если часть узлов не поместилась - тогда одни и те же пути в объединяемых
+     *         данных могли быть приведены к разным шаблонам
+     */
+    public boolean mergeState(DataInput in) throws IOException {
+        int count = BinaryIO.readVarInt(in);
+        int[] nodes = new int[count + 1]; // Номер прочитанного узла -> узел этого дерева
+        nodes[ROOT] = ROOT;
+        boolean complete = true;
+        for (int i = 1; i <= count; i++) {
+            int parent = BinaryIO.readVarInt(in);
+            String label = BinaryIO.readString(in);
+            if (parent < 0 || parent >= i) {
+                throw new IOException("Поврежденное дерево маршрутов: узел " + i + ", родитель " + parent);
+            }
+            parent = nodes[parent];
+            int node = parent == NONE ? NONE : find(parent, label, 0, label.length());
+            if (parent != NONE && node == NONE) {
+                boolean literal = !isPlaceholder(label);
+                if (size < maxRoutes + 1 && !(literal && childCounts[parent] >= MAX_CHILDREN)) {
+                    node = add(parent, label, 0, label.length(), literal);
+                }
+            }
+            if (node == NONE) {
+                complete = false;
+            }
+            nodes[i] = node;
+        }
+        overflows += BinaryIO.readVarInt(in);
+        return complete;
+    }
+
+    /**
+     * Пропускает дерево маршрутов в потоке (если шаблоны маршрутов сейчас не используются)
+     * @param in поток, записанный методом writeState
+     */
+    public static void skipState(DataInput in) throws IOException {
+        int count = BinaryIO.readVarInt(in);
+        for (int i = 0; i < count; i++) {
+            BinaryIO.readVarInt(in);
+            BinaryIO.readString(in);
+        }
+        BinaryIO.readVarInt(in);
+    }
+
+    private static boolean isPlaceholder(String label) {
+        return label.equals(ID) || label.equals(UUID) || label.equals(HEX) || label.equals(ANY) || label.equals(QUERY);
+    }
+
+    /**
+     * Забывает все маршруты
+     */
+    public void clear() {
+        labels = new String[INITIAL_CAPACITY];
+        parents = new int[INITIAL_CAPACITY];
+        hashes = new int[INITIAL_CAPACITY];
+        childCounts = new int[INITIAL_CAPACITY];
+        table = new int[INITIAL_CAPACITY * 2];
+        labels[ROOT] = "";
+        parents[ROOT] = NONE;
+        size = 1;
+        overflows = 0;
+    }
+
+    // ========== ГЕТТЕРЫ ==========
+
+    /**
+     * @return количество узлов дерева маршрутов (без корня)
+     */
+    public int getRouteCount() { return size - 1; }
+
+    public int getMaxRoutes() { return maxRoutes; }
+
+    /**
+     * @return сколько путей были обрезаны до {*} из-за предела маршрутов
+     */
+    public int getOverflowCount() { return overflows; }
+}
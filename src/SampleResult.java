@@ -0,0 +1,87 @@
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Результаты выборочного анализа: оценки итогов и долей по всему файлу
+ * с 95% доверительными интервалами
+ */
+public class SampleResult {
+
+    // Названия показателей кластерной выборки
+    static final String ERRORS = "errors";
+    static final String BOTS = "bots";
+    static final String TRAFFIC = "traffic";
+    static final String CRAWLER = "crawler:";
+    static final String BROWSER = "browser:";
+
+    private static final int MIN_RELIABLE_BLOCKS = 30; // Меньше блоков - интервалы ненадежны
+
+    private final String fileName; // Имя анализируемого файла
+    private final ClusterSample sample; // Выборка блоков
+    private final long seed; // Начальное значение генератора (для повторения запуска)
+    private final long elapsedMillis; // Время анализа
+
+    public SampleResult(String fileName, ClusterSample sample, long seed, long elapsedMillis) {
+        this.fileName = fileName;
+        this.sample = sample;
+        this.seed = seed;
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    /**
+     * Выводит оценки в консоль
+     */
+    public void printResults() {
+        System.out.printf("%n📊 Выборочная оценка для файла '%s' (блоков: %d из %d, %.2f%% файла, "
+                        + "строк в выборке: %d, seed %d, %.1f с):%n", fileName, sample.getSampledBlocks(),
+                sample.getPopulationBlocks(), 100.0 * sample.getSampledBlocks() / sample.getPopulationBlocks(),
+                sample.getSampledLines(), seed, elapsedMillis / 1000.0);
+        System.out.printf("1. Общее количество строк: ≈ %.0f ± %s%n",
+                sample.estimateTotalLines(), formatCount(sample.totalLinesHalfWidth()));
+        System.out.printf("2. Общий объем трафика: ≈ %s ± %s%n",
+                FileAnalysisResult.formatBytes(sample.estimateTotal(TRAFFIC)),
+                Double.isNaN(sample.totalHalfWidth(TRAFFIC)) ? "н/д"
+                        : FileAnalysisResult.formatBytes(sample.totalHalfWidth(TRAFFIC)));
+        System.out.println("3. Доля ошибочных запросов: " + formatShare(ERRORS));
+        System.out.println("4. Доля запросов ботов: " + formatShare(BOTS));
+
+        System.out.println("5. Доли краулеров:");
+        printShares(CRAWLER, "   Нет запросов от известных краулеров");
+        System.out.println("6. Доли браузеров:");
+        printShares(BROWSER, "   Нет данных о браузерах");
+
+        if (sample.getSampledBlocks() < MIN_RELIABLE_BLOCKS) {
+            System.out.printf("⚠️  В выборке меньше %d блоков - доверительные интервалы приблизительны%n",
+                    MIN_RELIABLE_BLOCKS);
+        }
+        System.out.println("   (± - 95% доверительный интервал; запуск повторяется с тем же --sample-seed)");
+    }
+
+    // Доли всех показателей с заданным префиксом по убыванию
+    private void printShares(String prefix, String emptyMessage) {
+        Map<String, Double> shares = new TreeMap<>();
+        for (String name : sample.getNames()) {
+            if (name.startsWith(prefix)) {
+                shares.put(name, sample.ratio(name));
+            }
+        }
+        if (shares.isEmpty()) {
+            System.out.println(emptyMessage);
+            return;
+        }
+        shares.entrySet().stream()
+                .sorted(Map.Entry.<String, Double>comparingByValue().reversed())
+                .forEach(e -> System.out.printf("   - %s: %s%n",
+                        e.getKey().substring(prefix.length()), formatShare(e.getKey())));
+    }
+
+    private String formatShare(String name) {
+        double halfWidth = sample.ratioHalfWidth(name);
+        return String.format("%.2f%% ± %s", sample.ratio(name) * 100,
+                Double.isNaN(halfWidth) ? "н/д" : String.format("%.2f%%", halfWidth * 100));
+    }
+
+    private static String formatCount(double value) {
+        return Double.isNaN(value) ? "н/д" : String.format("%.0f", value);
+    }
+}
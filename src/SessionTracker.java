@@ -0,0 +1,375 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Потоковое разбиение посещений на сессии. Клиент - пара IP и User-Agent; сессия клиента
+ * закрывается, если он не делал запросов дольше тайм-аута неактивности.
+ * Открытые сессии хранятся в хеш-таблице на открытой адресации и одновременно в двусвязном
+ * списке по времени последней активности: в голове списка - самая давно неактивная сессия,
+ * поэтому истекшие сессии снимаются с головы за O(1) каждая. Закрытые сессии сразу
+ * попадают в гистограммы длительности и глубины, так что память ограничена числом
+ * одновременно активных клиентов, а не всех клиентов за период.
+ */
+public class SessionTracker {
+
+    public static final long DEFAULT_TIMEOUT_SECONDS = 30 * 60;
+    private static final int INITIAL_CAPACITY = 64;
+    private static final int NONE = -1;
+
+    private final long timeoutSeconds; // Тайм-аут неактивности
+
+    // Открытые сессии: пул записей с индексами вместо ссылок
+    private int[] table; // Индекс записи + 1 (0 - свободная ячейка)
+    private String[] ips; // IP-адрес клиента
+    private String[] agents; // Строка User-Agent клиента
+    private int[] hashes; // Хеш пары IP и User-Agent
+    private long[] firstSeconds; // Время первого запроса сессии
+    private long[] lastSeconds; // Время последнего запроса сессии
+    private int[] depths; // Количество запросов в сессии
+    private int[] previous; // Соседи в списке по времени активности
+    private int[] next;
+    private int head = NONE; // Самая давно активная сессия
+    private int tail = NONE; // Самая недавно активная сессия
+    private int freeList = NONE; // Освободившиеся записи (связаны через next)
+    private int used; // Записей пула, выданных хотя бы раз
+    private int openCount; // Количество открытых сессий
+    private long latestSecond = Long.MIN_VALUE; // Самое позднее время запроса
+
+    // Закрытые сессии
+    private final Log2Histogram durations = new Log2Histogram(); // Длительность в секундах
+    private final Log2Histogram depthHistogram = new Log2Histogram(); // Количество запросов
+
+    /**
+     * @param timeoutSeconds тайм-аут неактивности в секундах
+     * @throws IllegalArgumentException если тайм-аут не положителен
+     */
+    public SessionTracker(long timeoutSeconds) {
+        if (timeoutSeconds <= 0) {
+            throw new IllegalArgumentException("Тайм-аут сессии должен быть положительным: " + timeoutSeconds);
+        }
+        this.timeoutSeconds = timeoutSeconds;
+        clear();
+    }
+
+    // ========== УЧЕТ ЗАПРОСОВ ==========
+
+    /**
+     * Учитывает запрос клиента: продлевает его открытую сессию или начинает новую.
+     * Перед этим закрывает сессии, неактивные дольше тайм-аута к моменту запроса.
+     * @param ip IP-адрес (может быть представлением буфера - строка создается только для новой сессии)
+     * @param agent строка User-Agent
+     * @param epochSecond время запроса
+     */
+    public void observe(CharSequence ip, String agent, long epochSecond) {
+        if (epochSecond > latestSecond) {
+            latestSecond = epochSecond;
+            expireIdle(latestSecond);
+        }
+
+        int hash = hash(ip, agent);
+        int mask = table.length - 1;
+        int index = hash & mask;
+        while (table[index] != 0) {
+            int entry = table[index] - 1;
+            if (hashes[entry] == hash && agents[entry].equals(agent)
+                    && StringCounter.equals(ips[entry], ip, 0, ip.length())) {
+                if (epochSecond - lastSeconds[entry] > timeoutSeconds) {
+                    // Запрос пришел не по порядку после долгого перерыва - это новая сессия
+                    close(entry);
+                    break;
+                }
+                depths[entry]++;
+                lastSeconds[entry] = Math.max(lastSeconds[entry], epochSecond);
+                firstSeconds[entry] = Math.min(firstSeconds[entry], epochSecond);
+                unlink(entry);
+                linkSorted(entry);
+                return;
+            }
+            index = (index + 1) & mask;
+        }
+        linkSorted(open(ip.toString(), agent, hash, epochSecond, epochSecond, 1));
+    }
+
+    // Закрывает сессии, последний запрос которых был раньше now - timeout
+    private void expireIdle(long now) {
+        while (head != NONE && now - lastSeconds[head] > timeoutSeconds) {
+            close(head);
+        }
+    }
+
+    // Создает сессию; в список по времени активности ее ставит вызывающий
+    private int open(String ip, String agent, int hash, long first, long last, int depth) {
+        int entry = allocate();
+        ips[entry] = ip;
+        agents[entry] = agent;
+        hashes[entry] = hash;
+        firstSeconds[entry] = first;
+        lastSeconds[entry] = last;
+        depths[entry] = depth;
+        insert(entry);
+        openCount++;
+        return entry;
+    }
+
+    private void close(int entry) {
+        durations.add(lastSeconds[entry] - firstSeconds[entry]);
+        depthHistogram.add(depths[entry]);
+        remove(entry);
+        unlink(entry);
+        ips[entry] = null;
+        agents[entry] = null;
+        next[entry] = freeList;
+        freeList = entry;
+        openCount--;
+    }
+
+    // ========== ХЕШ-ТАБЛИЦА ==========
+
+    private static int hash(CharSequence ip, String agent) {
+        int hash = StringCounter.hash(ip, 0, ip.length()) * 31 + agent.hashCode();
+        return hash ^ (hash >>> 16);
+    }
+
+    private void insert(int entry) {
+        if ((openCount + 1) * 2 > table.length) {
+            rehash(table.length * 2);
+        }
+        int mask = table.length - 1;
+        int index = hashes[entry] & mask;
+        while (table[index] != 0) {
+            index = (index + 1) & mask;
+        }
+        table[index] = entry + 1;
+    }
+
+    // Удаление со сдвигом следующих ячеек назад, чтобы не оставлять "надгробий"
+    private void remove(int entry) {
+        int mask = table.length - 1;
+        int hole = hashes[entry] & mask;
+        while (table[hole] != entry + 1) {
+            hole = (hole + 1) & mask;
+        }
+        int index = (hole + 1) & mask;
+        while (table[index] != 0) {
+            int home = hashes[table[index] - 1] & mask;
+            // Запись можно перенести в дыру, если дыра лежит между ее исходной ячейкой и текущей
+            if (((index - home) & mask) >= ((index - hole) & mask)) {
+                table[hole] = table[index];
+                hole = index;
+            }
+            index = (index + 1) & mask;
+        }
+        table[hole] = 0;
+    }
+
+    private void rehash(int newSize) {
+        table = new int[newSize];
+        int mask = newSize - 1;
+        for (int entry = head; entry != NONE; entry = next[entry]) {
+            int index = hashes[entry] & mask;
+            while (table[index] != 0) {
+                index = (index + 1) & mask;
+            }
+            table[index] = entry + 1;
+        }
+    }
+
+    // ========== ПУЛ ЗАПИСЕЙ И СПИСОК АКТИВНОСТИ ==========
+
+    private int allocate() {
+        if (freeList != NONE) {
+            int entry = freeList;
+            freeList = next[entry];
+            return entry;
+        }
+        if (used == ips.length) {
+            int capacity = ips.length * 2;
+            ips = Arrays.copyOf(ips, capacity);
+            agents = Arrays.copyOf(agents, capacity);
+            hashes = Arrays.copyOf(hashes, capacity);
+            firstSeconds = Arrays.copyOf(firstSeconds, capacity);
+            lastSeconds = Arrays.copyOf(lastSeconds, capacity);
+            depths = Arrays.copyOf(depths, capacity);
+            previous = Arrays.copyOf(previous, capacity);
+            next = Arrays.copyOf(next, capacity);
+        }
+        return used++;
+    }
+
+    private void linkTail(int entry) {
+        previous[entry] = tail;
+        next[entry] = NONE;
+        if (tail != NONE) {
+            next[tail] = entry;
+        } else {
+            head = entry;
+        }
+        tail = entry;
+    }
+
+    private void unlink(int entry) {
+        if (previous[entry] != NONE) {
+            next[previous[entry]] = next[entry];
+        } else {
+            head = next[entry];
+        }
+        if (next[entry] != NONE) {
+            previous[next[entry]] = previous[entry];
+        } else {
+            tail = previous[entry];
+        }
+    }
+
+    // Ставит сессию в список по возрастанию времени последнего запроса. Обычно это хвост;
+    // запрос, пришедший не по порядку, проходит назад от хвоста до своего места
+    private void linkSorted(int entry) {
+        int after = tail;
+        while (after != NONE && lastSeconds[after] > lastSeconds[entry]) {
+            after = previous[after];
+        }
+        if (after == tail) {
+            linkTail(entry);
+            return;
+        }
+        int before = after != NONE ? next[after] : head;
+        previous[entry] = after;
+        next[entry] = before;
+        previous[before] = entry;
+        if (after != NONE) {
+            next[after] = entry;
+        } else {
+            head = entry;
+        }
+    }
+
+    // Перестраивает список по времени последнего запроса после слияния состояний
+    private void sortList() {
+        Integer[] entries = new Integer[openCount];
+        int n = 0;
+        for (int entry = head; entry != NONE; entry = next[entry]) {
+            entries[n++] = entry;
+        }
+        Arrays.sort(entries, (a, b) -> Long.compare(lastSeconds[a], lastSeconds[b]));
+        head = NONE;
+        tail = NONE;
+        for (int entry : entries) {
+            linkTail(entry);
+        }
+    }
+
+    public void clear() {
+        table = new int[INITIAL_CAPACITY * 2];
+        ips = new String[INITIAL_CAPACITY];
+        agents = new String[INITIAL_CAPACITY];
+        hashes = new int[INITIAL_CAPACITY];
+        firstSeconds = new long[INITIAL_CAPACITY];
+        lastSeconds = new long[INITIAL_CAPACITY];
+        depths = new int[INITIAL_CAPACITY];
+        previous = new int[INITIAL_CAPACITY];
+        next = new int[INITIAL_CAPACITY];
+        head = NONE;
+        tail = NONE;
+        freeList = NONE;
+        used = 0;
+        openCount = 0;
+        latestSecond = Long.MIN_VALUE;
+        durations.clear();
+        depthHistogram.clear();
+    }
+
+    // ========== ИТОГИ ==========
+
+    // Итоги учитывают и еще открытые сессии (как если бы они закончились сейчас), не закрывая их
+
+    /**
+     * @return гистограмма длительности сессий в секундах
+     */
+    public Log2Histogram getDurations() {
+        Log2Histogram result = new Log2Histogram();
+        result.addAll(durations);
+        for (int entry = head; entry != NONE; entry = next[entry]) {
+            result.add(lastSeconds[entry] - firstSeconds[entry]);
+        }
+        return result;
+    }
+
+    /**
+     * @return гистограмма глубины сессий (количества запросов)
+     */
+    public Log2Histogram getDepths() {
+        Log2Histogram result = new Log2Histogram();
+        result.addAll(depthHistogram);
+        for (int entry = head; entry != NONE; entry = next[entry]) {
+            result.add(depths[entry]);
+        }
+        return result;
+    }
+
+    /**
+     * @return общее количество сессий
+     */
+    public long getSessionCount() { return depthHistogram.getTotalCount() + openCount; }
+
+    // ========== СОХРАНЕНИЕ И ВОССТАНОВЛЕНИЕ СОСТОЯНИЯ ==========
+
+    /**
+     * Записывает гистограммы закрытых сессий и открытые сессии (в порядке активности),
+     * чтобы анализ, продолженный с контрольной точки, мог их продлить
+     * @param out поток для записи
+     */
+    public void writeState(DataOutput out) throws IOException {
+        durations.writeState(out);
+        depthHistogram.writeState(out);
+        BinaryIO.writeVarInt(out, openCount);
+        for (int entry = head; entry != NONE; entry = next[entry]) {
+            BinaryIO.writeString(out, ips[entry]);
+            BinaryIO.writeString(out, agents[entry]);
+            out.writeLong(firstSeconds[entry]);
+            BinaryIO.writeVarLong(out, lastSeconds[entry] - firstSeconds[entry]);
+            BinaryIO.writeVarInt(out, depths[entry]);
+        }
+    }
+
+    /**
+     * Добавляет состояние, записанное writeState. Открытые сессии одного и того же клиента
+     * объединяются; сессии, истекшие к самому позднему известному времени, закрываются.
+     * @param in поток для чтения
+     */
+    public void mergeState(DataInput in) throws IOException {
+        durations.mergeState(in);
+        depthHistogram.mergeState(in);
+        int count = BinaryIO.readVarInt(in);
+        for (int i = 0; i < count; i++) {
+            String ip = BinaryIO.readString(in);
+            String agent = BinaryIO.readString(in);
+            long first = in.readLong();
+            long last = first + BinaryIO.readVarLong(in);
+            int depth = BinaryIO.readVarInt(in);
+            mergeOpen(ip, agent, first, last, depth);
+        }
+        sortList();
+        if (latestSecond != Long.MIN_VALUE) {
+            expireIdle(latestSecond);
+        }
+    }
+
+    private void mergeOpen(String ip, String agent, long first, long last, int depth) {
+        latestSecond = Math.max(latestSecond, last);
+        int hash = hash(ip, agent);
+        int mask = table.length - 1;
+        int index = hash & mask;
+        while (table[index] != 0) {
+            int entry = table[index] - 1;
+            if (hashes[entry] == hash && agents[entry].equals(agent) && ips[entry].equals(ip)) {
+                firstSeconds[entry] = Math.min(firstSeconds[entry], first);
+                lastSeconds[entry] = Math.max(lastSeconds[entry], last);
+                depths[entry] += depth;
+                return;
+            }
+            index = (index + 1) & mask;
+        }
+        linkTail(open(ip, agent, hash, first, last, depth)); // Порядок восстановит sortList
+    }
+}
@@ -1,6 +1,10 @@
-import java.net.URI;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.time.LocalDateTime;
-import java.time.temporal.ChronoUnit;
+import java.time.ZoneOffset;
 import java.util.*;
 
 // Класс, отвечающий за накопление и расчет статистических данных
@@ -10,29 +14,68 @@ public class Statistics {
 
     // Основная статистика
     private long totalTraffic; // Общий объем трафика в байтах
-    private LocalDateTime minTime; // Самое раннее время запроса
-    private LocalDateTime maxTime; // Самое позднее время запроса
+    private long minSecond; // Самое раннее время запроса (секунды от эпохи, Long.MAX_VALUE - нет данных)
+    private long maxSecond; // Самое позднее время запроса (секунды от эпохи)
     private int totalEntries; // Общее количество обработанных запросов
 
-    // Статистика ботов
-    private int googlebotCount; // Количество запросов от Googlebot
-    private int yandexbotCount; // Количество запросов от YandexBot
+    // Статистика ботов (ключи - названия краулеров из сигнатур)
+    private StringCounter crawlerCounts; // Количество запросов с User-Agent краулера
+    private StringCounter crawlerVerified; // Из них пришедшие из официальных диапазонов краулера
+    private StringCounter crawlerSpoofed; // Из них пришедшие не из официальных диапазонов
 
     // Статистика страниц
-    private Set<String> existingPages; // Множество существующих страниц (код 200)
-    private Set<String> notFoundPages; // Множество несуществующих страниц (код 404)
+    private KeyCounter existingPages; // Множество существующих страниц (код 200)
+    private KeyCounter notFoundPages; // Множество несуществующих страниц (код 404)
 
     // Статистика пользовательских агентов
-    private Map<String, Integer> osCounts; // Количество операционных систем
-    private Map<String, Integer> browserCounts; // Количество браузеров
+    private StringCounter osCounts; // Количество операционных систем
+    private StringCounter browserCounts; // Количество браузеров
 
     // Дополнительная статистика
     private int humanVisits; // Количество посещений реальными пользователями (не ботами)
     private int errorRequests; // Количество ошибочных запросов (4xx и 5xx)
-    private Set<String> uniqueHumanIPs; // Уникальные IP-адреса реальных пользователей
-    private Map<Long, Integer> visitsPerSecond; // Количество посещений в каждую секунду
-    private Set<String> refererDomains; // Домены рефереров
-    private Map<String, Integer> visitsPerUser; // Количество посещений на пользователя
+    private LongIntCounter visitsPerSecond; // Количество посещений в каждую секунду
+    private StringCounter refererDomains; // Домены рефереров
+    private KeyCounter visitsPerUser; // Посещения на пользователя (ключи - уникальные IP реальных пользователей)
+    private SessionTracker sessions; // Сессии реальных пользователей (IP + User-Agent)
+    private long sessionTimeoutSeconds = SessionTracker.DEFAULT_TIMEOUT_SECONDS; // Тайм-аут неактивности сессии
+
+    // Статистика полей расширенных форматов лога (есть не во всех форматах)
+    private int requestTimeCount; // Количество запросов с указанным временем обработки
+    private long requestTimeTotalMicros; // Суммарное время обработки запросов в микросекундах
+    private long requestTimeMaxMicros; // Максимальное время обработки запроса в микросекундах
+    private int upstreamTimeCount; // Количество запросов с указанным временем ответа upstream
+    private long upstreamTimeTotalMicros; // Суммарное время ответа upstream в микросекундах
+    private StringCounter hostCounts; // Количество запросов по виртуальным хостам
+
+    // Счетчики текущего прохода по файлу
+    private int processedLines; // Успешно разобранные строки
+    private int errorLines; // Строки с ошибками разбора
+    private int filteredLines; // Строки, отброшенные фильтром
+    private long totalLines; // Все прочитанные строки (для периодических проверок)
+
+    private AnalysisMetrics metrics; // Инструментация горячего пути (null - отключена)
+    private StatisticsServer server; // Публикация снимков по HTTP (null - не публикуются)
+    private AnomalyDetector anomalies; // Поиск аномалий по бакетам времени (null - отключен)
+    private int logOffsetSeconds; // Смещение часового пояса последней записи (для часов детектора аномалий)
+    private LogFilter filter; // Фильтр записей (null - учитываются все записи)
+    private RouteTemplates routes; // Приведение путей к шаблонам маршрутов (null - пути учитываются как есть)
+    private LogFormat logFormat = LogFormat.COMBINED; // Формат строк лога
+
+    // Хранение агрегатов высокой кардинальности вне кучи (null - обычные счетчики в куче)
+    private MemoryBudget offHeapBudget;
+    private File spillDir; // Каталог для сброса агрегатов на диск
+
+    // Переиспользуемые объекты потокового разбора без выделения памяти на строку
+    private final MutableLogEntry flyweight = new MutableLogEntry();
+    private UserAgentCache userAgents = new UserAgentCache();
+    private BotRanges botRanges; // Диапазоны адресов краулеров для проверки (null - без проверки)
+
+    // Как часто (в строках) проверять, не пора ли сохранить контрольную точку
+    private static final int CHECKPOINT_CHECK_LINES = 4096;
+
+    // Версия двоичного формата состояния (writeState/readState)
+    static final int STATE_VERSION = 6;
 
     // ========== КОНСТРУКТОР ==========
 
@@ -46,34 +89,272 @@ public class Statistics {
     // ========== ОСНОВНЫЕ МЕТОДЫ АНАЛИЗА ==========
 
     /**
-     * Анализирует файл логов и обрабатывает каждую строку
-     * @param fileName имя файла для анализа
-     * @param lines список строк лога
+     * Анализирует файл логов потоково, не загружая его в память целиком.
+     * Строки разбираются прямо в буфере чтения в переиспользуемую запись MutableLogEntry.
+     * Если задана контрольная точка, анализ продолжается с сохраненного места,
+     * а состояние периодически сохраняется на диск.
+     * @param file файл логов
+     * @param reader объект для чтения файла
+     * @param checkpoint контрольная точка или null, если она не используется
      * @return результат анализа файла
      */
-    public FileAnalysisResult analyzeFile(String fileName, List<String> lines) {
+    public FileAnalysisResult analyzeFile(File file, FileContentReader reader,
+                                          AnalysisCheckpoint checkpoint) throws IOException {
         System.out.println("🔍 Анализируем файл...");
 
-        int processedLines = 0;
-        int errorLines = 0;
+        processedLines = 0;
+        errorLines = 0;
+        filteredLines = 0;
+        totalLines = 0;
 
-        for (String line : lines) {
+        long startOffset = checkpoint != null ? checkpoint.restore(file, this) : 0;
+        if (metrics != null) {
+            metrics.start(FileContentReader.estimateSize(file), startOffset);
+        }
+        // С контрольной точкой незавершенная последняя строка не учитывается: если ее допишут,
+        // продолжение начнется с ее начала, а не с середины
+        boolean completeLinesOnly = checkpoint != null && !FileContentReader.isCompressed(file);
+        long endOffset;
+        try {
+            endOffset = reader.readRawLines(file, startOffset, (buffer, start, end, nextOffset) -> {
+                boolean parsed = processLine(buffer, start, end);
+                if (metrics != null) {
+                    metrics.recordLine(parsed, nextOffset);
+                }
+                if (totalLines % CHECKPOINT_CHECK_LINES == 0) {
+                    saveAndPublishIfDue(file, checkpoint, nextOffset);
+                }
+            }, !completeLinesOnly);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            if (metrics != null) {
+                metrics.finish();
+            }
+        }
+        finishAnomalies();
+        if (checkpoint != null) {
+            checkpoint.save(file, this, endOffset);
+            if (completeLinesOnly && file.length() > endOffset) {
+                System.out.println("⚠️  Последняя строка файла не завершена и будет учтена при продолжении анализа");
+            }
+        }
+        if (server != null) {
+            server.publish(file.getName(), this);
+        }
+
+        printLineCounts();
+        if (metrics != null) {
+            metrics.printSummary();
+        }
+        return new FileAnalysisResult(file.getName(), this);
+    }
+
+    /**
+     * Отслеживает дописывание файла логов и учитывает новые строки по мере их появления
+     * (режим демона). Снимки статистики публикуются на HTTP-сервер, если он подключен,
+     * а контрольная точка сохраняется в том числе во время простоя.
+     * Работает, пока поток не будет прерван.
+     * @param file файл логов
+     * @param reader объект для чтения файла
+     * @param checkpoint контрольная точка или null, если она не используется
+     * @param pollMillis интервал проверки появления новых строк
+     */
+    public void followFile(File file, FileContentReader reader, AnalysisCheckpoint checkpoint,
+                           long pollMillis) throws IOException, InterruptedException {
+        System.out.println("👀 Отслеживаем дописывание файла (Ctrl+C для остановки)...");
+
+        processedLines = 0;
+        errorLines = 0;
+        filteredLines = 0;
+        totalLines = 0;
+
+        long startOffset = checkpoint != null ? checkpoint.restore(file, this) : 0;
+        long[] position = {startOffset}; // Смещение за последней учтенной строкой
+        if (metrics != null) {
+            metrics.start(FileContentReader.estimateSize(file), startOffset);
+        }
+        try {
+            reader.followRawLines(file, startOffset, (buffer, start, end, nextOffset) -> {
+                boolean parsed = processLine(buffer, start, end);
+                if (metrics != null) {
+                    metrics.recordLine(parsed, nextOffset);
+                }
+                position[0] = nextOffset;
+                if (totalLines % CHECKPOINT_CHECK_LINES == 0) {
+                    saveAndPublishIfDue(file, checkpoint, nextOffset);
+                }
+            }, () -> {
+                // Во время простоя бакеты аномалий закрываются по часам, иначе сбой без записей
+                // в логе не был бы замечен
+                if (anomalies != null) {
+                    anomalies.advanceClock(System.currentTimeMillis() / 1000 + logOffsetSeconds);
+                }
+                if (metrics != null) {
+                    metrics.updateTotalBytes(position[0]); // Файл дочитан - прогресс 100%, пока его не допишут
+                }
+                saveAndPublishIfDue(file, checkpoint, position[0]);
+            }, pollMillis);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            if (metrics != null) {
+                metrics.finish();
+            }
+        }
+    }
+
+    // Периодическое сохранение контрольной точки и публикация снимка на HTTP-сервер
+    private void saveAndPublishIfDue(File file, AnalysisCheckpoint checkpoint, long offset) {
+        long start = metrics != null ? System.nanoTime() : 0;
+        if (checkpoint != null) {
             try {
-                LogEntry entry = new LogEntry(line);
-                addEntry(entry);
-                processedLines++;
-
-            } catch (IllegalArgumentException e) {
-                System.out.println("⚠️  Неверный формат строки: " + e.getMessage());
-                errorLines++;
-            } catch (Exception e) {
-                System.out.println("⚠️  Ошибка обработки строки: " + e.getMessage());
-                errorLines++;
+                checkpoint.saveIfDue(file, this, offset);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
             }
         }
+        if (server != null) {
+            server.publishIfDue(file.getName(), this);
+        }
+        if (metrics != null) {
+            metrics.recordCheckpoint(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Анализирует логи нескольких серверов как один поток, упорядоченный по времени,
+     * чтобы посекундные показатели (пиковая посещаемость, сессии) считались по всему кластеру.
+     * Контрольные точки в этом режиме не используются.
+     * @param merger слияние файлов логов
+     * @param name название результата (например, список файлов)
+     * @return результат анализа
+     */
+    public FileAnalysisResult analyzeMerged(LogMerger merger, String name) throws IOException {
+        System.out.println("🔍 Анализируем логи, объединенные по времени...");
 
-        System.out.printf("✓ Обработано строк: %d, ошибок: %d%n", processedLines, errorLines);
-        return new FileAnalysisResult(fileName, this);
+        processedLines = 0;
+        errorLines = 0;
+        filteredLines = 0;
+        totalLines = 0;
+
+        if (metrics != null) {
+            metrics.start(merger.getTotalBytes(), 0);
+        }
+        try {
+            merger.merge((buffer, start, end, bytesRead) -> {
+                boolean parsed = processLine(buffer, start, end);
+                if (metrics != null) {
+                    metrics.recordLine(parsed, bytesRead);
+                }
+                if (server != null && totalLines % CHECKPOINT_CHECK_LINES == 0) {
+                    long publishStart = metrics != null ? System.nanoTime() : 0;
+                    server.publishIfDue(name, this);
+                    if (metrics != null) {
+                        metrics.recordCheckpoint(System.nanoTime() - publishStart);
+                    }
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            if (metrics != null) {
+                metrics.finish();
+            }
+        }
+
+        finishAnomalies();
+        if (server != null) {
+            server.publish(name, this);
+        }
+
+        printLineCounts();
+        if (merger.getOutOfOrderLines() > 0) {
+            System.out.printf("⚠️  Строк не по порядку времени (опоздали больше окна переупорядочивания): %d%n",
+                    merger.getOutOfOrderLines());
+        }
+        if (metrics != null) {
+            metrics.printSummary();
+        }
+        return new FileAnalysisResult(name, this);
+    }
+
+    /**
+     * Разбирает строку лога прямо в буфере чтения и добавляет ее в статистику.
+     * В установившемся режиме не выделяет памяти: поля читаются через MutableLogEntry,
+     * классификация User-Agent берется из кэша, а строки создаются только для новых ключей.
+     * @param buffer буфер чтения
+     * @param start начало строки
+     * @param end конец строки (не включительно)
+     * @return true, если строка успешно обработана
+     */
+    public boolean processLine(byte[] buffer, int start, int end) {
+        totalLines++;
+        // Время этапов замеряется только на выборочных строках, но тем же кодом,
+        // что и для остальных, чтобы JIT-компиляция не искажала оценку. Отброшенные
+        // и ошибочные строки учитываются в замере этапами, которые они успели пройти
+        boolean timed = metrics != null && metrics.shouldTimeNextLine();
+        long startNanos = timed ? System.nanoTime() : 0;
+        try {
+            if (!logFormat.parse(buffer, start, end, flyweight, filter)) {
+                filteredLines++;
+                if (timed) {
+                    metrics.recordStages(System.nanoTime() - startNanos, 0, 0);
+                }
+                return true;
+            }
+            long parsed = timed ? System.nanoTime() : 0;
+            UserAgent agent = userAgents.get(asKey(flyweight.getUserAgent()));
+            if (filter != null && !filter.acceptsAgent(agent)) {
+                filteredLines++;
+                if (timed) {
+                    metrics.recordStages(parsed - startNanos, System.nanoTime() - parsed, 0);
+                }
+                return true;
+            }
+            long classified = timed ? System.nanoTime() : 0;
+            addEntry(flyweight, agent);
+            if (timed) {
+                metrics.recordStages(parsed - startNanos, classified - parsed, System.nanoTime() - classified);
+            }
+            processedLines++;
+            return true;
+
+        } catch (UncheckedIOException e) {
+            throw e; // Ошибка сброса агрегатов на диск - не ошибка строки, анализ прерывается
+        } catch (IllegalArgumentException e) {
+            System.out.println("⚠️  Неверный формат строки: " + e.getMessage());
+            errorLines++;
+        } catch (Exception e) {
+            System.out.println("⚠️  Ошибка обработки строки: " + e.getMessage());
+            errorLines++;
+        }
+        if (timed) {
+            metrics.recordStages(System.nanoTime() - startNanos, 0, 0); // Ошибочная строка - время разбора
+        }
+        return false;
+    }
+
+    // Завершение инцидентов, открытых к концу анализа
+    private void finishAnomalies() {
+        if (anomalies != null) {
+            anomalies.finish();
+        }
+    }
+
+    // Вывод итоговых счетчиков строк
+    private void printLineCounts() {
+        if (filter != null) {
+            System.out.printf("✓ Обработано строк: %d, ошибок: %d, отброшено фильтром: %d%n",
+                    processedLines, errorLines, filteredLines);
+        } else {
+            System.out.printf("✓ Обработано строк: %d, ошибок: %d%n", processedLines, errorLines);
+        }
+        if (offHeapBudget != null) {
+            System.out.printf("💾 Агрегаты вне кучи: пик %.1f МБ из %.1f МБ, серий на диске: %d%n",
+                    offHeapBudget.getPeakBytes() / (1024.0 * 1024), offHeapBudget.getLimitBytes() / (1024.0 * 1024),
+                    getSpilledRunCount());
+        }
     }
 
     /**
@@ -88,140 +369,367 @@ public class Statistics {
             return;
         }
 
+        addEntry(entry.getIpAddr(), entry.getTime().toEpochSecond(ZoneOffset.UTC), entry.getPath(),
+                entry.getResponseCode(), dataSize, entry.getReferer(), userAgents.get(entry.getUserAgentString()));
+        analyzeTimings(entry.getRequestTimeMicros(), entry.getUpstreamTimeMicros());
+        analyzeHost(entry.getHost());
+    }
+
+    /**
+     * Добавляет в статистику переиспользуемую запись лога, не сохраняя ссылок на нее
+     * @param entry разобранная запись MutableLogEntry
+     */
+    public void addEntry(MutableLogEntry entry) {
+        addEntry(entry, userAgents.get(asKey(entry.getUserAgent())));
+    }
+
+    private void addEntry(MutableLogEntry entry, UserAgent agent) {
+        logOffsetSeconds = entry.getOffsetSeconds();
+        ByteCharSequence referer = entry.getReferer();
+        addEntry(asKey(entry.getIpAddr()), entry.getEpochSecond(), asKey(entry.getPath()),
+                entry.getResponseCode(), entry.getResponseSize(), referer != null ? asKey(referer) : null, agent);
+        analyzeTimings(entry.getRequestTimeMicros(), entry.getUpstreamTimeMicros());
+        ByteCharSequence host = entry.getHost();
+        analyzeHost(host != null ? asKey(host) : null);
+    }
+
+    // Общая агрегация для обоих видов записей
+    private void addEntry(CharSequence ip, long epochSecond, CharSequence path, int responseCode,
+                          long dataSize, CharSequence referer, UserAgent agent) {
         // Обновление счетчиков
         totalEntries++;
         totalTraffic += dataSize;
 
         // Обновление временного диапазона
-        updateTimeRange(entry.getTime());
+        updateTimeRange(epochSecond);
 
         // Анализ User-Agent
-        analyzeUserAgent(entry);
+        analyzeUserAgent(ip, agent);
 
         // Анализ страниц
-        analyzePages(entry);
+        analyzePages(path, responseCode);
 
         // Анализ ошибок
-        analyzeErrors(entry);
+        analyzeErrors(responseCode);
 
         // Анализ пользователей
-        analyzeUsers(entry);
+        analyzeUsers(ip, epochSecond, agent);
 
         // Анализ рефереров
-        analyzeReferers(entry);
+        analyzeReferers(referer);
+
+        // Поиск аномалий по бакетам времени
+        if (anomalies != null) {
+            anomalies.observe(epochSecond, responseCode, dataSize, agent.isBot());
+        }
+    }
+
+    // Представление буфера подходит как ключ счетчика только для ASCII, иначе нужна настоящая строка
+    private static CharSequence asKey(ByteCharSequence value) {
+        return value.isAscii() ? value : value.toString();
     }
 
     // ========== ВСПОМОГАТЕЛЬНЫЕ МЕТОДЫ ДЛЯ АНАЛИЗА ==========
 
     /**
      * Обновляет временной диапазон статистики
-     * @param entryTime время текущей записи
+     * @param epochSecond время текущей записи в секундах от эпохи
      */
-    private void updateTimeRange(LocalDateTime entryTime) {
-        if (minTime == null) {
-            minTime = entryTime;
-            maxTime = entryTime;
-        } else {
-            if (entryTime.isBefore(minTime)) {
-                minTime = entryTime;
-            }
-            if (entryTime.isAfter(maxTime)) {
-                maxTime = entryTime;
-            }
+    private void updateTimeRange(long epochSecond) {
+        if (epochSecond < minSecond) {
+            minSecond = epochSecond;
+        }
+        if (epochSecond > maxSecond) {
+            maxSecond = epochSecond;
         }
     }
 
     /**
      * Анализирует User-Agent запроса
-     * @param entry запись лога для анализа
+     * @param ip IP-адрес клиента (для проверки краулеров по диапазонам)
+     * @param agent классифицированный User-Agent
      */
-    private void analyzeUserAgent(LogEntry entry) {
-        // Проверяем, является ли запрос от бота
-        boolean isBot = entry.getAgent().isBot();
-        String userAgent = entry.getAgent().toString().toLowerCase();
-
-        // Подсчет ботов
-        if (userAgent.contains("googlebot")) {
-            googlebotCount++;
-        } else if (userAgent.contains("yandexbot")) {
-            yandexbotCount++;
+    private void analyzeUserAgent(CharSequence ip, UserAgent agent) {
+        // Подсчет краулеров: все найденные сигнатуры, с проверкой адреса по диапазонам
+        long crawlers = agent.getCrawlers();
+        if (crawlers != 0) {
+            analyzeCrawlers(ip, crawlers, agent.getSignatures());
         }
 
         // Статистика ОС
-        String osType = entry.getAgent().getOsType();
-        osCounts.put(osType, osCounts.getOrDefault(osType, 0) + 1);
+        osCounts.add(agent.getOsType(), 1);
 
         // Статистика браузеров
-        String browserType = entry.getAgent().getBrowserType();
-        browserCounts.put(browserType, browserCounts.getOrDefault(browserType, 0) + 1);
+        browserCounts.add(agent.getBrowserType(), 1);
+    }
+
+    private void analyzeCrawlers(CharSequence ip, long crawlers, BotSignatures signatures) {
+        long checked = 0;
+        long verified = 0;
+        if (botRanges != null && (botRanges.getCoveredMask() & crawlers) != 0) {
+            long address = CidrRange.parseIpv4(ip);
+            if (address >= 0) { // Адреса IPv6 не проверяются
+                checked = botRanges.getCoveredMask() & crawlers;
+                verified = botRanges.lookup((int) address) & checked;
+            }
+        }
+        for (long rest = crawlers; rest != 0; rest &= rest - 1) {
+            long bit = Long.lowestOneBit(rest);
+            String name = signatures.getName(Long.numberOfTrailingZeros(bit));
+            crawlerCounts.add(name, 1);
+            if ((checked & bit) != 0) {
+                ((verified & bit) != 0 ? crawlerVerified : crawlerSpoofed).add(name, 1);
+            }
+        }
     }
 
     /**
      * Анализирует страницы и коды ответов
-     * @param entry запись лога для анализа
+     * @param path путь запроса
+     * @param responseCode код ответа
      */
-    private void analyzePages(LogEntry entry) {
+    private void analyzePages(CharSequence path, int responseCode) {
+        // Страницы учитываются по шаблону маршрута, если приведение включено
+        if (routes != null && (responseCode == 200 || responseCode == 404)) {
+            path = routes.normalize(path);
+        }
+
         // Добавляем существующую страницу (код ответа 200)
-        if (entry.getResponseCode() == 200) {
-            existingPages.add(entry.getPath());
+        if (responseCode == 200) {
+            existingPages.add(path, 1);
         }
 
         // Добавляем несуществующую страницу (код ответа 404)
-        if (entry.getResponseCode() == 404) {
-            notFoundPages.add(entry.getPath());
+        if (responseCode == 404) {
+            notFoundPages.add(path, 1);
         }
     }
 
     /**
      * Анализирует ошибочные запросы
-     * @param entry запись лога для анализа
+     * @param responseCode код ответа
      */
-    private void analyzeErrors(LogEntry entry) {
+    private void analyzeErrors(int responseCode) {
         // Подсчет ошибочных запросов (4xx и 5xx)
-        if (entry.getResponseCode() >= 400 && entry.getResponseCode() < 600) {
+        if (responseCode >= 400 && responseCode < 600) {
             errorRequests++;
         }
     }
 
     /**
      * Анализирует пользовательские посещения
-     * @param entry запись лога для анализа
+     * @param ip IP-адрес клиента
+     * @param epochSecond время запроса в секундах от эпохи
+     * @param agent классифицированный User-Agent
      */
-    private void analyzeUsers(LogEntry entry) {
-        boolean isBot = entry.getAgent().isBot();
-
+    private void analyzeUsers(CharSequence ip, long epochSecond, UserAgent agent) {
         // Подсчет посещений реальными пользователями и уникальных IP
-        if (!isBot) {
+        if (!agent.isBot()) {
             humanVisits++;
-            uniqueHumanIPs.add(entry.getIpAddr());
 
             // Пиковая посещаемость в секунду
-            long secondTimestamp = entry.getTime().toEpochSecond(java.time.ZoneOffset.UTC);
-            visitsPerSecond.put(secondTimestamp, visitsPerSecond.getOrDefault(secondTimestamp, 0) + 1);
+            visitsPerSecond.add(epochSecond, 1);
 
             // Статистика по пользователям
-            String ip = entry.getIpAddr();
-            visitsPerUser.put(ip, visitsPerUser.getOrDefault(ip, 0) + 1);
+            visitsPerUser.add(ip, 1);
+
+            // Сессии: клиент определяется парой IP и User-Agent
+            sessions.observe(ip, agent.toString(), epochSecond);
         }
     }
 
     /**
      * Анализирует рефереры
-     * @param entry запись лога для анализа
+     * @param referer URL источника запроса или null
      */
-    private void analyzeReferers(LogEntry entry) {
-        // Сбор доменов рефереров
-        if (entry.getReferer() != null && !entry.getReferer().isEmpty() && !"-".equals(entry.getReferer())) {
-            try {
-                URI uri = new URI(entry.getReferer());
-                String domain = uri.getHost();
-                if (domain != null && !domain.isEmpty()) {
-                    refererDomains.add(domain);
+    private void analyzeReferers(CharSequence referer) {
+        // Сбор доменов рефереров: хост берется из части URL между "://" и путем
+        if (referer == null || referer.length() == 0) {
+            return;
+        }
+        int schemeEnd = indexOf(referer, "://", 0);
+        if (schemeEnd <= 0) {
+            return;
+        }
+        int hostStart = schemeEnd + 3;
+        int authorityEnd = hostStart;
+        while (authorityEnd < referer.length() && "/?#".indexOf(referer.charAt(authorityEnd)) < 0) {
+            authorityEnd++;
+        }
+        // Отбрасываем данные пользователя (user@host) и порт
+        for (int i = authorityEnd - 1; i >= hostStart; i--) {
+            if (referer.charAt(i) == '@') {
+                hostStart = i + 1;
+                break;
+            }
+        }
+        int hostEnd = authorityEnd;
+        if (hostStart < hostEnd && referer.charAt(hostStart) == '[') {
+            int bracket = indexOf(referer, "]", hostStart);
+            hostEnd = bracket >= 0 && bracket < authorityEnd ? bracket + 1 : authorityEnd;
+        } else {
+            for (int i = hostStart; i < authorityEnd; i++) {
+                if (referer.charAt(i) == ':') {
+                    hostEnd = i;
+                    break;
                 }
-            } catch (Exception e) {
-                System.out.println("⚠️  Неверный формат referer: " + entry.getReferer());
             }
         }
+        if (hostEnd > hostStart) {
+            refererDomains.add(referer, hostStart, hostEnd, 1);
+        }
+    }
+
+    /**
+     * Анализирует время обработки запроса и время ответа upstream
+     * @param requestMicros время обработки в микросекундах или -1, если не указано
+     * @param upstreamMicros время ответа upstream в микросекундах или -1, если не указано
+     */
+    private void analyzeTimings(long requestMicros, long upstreamMicros) {
+        if (requestMicros >= 0) {
+            requestTimeCount++;
+            requestTimeTotalMicros += requestMicros;
+            requestTimeMaxMicros = Math.max(requestTimeMaxMicros, requestMicros);
+        }
+        if (upstreamMicros >= 0) {
+            upstreamTimeCount++;
+            upstreamTimeTotalMicros += upstreamMicros;
+        }
+    }
+
+    /**
+     * Анализирует виртуальные хосты
+     * @param host хост запроса или null
+     */
+    private void analyzeHost(CharSequence host) {
+        if (host != null) {
+            hostCounts.add(host, 1);
+        }
+    }
+
+    private static int indexOf(CharSequence value, String target, int from) {
+        outer:
+        for (int i = from; i <= value.length() - target.length(); i++) {
+            for (int j = 0; j < target.length(); j++) {
+                if (value.charAt(i + j) != target.charAt(j)) continue outer;
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Подключает инструментацию горячего пути
+     * @param metrics объект метрик или null для отключения
+     */
+    public void setMetrics(AnalysisMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Подключает HTTP-сервер, которому во время анализа периодически публикуются снимки
+     * @param server сервер статистики или null для отключения
+     */
+    public void setServer(StatisticsServer server) {
+        this.server = server;
+    }
+
+    /**
+     * Подключает потоковый поиск аномалий: показатели каждого бакета времени сравниваются
+     * с базовой линией, а инциденты передаются слушателю детектора
+     * @param anomalies детектор аномалий или null для отключения
+     */
+    public void setAnomalyDetector(AnomalyDetector anomalies) {
+        this.anomalies = anomalies;
+    }
+
+    /**
+     * Задает фильтр: в статистику попадут только записи, удовлетворяющие его условиям
+     * @param filter скомпилированный фильтр или null для учета всех записей
+     */
+    public void setFilter(LogFilter filter) {
+        this.filter = filter;
+    }
+
+    /**
+     * Включает учет страниц по шаблонам маршрутов (/users/{id}) вместо исходных путей.
+     * Накопленная статистика при этом сбрасывается, поэтому метод вызывается до анализа.
+     * @param routes шаблоны маршрутов или null для учета исходных путей
+     */
+    public void setRouteTemplates(RouteTemplates routes) {
+        this.routes = routes;
+        reset();
+    }
+
+    /**
+     * Переносит посещения по IP и множества страниц из кучи в память вне кучи с заданным бюджетом.
+     * При исчерпании бюджета они сбрасываются на диск и сливаются обратно при расчете итогов.
+     * Накопленная статистика при этом сбрасывается, поэтому метод вызывается до анализа.
+     * @param budget бюджет памяти вне кучи
+     * @param spillDir каталог для сброса на диск
+     */
+    public void useOffHeapAggregates(MemoryBudget budget, File spillDir) {
+        this.offHeapBudget = budget;
+        this.spillDir = spillDir;
+        reset();
+    }
+
+    // Счетчик для агрегатов высокой кардинальности; предыдущий счетчик освобождает память и файлы
+    private KeyCounter newKeyCounter(KeyCounter previous) {
+        if (previous != null) {
+            previous.clear();
+        }
+        return offHeapBudget != null ? new OffHeapStringCounter(offHeapBudget, spillDir) : new StringCounter();
+    }
+
+    /**
+     * @return сброшены ли агрегаты на диск (тогда их итоги считаются слиянием серий с диска)
+     */
+    public boolean hasSpilledAggregates() { return getSpilledRunCount() > 0; }
+
+    // Количество серий агрегатов, сброшенных на диск
+    private int getSpilledRunCount() {
+        int runs = 0;
+        for (KeyCounter counter : new KeyCounter[]{existingPages, notFoundPages, visitsPerUser}) {
+            if (counter instanceof OffHeapStringCounter) {
+                runs += ((OffHeapStringCounter) counter).getRunCount();
+            }
+        }
+        return runs;
+    }
+
+    /**
+     * Задает тайм-аут неактивности, после которого сессия пользователя считается законченной.
+     * Накопленные сессии при этом сбрасываются, поэтому метод вызывается до анализа.
+     * @param timeoutSeconds тайм-аут в секундах
+     */
+    public void setSessionTimeout(long timeoutSeconds) {
+        this.sessions = new SessionTracker(timeoutSeconds);
+        this.sessionTimeoutSeconds = timeoutSeconds;
+    }
+
+    /**
+     * Задает сигнатуры ботов, по которым классифицируются User-Agent
+     * @param signatures скомпилированные сигнатуры
+     */
+    public void setBotSignatures(BotSignatures signatures) {
+        this.userAgents = new UserAgentCache(signatures);
+    }
+
+    /**
+     * Включает проверку краулеров по официальным диапазонам адресов
+     * @param botRanges диапазоны краулеров или null для отключения проверки
+     */
+    public void setBotRanges(BotRanges botRanges) {
+        this.botRanges = botRanges;
+    }
+
+    /**
+     * Задает формат строк лога (по умолчанию - combined)
+     * @param logFormat скомпилированный формат
+     */
+    public void setLogFormat(LogFormat logFormat) {
+        this.logFormat = logFormat;
     }
 
     // ========== МЕТОДЫ РАСЧЕТА СТАТИСТИКИ ==========
@@ -231,14 +739,11 @@ public class Statistics {
      * @return средняя скорость трафика
      */
     public double getTrafficRate() {
-        if (minTime == null || maxTime == null || totalEntries == 0) {
+        if (totalEntries == 0) {
             return 0.0;
         }
 
-        LocalDateTime startTime = minTime.isBefore(maxTime) ? minTime : maxTime;
-        LocalDateTime endTime = minTime.isBefore(maxTime) ? maxTime : minTime;
-
-        long hoursBetween = ChronoUnit.HOURS.between(startTime, endTime);
+        long hoursBetween = getTimeRangeInHours();
         return hoursBetween <= 0 ? totalTraffic : (double) totalTraffic / hoursBetween;
     }
 
@@ -247,14 +752,11 @@ public class Statistics {
      * @return среднее количество посещений в час
      */
     public double getAverageVisitsPerHour() {
-        if (minTime == null || maxTime == null || humanVisits == 0) {
+        if (humanVisits == 0) {
             return 0.0;
         }
 
-        LocalDateTime startTime = minTime.isBefore(maxTime) ? minTime : maxTime;
-        LocalDateTime endTime = minTime.isBefore(maxTime) ? maxTime : minTime;
-
-        long hoursBetween = ChronoUnit.HOURS.between(startTime, endTime);
+        long hoursBetween = getTimeRangeInHours();
         return hoursBetween <= 0 ? humanVisits : (double) humanVisits / hoursBetween;
     }
 
@@ -263,14 +765,11 @@ public class Statistics {
      * @return среднее количество ошибок в час
      */
     public double getAverageErrorRequestsPerHour() {
-        if (minTime == null || maxTime == null || errorRequests == 0) {
+        if (errorRequests == 0) {
             return 0.0;
         }
 
-        LocalDateTime startTime = minTime.isBefore(maxTime) ? minTime : maxTime;
-        LocalDateTime endTime = minTime.isBefore(maxTime) ? maxTime : minTime;
-
-        long hoursBetween = ChronoUnit.HOURS.between(startTime, endTime);
+        long hoursBetween = getTimeRangeInHours();
         return hoursBetween <= 0 ? errorRequests : (double) errorRequests / hoursBetween;
     }
 
@@ -279,8 +778,8 @@ public class Statistics {
      * @return среднее количество посещений на пользователя
      */
     public double getAverageVisitsPerUser() {
-        return (humanVisits == 0 || uniqueHumanIPs.isEmpty()) ?
-                0.0 : (double) humanVisits / uniqueHumanIPs.size();
+        return (humanVisits == 0 || visitsPerUser.isEmpty()) ?
+                0.0 : (double) humanVisits / visitsPerUser.size();
     }
 
     /**
@@ -288,10 +787,7 @@ public class Statistics {
      * @return максимальное количество посещений в секунду
      */
     private int calculatePeakVisitsPerSecond() {
-        if (visitsPerSecond.isEmpty()) {
-            return 0;
-        }
-        return Collections.max(visitsPerSecond.values());
+        return visitsPerSecond.max();
     }
 
     /**
@@ -299,10 +795,7 @@ public class Statistics {
      * @return максимальное количество посещений одним пользователем
      */
     private int calculateMaxVisitsPerUser() {
-        if (visitsPerUser.isEmpty()) {
-            return 0;
-        }
-        return Collections.max(visitsPerUser.values());
+        return visitsPerUser.max();
     }
 
     /**
@@ -310,14 +803,7 @@ public class Statistics {
      * @return карта с долями операционных систем (0-1)
      */
     public Map<String, Double> getOsStatistics() {
-        Map<String, Double> osStatistics = new HashMap<>();
-        if (totalEntries == 0) return osStatistics;
-
-        for (Map.Entry<String, Integer> entry : osCounts.entrySet()) {
-            double percentage = (double) entry.getValue() / totalEntries;
-            osStatistics.put(entry.getKey(), percentage);
-        }
-        return osStatistics;
+        return toShares(osCounts);
     }
 
     /**
@@ -325,14 +811,161 @@ public class Statistics {
      * @return карта с долями браузеров (0-1)
      */
     public Map<String, Double> getBrowserStatistics() {
-        Map<String, Double> browserStatistics = new HashMap<>();
-        if (totalEntries == 0) return browserStatistics;
+        return toShares(browserCounts);
+    }
+
+    // Доли значений счетчика от общего количества запросов
+    private Map<String, Double> toShares(StringCounter counts) {
+        Map<String, Double> shares = new HashMap<>();
+        if (totalEntries == 0) return shares;
+
+        counts.forEach((key, count) -> shares.put(key, (double) count / totalEntries));
+        return shares;
+    }
+
+    // ========== СОХРАНЕНИЕ И ВОССТАНОВЛЕНИЕ СОСТОЯНИЯ ==========
+
+    /**
+     * Записывает полное состояние статистики в компактном двоичном виде
+     * @param out поток для записи
+     */
+    public void writeState(DataOutput out) throws IOException {
+        BinaryIO.writeVarInt(out, STATE_VERSION);
+        BinaryIO.writeVarInt(out, totalEntries);
+        BinaryIO.writeVarLong(out, totalTraffic);
+        out.writeBoolean(totalEntries > 0);
+        if (totalEntries > 0) {
+            out.writeLong(minSecond);
+            out.writeLong(maxSecond);
+        }
+        BinaryIO.writeVarInt(out, humanVisits);
+        BinaryIO.writeVarInt(out, errorRequests);
+
+        writeCounter(out, existingPages);
+        writeCounter(out, notFoundPages);
+        writeCounter(out, refererDomains);
+        writeCounter(out, osCounts);
+        writeCounter(out, browserCounts);
+        writeCounter(out, visitsPerUser);
+        writeCounter(out, hostCounts);
+        writeCounter(out, crawlerCounts);
+        writeCounter(out, crawlerVerified);
+        writeCounter(out, crawlerSpoofed);
+
+        BinaryIO.writeVarInt(out, requestTimeCount);
+        BinaryIO.writeVarLong(out, requestTimeTotalMicros);
+        BinaryIO.writeVarLong(out, requestTimeMaxMicros);
+        BinaryIO.writeVarInt(out, upstreamTimeCount);
+        BinaryIO.writeVarLong(out, upstreamTimeTotalMicros);
+
+        sessions.writeState(out);
+
+        // Секунды пишем по возрастанию разностями, чтобы числа были короткими
+        long[] seconds = visitsPerSecond.sortedKeys();
+        BinaryIO.writeVarInt(out, seconds.length);
+        long previous = seconds.length > 0 ? seconds[0] : 0;
+        if (seconds.length > 0) {
+            out.writeLong(previous);
+        }
+        for (long second : seconds) {
+            BinaryIO.writeVarLong(out, second - previous);
+            BinaryIO.writeVarInt(out, visitsPerSecond.get(second));
+            previous = second;
+        }
+
+        // Дерево маршрутов: от него зависит, к какому шаблону приводится следующий путь
+        out.writeBoolean(routes != null);
+        if (routes != null) {
+            routes.writeState(out);
+        }
+    }
+
+    /**
+     * Заменяет текущее состояние статистики прочитанным из потока
+     * @param in поток, записанный методом writeState
+     */
+    public void readState(DataInput in) throws IOException {
+        reset();
+        mergeState(in);
+    }
+
+    /**
+     * Добавляет к текущей статистике состояние, прочитанное из потока.
+     * Данные сливаются сразу в поля объекта без промежуточной копии Statistics,
+     * поэтому так можно быстро объединять большое количество снимков.
+     * @param in поток, записанный методом writeState
+     */
+    public void mergeState(DataInput in) throws IOException {
+        int version = BinaryIO.readVarInt(in);
+        if (version != STATE_VERSION) {
+            throw new IOException("Неподдерживаемая версия состояния статистики: " + version);
+        }
+        totalEntries += BinaryIO.readVarInt(in);
+        totalTraffic += BinaryIO.readVarLong(in);
+        if (in.readBoolean()) {
+            updateTimeRange(in.readLong());
+            updateTimeRange(in.readLong());
+        }
+        humanVisits += BinaryIO.readVarInt(in);
+        errorRequests += BinaryIO.readVarInt(in);
+
+        readCounter(in, existingPages);
+        readCounter(in, notFoundPages);
+        readCounter(in, refererDomains);
+        readCounter(in, osCounts);
+        readCounter(in, browserCounts);
+        readCounter(in, visitsPerUser);
+        readCounter(in, hostCounts);
+        readCounter(in, crawlerCounts);
+        readCounter(in, crawlerVerified);
+        readCounter(in, crawlerSpoofed);
+
+        requestTimeCount += BinaryIO.readVarInt(in);
+        requestTimeTotalMicros += BinaryIO.readVarLong(in);
+        requestTimeMaxMicros = Math.max(requestTimeMaxMicros, BinaryIO.readVarLong(in));
+        upstreamTimeCount += BinaryIO.readVarInt(in);
+        upstreamTimeTotalMicros += BinaryIO.readVarLong(in);
+
+        sessions.mergeState(in);
+
+        int secondsCount = BinaryIO.readVarInt(in);
+        long second = secondsCount > 0 ? in.readLong() : 0;
+        for (int i = 0; i < secondsCount; i++) {
+            second += BinaryIO.readVarLong(in);
+            visitsPerSecond.add(second, BinaryIO.readVarInt(in));
+        }
 
-        for (Map.Entry<String, Integer> entry : browserCounts.entrySet()) {
-            double percentage = (double) entry.getValue() / totalEntries;
-            browserStatistics.put(entry.getKey(), percentage);
+        if (in.readBoolean()) {
+            if (routes == null) {
+                RouteTemplates.skipState(in);
+            } else if (!routes.mergeState(in)) {
+                System.out.println("⚠️  Маршруты объединяемых данных не помещаются в пределы шаблонов: "
+                        + "одни и те же пути могут быть учтены под разными шаблонами");
+            }
+        }
+    }
+
+    private static void writeCounter(DataOutput out, KeyCounter counter) throws IOException {
+        BinaryIO.writeVarInt(out, counter.size());
+        try {
+            counter.forEach((key, count) -> {
+                try {
+                    BinaryIO.writeString(out, key);
+                    BinaryIO.writeVarInt(out, count);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static void readCounter(DataInput in, KeyCounter counter) throws IOException {
+        int size = BinaryIO.readVarInt(in);
+        for (int i = 0; i < size; i++) {
+            counter.add(BinaryIO.readString(in), BinaryIO.readVarInt(in));
         }
-        return browserStatistics;
     }
 
     // ========== МЕТОД СБРОСА ==========
@@ -343,20 +976,33 @@ public class Statistics {
     public void reset() {
         totalTraffic = 0;
         totalEntries = 0;
-        googlebotCount = 0;
-        yandexbotCount = 0;
-        minTime = null;
-        maxTime = null;
-        existingPages = new HashSet<>();
-        osCounts = new HashMap<>();
-        notFoundPages = new HashSet<>();
-        browserCounts = new HashMap<>();
+        crawlerCounts = new StringCounter();
+        crawlerVerified = new StringCounter();
+        crawlerSpoofed = new StringCounter();
+        minSecond = Long.MAX_VALUE;
+        maxSecond = Long.MIN_VALUE;
+        existingPages = newKeyCounter(existingPages);
+        osCounts = new StringCounter();
+        notFoundPages = newKeyCounter(notFoundPages);
+        browserCounts = new StringCounter();
         humanVisits = 0;
         errorRequests = 0;
-        uniqueHumanIPs = new HashSet<>();
-        visitsPerSecond = new HashMap<>();
-        refererDomains = new HashSet<>();
-        visitsPerUser = new HashMap<>();
+        visitsPerSecond = new LongIntCounter();
+        refererDomains = new StringCounter();
+        visitsPerUser = newKeyCounter(visitsPerUser);
+        sessions = new SessionTracker(sessionTimeoutSeconds);
+        requestTimeCount = 0;
+        requestTimeTotalMicros = 0;
+        requestTimeMaxMicros = 0;
+        upstreamTimeCount = 0;
+        upstreamTimeTotalMicros = 0;
+        hostCounts = new StringCounter();
+        if (anomalies != null) {
+            anomalies.reset();
+        }
+        if (routes != null) {
+            routes.clear();
+        }
     }
 
     // ========== ГЕТТЕРЫ ==========
@@ -374,46 +1020,50 @@ public class Statistics {
     /**
      * @return самое раннее время запроса
      */
-    public LocalDateTime getMinTime() { return minTime; }
+    public LocalDateTime getMinTime() {
+        return minSecond == Long.MAX_VALUE ? null : LocalDateTime.ofEpochSecond(minSecond, 0, ZoneOffset.UTC);
+    }
 
     /**
      * @return самое позднее время запроса
      */
-    public LocalDateTime getMaxTime() { return maxTime; }
+    public LocalDateTime getMaxTime() {
+        return maxSecond == Long.MIN_VALUE ? null : LocalDateTime.ofEpochSecond(maxSecond, 0, ZoneOffset.UTC);
+    }
 
     /**
      * @return количество запросов от Googlebot
      */
-    public int getGooglebotCount() { return googlebotCount; }
+    public int getGooglebotCount() { return crawlerCounts.get("Googlebot"); }
 
     /**
      * @return количество запросов от YandexBot
      */
-    public int getYandexbotCount() { return yandexbotCount; }
+    public int getYandexbotCount() { return crawlerCounts.get("YandexBot"); }
 
     /**
      * @return процент запросов от Googlebot
      */
     public double getGooglebotPercentage() {
-        return totalEntries > 0 ? (double) googlebotCount / totalEntries * 100 : 0;
+        return totalEntries > 0 ? (double) getGooglebotCount() / totalEntries * 100 : 0;
     }
 
     /**
      * @return процент запросов от YandexBot
      */
     public double getYandexbotPercentage() {
-        return totalEntries > 0 ? (double) yandexbotCount / totalEntries * 100 : 0;
+        return totalEntries > 0 ? (double) getYandexbotCount() / totalEntries * 100 : 0;
     }
 
     /**
      * @return множество существующих страниц (код 200)
      */
-    public Set<String> getExistingPages() { return new HashSet<>(existingPages); }
+    public Set<String> getExistingPages() { return existingPages.toSet(); }
 
     /**
      * @return множество несуществующих страниц (код 404)
      */
-    public Set<String> getNotFoundPages() { return new HashSet<>(notFoundPages); }
+    public Set<String> getNotFoundPages() { return notFoundPages.toSet(); }
 
     /**
      * @return количество несуществующих страниц
@@ -425,15 +1075,30 @@ public class Statistics {
      */
     public int getExistingPagesCount() { return existingPages.size(); }
 
+    /**
+     * @return количество запросов по существующим страницам (код 200)
+     */
+    public Map<String, Integer> getExistingPageCounts() { return existingPages.toMap(); }
+
+    /**
+     * @return количество запросов по несуществующим страницам (код 404)
+     */
+    public Map<String, Integer> getNotFoundPageCounts() { return notFoundPages.toMap(); }
+
+    /**
+     * @return шаблоны маршрутов или null, если страницы учитываются по исходным путям
+     */
+    public RouteTemplates getRouteTemplates() { return routes; }
+
     /**
      * @return статистика операционных систем (количество)
      */
-    public Map<String, Integer> getOsCounts() { return new HashMap<>(osCounts); }
+    public Map<String, Integer> getOsCounts() { return osCounts.toMap(); }
 
     /**
      * @return статистика браузеров (количество)
      */
-    public Map<String, Integer> getBrowserCounts() { return new HashMap<>(browserCounts); }
+    public Map<String, Integer> getBrowserCounts() { return browserCounts.toMap(); }
 
     /**
      * @return количество посещений реальными пользователями
@@ -448,7 +1113,7 @@ public class Statistics {
     /**
      * @return количество уникальных пользователей
      */
-    public int getUniqueHumanUsers() { return uniqueHumanIPs.size(); }
+    public int getUniqueHumanUsers() { return visitsPerUser.size(); }
 
     /**
      * @return пиковая посещаемость в секунду
@@ -463,7 +1128,7 @@ public class Statistics {
     /**
      * @return множество доменов-рефереров
      */
-    public Set<String> getRefererDomains() { return new HashSet<>(refererDomains); }
+    public Set<String> getRefererDomains() { return refererDomains.toSet(); }
 
     /**
      * @return количество доменов-рефереров
@@ -484,13 +1149,85 @@ public class Statistics {
         return totalEntries > 0 ? (double) humanVisits / totalEntries * 100 : 0;
     }
 
+    /**
+     * @return количество запросов с указанным временем обработки
+     */
+    public int getRequestTimeCount() { return requestTimeCount; }
+
+    /**
+     * @return среднее время обработки запроса в миллисекундах
+     */
+    public double getAverageRequestTimeMillis() {
+        return requestTimeCount > 0 ? requestTimeTotalMicros / 1000.0 / requestTimeCount : 0;
+    }
+
+    /**
+     * @return максимальное время обработки запроса в миллисекундах
+     */
+    public double getMaxRequestTimeMillis() { return requestTimeMaxMicros / 1000.0; }
+
+    /**
+     * @return количество запросов с указанным временем ответа upstream
+     */
+    public int getUpstreamTimeCount() { return upstreamTimeCount; }
+
+    /**
+     * @return среднее время ответа upstream в миллисекундах
+     */
+    public double getAverageUpstreamTimeMillis() {
+        return upstreamTimeCount > 0 ? upstreamTimeTotalMicros / 1000.0 / upstreamTimeCount : 0;
+    }
+
+    /**
+     * @return количество запросов по виртуальным хостам
+     */
+    public Map<String, Integer> getHostCounts() { return hostCounts.toMap(); }
+
+    /**
+     * @return количество сессий реальных пользователей
+     */
+    public long getSessionCount() { return sessions.getSessionCount(); }
+
+    /**
+     * @return распределение длительности сессий в секундах
+     */
+    public Log2Histogram getSessionDurations() { return sessions.getDurations(); }
+
+    /**
+     * @return распределение глубины сессий (количества запросов)
+     */
+    public Log2Histogram getSessionDepths() { return sessions.getDepths(); }
+
+    /**
+     * @return тайм-аут неактивности сессии в секундах
+     */
+    public long getSessionTimeoutSeconds() { return sessionTimeoutSeconds; }
+
+    /**
+     * @return количество запросов по краулерам (по User-Agent)
+     */
+    public Map<String, Integer> getCrawlerCounts() { return crawlerCounts.toMap(); }
+
+    /**
+     * @return количество запросов краулеров, подтвержденных диапазоном адресов
+     */
+    public Map<String, Integer> getVerifiedCrawlerCounts() { return crawlerVerified.toMap(); }
+
+    /**
+     * @return количество запросов с User-Agent краулера не из его диапазонов адресов
+     */
+    public Map<String, Integer> getSpoofedCrawlerCounts() { return crawlerSpoofed.toMap(); }
+
+    /**
+     * @return детектор аномалий или null, если поиск аномалий отключен
+     */
+    public AnomalyDetector getAnomalyDetector() { return anomalies; }
+
     /**
      * @return длительность периода анализа в часах
      */
     public long getTimeRangeInHours() {
-        if (minTime == null || maxTime == null) return 0;
-        LocalDateTime startTime = minTime.isBefore(maxTime) ? minTime : maxTime;
-        LocalDateTime endTime = minTime.isBefore(maxTime) ? maxTime : minTime;
-        return ChronoUnit.HOURS.between(startTime, endTime);
+        if (minSecond > maxSecond) return 0;
+        return (maxSecond - minSecond) / 3600;
     }
-}
\ No newline at end of file
+}
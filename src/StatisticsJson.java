@@ -0,0 +1,200 @@
+import java.util.Map;
+
+/**
+ * Представление результатов анализа в JSON - те же показатели, что выводит FileAnalysisResult.
+ * JSON собирается вручную, чтобы не добавлять зависимостей.
+ */
+public class StatisticsJson {
+
+    private static final int TOP_HOSTS = 10;
+
+    private final StringBuilder json = new StringBuilder(4096);
+    private boolean first = true; // Первый элемент текущего объекта (без запятой перед ним)
+
+    private StatisticsJson() {
+    }
+
+    /**
+     * Собирает JSON со всеми показателями статистики
+     * @param source название анализируемого источника (имя файла)
+     * @param stats статистика
+     * @param publishedAtMillis время снимка (мс от эпохи)
+     * @return строка JSON
+     */
+    public static String toJson(String source, Statistics stats, long publishedAtMillis) {
+        return toJson(source, stats, publishedAtMillis, false);
+    }
+
+    /**
+     * Собирает JSON с показателями статистики. В промежуточном снимке показатели агрегатов,
+     * сброшенных на диск (страницы и пользователи), не выводятся: их подсчет - слияние всех
+     * серий с диска, слишком долгое для периодической публикации в потоке анализа.
+     * Вместо них выводится "spilledAggregates": true.
+     * @param source название анализируемого источника (имя файла)
+     * @param stats статистика
+     * @param publishedAtMillis время снимка (мс от эпохи)
+     * @param intermediate снимок публикуется во время анализа
+     * @return строка JSON
+     */
+    public static String toJson(String source, Statistics stats, long publishedAtMillis, boolean intermediate) {
+        boolean skipSpilled = intermediate && stats.hasSpilledAggregates();
+        StatisticsJson w = new StatisticsJson();
+        w.begin();
+        w.field("source", source);
+        w.field("publishedAt", publishedAtMillis);
+        if (skipSpilled) {
+            w.field("spilledAggregates", true);
+        }
+        w.field("totalLines", stats.getTotalEntries());
+        w.field("googlebotCount", stats.getGooglebotCount());
+        w.field("googlebotPercentage", stats.getGooglebotPercentage());
+        w.field("yandexbotCount", stats.getYandexbotCount());
+        w.field("yandexbotPercentage", stats.getYandexbotPercentage());
+        w.field("totalTraffic", stats.getTotalTraffic());
+        w.field("trafficPerHour", stats.getTrafficRate());
+        w.field("visitsPerHour", stats.getAverageVisitsPerHour());
+        w.field("errorRequestsPerHour", stats.getAverageErrorRequestsPerHour());
+        if (!skipSpilled) {
+            w.field("visitsPerUser", stats.getAverageVisitsPerUser());
+            w.field("uniqueHumanUsers", stats.getUniqueHumanUsers());
+        }
+        w.field("errorRequests", stats.getErrorRequests());
+        if (!skipSpilled) {
+            w.field("existingPages", stats.getExistingPagesCount());
+            w.field("notFoundPages", stats.getNotFoundPagesCount());
+        }
+        w.field("peakVisitsPerSecond", stats.getPeakVisitsPerSecond());
+        if (!skipSpilled) {
+            w.field("maxVisitsPerUser", stats.getMaxVisitsPerUser());
+        }
+        w.field("refererDomains", stats.getRefererDomainsCount());
+        w.doubleMap("osStatistics", stats.getOsStatistics());
+        w.doubleMap("browserStatistics", stats.getBrowserStatistics());
+
+        w.key("sessions");
+        w.begin();
+        w.field("count", stats.getSessionCount());
+        w.field("timeoutSeconds", stats.getSessionTimeoutSeconds());
+        w.field("meanDurationSeconds", stats.getSessionDurations().getMean());
+        w.field("meanDepth", stats.getSessionDepths().getMean());
+        w.end();
+
+        Map<String, Integer> verified = stats.getVerifiedCrawlerCounts();
+        Map<String, Integer> spoofed = stats.getSpoofedCrawlerCounts();
+        w.key("crawlers");
+        w.begin();
+        for (Map.Entry<String, Integer> e : stats.getCrawlerCounts().entrySet()) {
+            w.key(e.getKey());
+            w.begin();
+            w.field("count", e.getValue());
+            if (verified.containsKey(e.getKey()) || spoofed.containsKey(e.getKey())) {
+                w.field("verified", verified.getOrDefault(e.getKey(), 0));
+                w.field("spoofed", spoofed.getOrDefault(e.getKey(), 0));
+            }
+            w.end();
+        }
+        w.end();
+
+        AnomalyDetector anomalies = stats.getAnomalyDetector();
+        if (anomalies != null) {
+            w.key("anomalies");
+            w.begin();
+            for (AnomalyDetector.Metric metric : AnomalyDetector.Metric.values()) {
+                w.key(metric.getKey());
+                w.begin();
+                w.field("incidents", anomalies.getIncidentCount(metric));
+                w.field("open", anomalies.isIncidentOpen(metric));
+                w.field("baseline", anomalies.getBaseline(metric));
+                w.end();
+            }
+            w.end();
+        }
+
+        if (stats.getRequestTimeCount() > 0) {
+            w.field("averageRequestTimeMillis", stats.getAverageRequestTimeMillis());
+            w.field("maxRequestTimeMillis", stats.getMaxRequestTimeMillis());
+        }
+        if (stats.getUpstreamTimeCount() > 0) {
+            w.field("averageUpstreamTimeMillis", stats.getAverageUpstreamTimeMillis());
+        }
+        w.key("topHosts");
+        w.begin();
+        stats.getHostCounts().entrySet().stream()
+                .sorted(Map.Entry.<String, Integer>comparingByValue().reversed())
+                .limit(TOP_HOSTS)
+                .forEach(e -> w.field(e.getKey(), e.getValue()));
+        w.end();
+        w.end();
+        return w.json.toString();
+    }
+
+    // ========== ЗАПИСЬ ЭЛЕМЕНТОВ ==========
+
+    private void begin() {
+        json.append('{');
+        first = true;
+    }
+
+    private void end() {
+        json.append('}');
+        first = false;
+    }
+
+    private void key(String name) {
+        if (!first) {
+            json.append(',');
+        }
+        first = false;
+        string(name);
+        json.append(':');
+    }
+
+    private void field(String name, String value) {
+        key(name);
+        string(value);
+    }
+
+    private void field(String name, long value) {
+        key(name);
+        json.append(value);
+    }
+
+    private void field(String name, boolean value) {
+        key(name);
+        json.append(value);
+    }
+
+    // NaN и бесконечность в JSON недопустимы
+    private void field(String name, double value) {
+        key(name);
+        json.append(Double.isFinite(value) ? String.valueOf(value) : "null");
+    }
+
+    private void doubleMap(String name, Map<String, Double> values) {
+        key(name);
+        begin();
+        values.forEach(this::field);
+        end();
+    }
+
+    private void string(String value) {
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"': json.append("\\\""); break;
+                case '\\': json.append("\\\\"); break;
+                case '\n': json.append("\\n"); break;
+                case '\r': json.append("\\r"); break;
+                case '\t': json.append("\\t"); break;
+                default:
+                    if (c < 0x20) {
+                        json.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        json.append(c);
+                    }
+            }
+        }
+        json.append('"');
+    }
+}
@@ -0,0 +1,123 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Локальный HTTP-сервер, отдающий текущую статистику в JSON без остановки анализа.
+ * Поток анализа периодически собирает готовый JSON и публикует его через AtomicReference
+ * (копирование при записи), а потоки сервера только читают последнюю опубликованную версию.
+ * Поэтому чтение никогда не обращается к Statistics и не берет блокировок на пути анализа,
+ * а время ответа не зависит от скорости разбора.
+ * <pre>
+ *   GET /stats   - последний снимок статистики
+ *   GET /health  - "ok"
+ * </pre>
+ */
+public class StatisticsServer {
+
+    public static final long DEFAULT_PUBLISH_INTERVAL_MILLIS = 1000;
+    private static final int THREADS = 2;
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final long publishIntervalNanos;
+    private final AtomicReference<byte[]> snapshot = new AtomicReference<>(
+            "{\"status\":\"starting\"}".getBytes(StandardCharsets.UTF_8));
+    private long nextPublishNanos; // Используется только потоком анализа
+
+    /**
+     * Создает сервер на адресе обратной петли и запускает его
+     * @param port порт (0 - любой свободный)
+     * @param publishIntervalMillis как часто публиковать статистику во время анализа
+     * @throws IllegalArgumentException если интервал не положителен
+     */
+    public StatisticsServer(int port, long publishIntervalMillis) throws IOException {
+        if (publishIntervalMillis <= 0) {
+            throw new IllegalArgumentException("Интервал публикации должен быть положительным: " + publishIntervalMillis);
+        }
+        this.publishIntervalNanos = TimeUnit.MILLISECONDS.toNanos(publishIntervalMillis);
+        this.nextPublishNanos = System.nanoTime();
+        // Заголовки и тело ответа пишутся отдельно, и без TCP_NODELAY алгоритм Нейгла вместе
+        // с отложенным ACK клиента задерживает каждый ответ примерно на 40 мс
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        this.executor = Executors.newFixedThreadPool(THREADS, runnable -> {
+            Thread thread = new Thread(runnable, "statistics-http");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.createContext("/stats", exchange -> respond(exchange, "application/json; charset=utf-8", snapshot.get()));
+        server.createContext("/health", exchange ->
+                respond(exchange, "text/plain; charset=utf-8", "ok".getBytes(StandardCharsets.UTF_8)));
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    private static void respond(HttpExchange exchange, String contentType, byte[] body) throws IOException {
+        try (HttpExchange e = exchange) {
+            if (!"GET".equals(e.getRequestMethod())) {
+                e.sendResponseHeaders(405, -1);
+                return;
+            }
+            e.getResponseHeaders().set("Content-Type", contentType);
+            e.getResponseHeaders().set("Cache-Control", "no-store");
+            e.sendResponseHeaders(200, body.length);
+            try (OutputStream out = e.getResponseBody()) {
+                out.write(body);
+            }
+        }
+    }
+
+    // ========== ПУБЛИКАЦИЯ (ПОТОК АНАЛИЗА) ==========
+
+    /**
+     * Публикует статистику, если с прошлой публикации прошел интервал
+     * @param source название источника
+     * @param stats статистика (читается только в текущем потоке)
+     */
+    public void publishIfDue(String source, Statistics stats) {
+        if (System.nanoTime() - nextPublishNanos >= 0) {
+            publish(source, stats, true);
+        }
+    }
+
+    /**
+     * Публикует итоговую статистику немедленно
+     * @param source название источника
+     * @param stats статистика (читается только в текущем потоке)
+     */
+    public void publish(String source, Statistics stats) {
+        publish(source, stats, false);
+    }
+
+    // Промежуточный снимок не включает итоги агрегатов, сброшенных на диск (см. StatisticsJson)
+    private void publish(String source, Statistics stats, boolean intermediate) {
+        byte[] json = StatisticsJson.toJson(source, stats, System.currentTimeMillis(), intermediate)
+                .getBytes(StandardCharsets.UTF_8);
+        snapshot.set(json);
+        nextPublishNanos = System.nanoTime() + publishIntervalNanos;
+    }
+
+    // ========== УПРАВЛЕНИЕ ==========
+
+    /**
+     * @return порт, на котором работает сервер
+     */
+    public int getPort() { return server.getAddress().getPort(); }
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
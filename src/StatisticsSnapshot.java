@@ -0,0 +1,88 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Переносимый двоичный снимок статистики для распределенного анализа.
+ * Анализатор запускается рядом с логами на каждом узле, снимки передаются
+ * на центральный узел и там объединяются в один FileAnalysisResult.
+ */
+public final class StatisticsSnapshot {
+
+    private static final int MAGIC = 0x414C5353; // "ALSS"
+    private static final int FORMAT_VERSION = 1; // Версия формата файла снимка
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final String EXTENSION = ".snap";
+
+    private StatisticsSnapshot() {
+    }
+
+    /**
+     * Записывает снимок статистики в файл
+     * @param stats статистика для сохранения
+     * @param snapshotFile файл снимка
+     */
+    public static void write(Statistics stats, File snapshotFile) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(snapshotFile), BUFFER_SIZE))) {
+            out.writeInt(MAGIC);
+            out.writeByte(FORMAT_VERSION);
+            stats.writeState(out);
+        }
+    }
+
+    /**
+     * Записывает снимок статистики анализируемого файла в каталог снимков
+     * @param stats статистика для сохранения
+     * @param snapshotDir каталог снимков
+     * @param logFile файл логов, по которому собрана статистика
+     * @return созданный файл снимка
+     */
+    public static File export(Statistics stats, File snapshotDir, File logFile) throws IOException {
+        if (!snapshotDir.isDirectory() && !snapshotDir.mkdirs()) {
+            throw new IOException("Не удалось создать каталог снимков: " + snapshotDir);
+        }
+        File snapshotFile = new File(snapshotDir, logFile.getName() + EXTENSION);
+        write(stats, snapshotFile);
+        return snapshotFile;
+    }
+
+    /**
+     * Потоково добавляет содержимое снимка к статистике
+     * @param snapshotFile файл снимка
+     * @param target статистика, в которую сливаются данные
+     */
+    public static void mergeInto(File snapshotFile, Statistics target) throws IOException {
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(snapshotFile), BUFFER_SIZE))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Файл не является снимком статистики: " + snapshotFile);
+            }
+            int version = in.readUnsignedByte();
+            if (version != FORMAT_VERSION) {
+                throw new IOException("Неподдерживаемая версия снимка " + version + ": " + snapshotFile);
+            }
+            target.mergeState(in);
+        }
+    }
+
+    /**
+     * Объединяет любое количество снимков в один результат анализа
+     * @param snapshotFiles файлы снимков
+     * @param target статистика, в которую сливаются данные
+     * @return объединенный результат анализа
+     */
+    public static FileAnalysisResult merge(List<File> snapshotFiles, Statistics target) throws IOException {
+        System.out.printf("🔗 Объединяем снимков: %d%n", snapshotFiles.size());
+        for (File snapshotFile : snapshotFiles) {
+            mergeInto(snapshotFile, target);
+        }
+        return new FileAnalysisResult("снимки (" + snapshotFiles.size() + ")", target);
+    }
+}
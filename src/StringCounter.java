@@ -0,0 +1,147 @@
+import java.util.function.ObjIntConsumer;
+
+/**
+ * Компактный счетчик строк на открытой адресации.
+ * Искать и увеличивать счетчик можно по любому CharSequence (в том числе по участку
+ * буфера чтения), а объект String создается только при появлении нового ключа.
+ * Используется и как множество: ключ присутствует, если его счетчик был увеличен.
+ */
+public class StringCounter implements KeyCounter {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private String[] keys; // Ключи (null - свободная ячейка)
+    private int[] hashes; // Хеши ключей, чтобы не пересчитывать их при сравнении и расширении
+    private int[] counts; // Значения счетчиков
+    private int size; // Количество ключей
+
+    public StringCounter() {
+        clear();
+    }
+
+    // ========== ИЗМЕНЕНИЕ ==========
+
+    @Override
+    public void add(CharSequence seq, int start, int end, int delta) {
+        int hash = hash(seq, start, end);
+        int mask = keys.length - 1;
+        int index = hash & mask;
+        while (keys[index] != null) {
+            if (hashes[index] == hash && equals(keys[index], seq, start, end)) {
+                counts[index] += delta;
+                return;
+            }
+            index = (index + 1) & mask;
+        }
+        keys[index] = seq.subSequence(start, end).toString();
+        hashes[index] = hash;
+        counts[index] = delta;
+        if (++size * 2 > keys.length) {
+            resize();
+        }
+    }
+
+    @Override
+    public void clear() {
+        keys = new String[INITIAL_CAPACITY];
+        hashes = new int[INITIAL_CAPACITY];
+        counts = new int[INITIAL_CAPACITY];
+        size = 0;
+    }
+
+    // ========== ЧТЕНИЕ ==========
+
+    // Значение счетчика ключа (0, если ключа нет)
+    public int get(CharSequence key) {
+        int hash = hash(key, 0, key.length());
+        int mask = keys.length - 1;
+        int index = hash & mask;
+        while (keys[index] != null) {
+            if (hashes[index] == hash && equals(keys[index], key, 0, key.length())) {
+                return counts[index];
+            }
+            index = (index + 1) & mask;
+        }
+        return 0;
+    }
+
+    public boolean contains(CharSequence key) {
+        return get(key) != 0;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    // Максимальное значение счетчика (0 для пустого счетчика)
+    @Override
+    public int max() {
+        int max = 0;
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != null && counts[i] > max) {
+                max = counts[i];
+            }
+        }
+        return max;
+    }
+
+    @Override
+    public void forEach(ObjIntConsumer<String> action) {
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != null) {
+                action.accept(keys[i], counts[i]);
+            }
+        }
+    }
+
+    // ========== ВСПОМОГАТЕЛЬНЫЕ МЕТОДЫ ==========
+
+    // Хеш участка, совпадающий с String.hashCode() для такой же строки
+    static int hash(CharSequence seq, int start, int end) {
+        int hash;
+        if (seq instanceof String && start == 0 && end == seq.length()) {
+            hash = seq.hashCode();
+        } else {
+            hash = 0;
+            for (int i = start; i < end; i++) {
+                hash = 31 * hash + seq.charAt(i);
+            }
+        }
+        return hash ^ (hash >>> 16);
+    }
+
+    static boolean equals(String key, CharSequence seq, int start, int end) {
+        if (key.length() != end - start) return false;
+        for (int i = 0; i < key.length(); i++) {
+            if (key.charAt(i) != seq.charAt(start + i)) return false;
+        }
+        return true;
+    }
+
+    private void resize() {
+        String[] oldKeys = keys;
+        int[] oldHashes = hashes;
+        int[] oldCounts = counts;
+        keys = new String[oldKeys.length * 2];
+        hashes = new int[keys.length];
+        counts = new int[keys.length];
+        int mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != null) {
+                int index = oldHashes[i] & mask;
+                while (keys[index] != null) {
+                    index = (index + 1) & mask;
+                }
+                keys[index] = oldKeys[i];
+                hashes[index] = oldHashes[i];
+                counts[index] = oldCounts[i];
+            }
+        }
+    }
+}
@@ -4,12 +4,21 @@ public class UserAgent {
     private final String osType; // Тип операционной системы
     private final String browserType; // Тип браузера
     private final String originalString;// Исходная строка User-Agent
+    private final BotSignatures signatures; // Сигнатуры, по которым определены краулеры
+    private final long crawlers; // Маска найденных сигнатур ботов (0 - не бот)
 
-    // Конструктор
+    // Конструктор со встроенными сигнатурами ботов
     public UserAgent(String userAgentString) {
+        this(userAgentString, BotSignatures.defaults());
+    }
+
+    // Конструктор с заданными сигнатурами ботов
+    public UserAgent(String userAgentString, BotSignatures signatures) {
         this.originalString = userAgentString != null ? userAgentString : "";
         this.osType = extractOsType(this.originalString);
         this.browserType = extractBrowserType(this.originalString);
+        this.signatures = signatures;
+        this.crawlers = signatures.match(this.originalString);
     }
 
     // Метод, определяющий ОС из User-Agent строки
@@ -38,21 +47,6 @@ public class UserAgent {
         else return "Other";
     }
 
-    // Метод, определяющий является ли User-Agent ботом
-    public boolean isBot() {
-        if (originalString.isEmpty()) return false;
-
-        String ua = originalString.toLowerCase();
-        return ua.contains("bot") ||
-                ua.contains("googlebot") ||
-                ua.contains("yandexbot") ||
-                ua.contains("crawler") ||
-                ua.contains("spider") ||
-                ua.contains("crawler") ||
-                ua.contains("indexer") ||
-                ua.contains("scraper");
-    }
-
     // Возвращение оригинальной строки User-Agent
     @Override
     public String toString() {
@@ -60,6 +54,9 @@ public class UserAgent {
     }
 
     // Геттеры
+    public boolean isBot() { return crawlers != 0; }
     public String getOsType() { return osType; }
     public String getBrowserType() { return browserType; }
+    public long getCrawlers() { return crawlers & ~BotSignatures.GENERIC_BOT; } // Маска краулеров без общего признака
+    public BotSignatures getSignatures() { return signatures; }
 }
@@ -0,0 +1,62 @@
+import java.util.Arrays;
+
+/**
+ * Кэш разобранных User-Agent. Различных строк User-Agent в логе немного, а встречаются
+ * они миллионы раз, поэтому каждую строку достаточно классифицировать один раз.
+ * Поиск выполняется по CharSequence без создания строки, размер кэша ограничен.
+ */
+public class UserAgentCache {
+
+    private static final int CAPACITY = 16384; // Размер таблицы (степень двойки)
+    private static final int MAX_SIZE = CAPACITY / 2; // При заполнении кэш очищается
+
+    private final String[] keys = new String[CAPACITY];
+    private final int[] hashes = new int[CAPACITY];
+    private final UserAgent[] values = new UserAgent[CAPACITY];
+    private int size;
+    private final BotSignatures signatures; // Сигнатуры ботов для классификации
+
+    public UserAgentCache() {
+        this(BotSignatures.defaults());
+    }
+
+    public UserAgentCache(BotSignatures signatures) {
+        this.signatures = signatures;
+    }
+
+    /**
+     * Возвращает классификацию строки User-Agent, разбирая ее только при первом появлении
+     * @param userAgent строка User-Agent (ASCII-представление или обычная строка)
+     * @return объект UserAgent
+     */
+    public UserAgent get(CharSequence userAgent) {
+        int length = userAgent.length();
+        int hash = StringCounter.hash(userAgent, 0, length);
+        int mask = CAPACITY - 1;
+        int index = hash & mask;
+        while (keys[index] != null) {
+            if (hashes[index] == hash && StringCounter.equals(keys[index], userAgent, 0, length)) {
+                return values[index];
+            }
+            index = (index + 1) & mask;
+        }
+
+        if (size >= MAX_SIZE) {
+            clear();
+            index = hash & mask;
+        }
+        String key = userAgent.toString();
+        UserAgent agent = new UserAgent(key, signatures);
+        keys[index] = key;
+        hashes[index] = hash;
+        values[index] = agent;
+        size++;
+        return agent;
+    }
+
+    public void clear() {
+        Arrays.fill(keys, null);
+        Arrays.fill(values, null);
+        size = 0;
+    }
+}